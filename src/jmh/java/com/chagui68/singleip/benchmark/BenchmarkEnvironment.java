@@ -0,0 +1,89 @@
+package com.chagui68.singleip.benchmark;
+
+import com.chagui68.singleip.storage.IPDataManager;
+import com.chagui68.singleip.utils.AccessPolicy;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Stand-ins for what the plugin normally gets from the server: a temporary data
+ * folder, an in-memory config and a quiet logger.
+ */
+final class BenchmarkEnvironment {
+
+    private BenchmarkEnvironment() {
+    }
+
+    static File createDataFolder() throws IOException {
+        return Files.createTempDirectory("singleip-bench").toFile();
+    }
+
+    /**
+     * Write-behind storage that never flushes on its own, so only the benchmarked
+     * calls touch the disk.
+     */
+    static YamlConfiguration config() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("debug", false);
+        config.set("log-failed-attempts", false);
+        config.set("storage.format", "yaml");
+        config.set("storage.save-mode", "write-behind");
+        config.set("storage.flush-interval", 3600);
+        config.set("storage.shutdown-timeout", 120);
+        return config;
+    }
+
+    static Logger logger() {
+        Logger logger = Logger.getLogger("SingleIP-Benchmark");
+        logger.setLevel(Level.WARNING);
+        return logger;
+    }
+
+    static IPDataManager dataManager(File dataFolder, YamlConfiguration config) throws IOException {
+        Logger logger = logger();
+        AccessPolicy policy = AccessPolicy.compile(config, logger);
+        return new IPDataManager(dataFolder, logger, config, () -> policy);
+    }
+
+    static UUID player(int index) {
+        return new UUID(0x5EED_0000_0000_0000L, index);
+    }
+
+    /**
+     * A distinct IPv4 address for each of up to 2^24 players.
+     */
+    static String address(int index) {
+        return "10." + ((index >>> 16) & 0xFF) + "." + ((index >>> 8) & 0xFF) + "." + (index & 0xFF);
+    }
+
+    /**
+     * Writes a player-ips.yml with {@code players} entries of one address each,
+     * much faster than registering them one by one.
+     */
+    static void writePlayers(File dataFolder, int players) throws IOException {
+        Path file = new File(dataFolder, "player-ips.yml").toPath();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("players:\n");
+            for (int i = 0; i < players; i++) {
+                writer.write("  " + player(i) + ":\n  - " + address(i) + "\n");
+            }
+        }
+    }
+
+    static void delete(File dataFolder) throws IOException {
+        try (Stream<Path> paths = Files.walk(dataFolder.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.chagui68.singleip.benchmark;
+
+import com.chagui68.singleip.storage.IPDataManager;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registrations, additions and removals racing with lookups and snapshots on
+ * one data manager, the way pre-login, commands and the flusher share it. Each
+ * mutating thread owns its own players and mirrors every change in a plain map.
+ * After every iteration the registry and the reverse index must match those
+ * maps exactly, and at the end so must a reload of what was saved; any
+ * difference fails the run.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentRegistryBenchmark {
+
+    private static final int PLAYERS_PER_THREAD = 1024;
+    // Few enough that every address is registered by players of several threads
+    private static final int ADDRESSES = 64;
+
+    @Param({"yaml", "journal"})
+    public String format;
+
+    private final AtomicInteger nextWorker = new AtomicInteger();
+    private final Queue<Worker> workers = new ConcurrentLinkedQueue<>();
+    private File dataFolder;
+    private YamlConfiguration config;
+    private IPDataManager dataManager;
+
+    /**
+     * A mutating thread's players and what it expects each of them to have.
+     */
+    @State(Scope.Thread)
+    public static class Worker {
+        final Map<UUID, Set<String>> model = new HashMap<>();
+        Random random;
+        int firstPlayer;
+
+        @Setup(Level.Trial)
+        public void setUp(ConcurrentRegistryBenchmark registry) {
+            int id = registry.nextWorker.getAndIncrement();
+            firstPlayer = id * PLAYERS_PER_THREAD;
+            random = new Random(id);
+            registry.workers.add(this);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataFolder = BenchmarkEnvironment.createDataFolder();
+        config = BenchmarkEnvironment.config();
+        config.set("storage.format", format);
+        dataManager = BenchmarkEnvironment.dataManager(dataFolder, config);
+        dataManager.loadData();
+    }
+
+    @TearDown(Level.Iteration)
+    public void verifyLive() {
+        verify(dataManager, expected(), "live registry");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dataManager.saveData();
+        dataManager.shutdown();
+
+        IPDataManager reloaded = BenchmarkEnvironment.dataManager(dataFolder, config);
+        reloaded.loadData();
+        try {
+            verify(reloaded, expected(), "saved " + format + " store");
+        } finally {
+            reloaded.shutdown();
+            BenchmarkEnvironment.delete(dataFolder);
+        }
+    }
+
+    /**
+     * One change to one of the worker's players, checked against the model as it is made.
+     */
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(3)
+    public boolean mutate(Worker worker) {
+        UUID uuid = BenchmarkEnvironment.player(worker.firstPlayer + worker.random.nextInt(PLAYERS_PER_THREAD));
+        String ip = BenchmarkEnvironment.address(worker.random.nextInt(ADDRESSES));
+        Set<String> ips = worker.model.get(uuid);
+        boolean expected;
+        boolean changed;
+
+        int operation = worker.random.nextInt(8);
+        if (operation < 3) {
+            expected = ips == null;
+            changed = dataManager.registerFirstIP(uuid, ip);
+            if (expected) {
+                worker.model.put(uuid, new HashSet<>(Collections.singleton(ip)));
+            }
+        } else if (operation < 6) {
+            expected = ips != null && ips.add(ip);
+            changed = dataManager.addSecondIP(uuid, ip);
+        } else if (operation < 7) {
+            expected = ips != null && ips.remove(ip);
+            changed = dataManager.removeIP(uuid, ip);
+            if (ips != null && ips.isEmpty()) {
+                worker.model.remove(uuid);
+            }
+        } else {
+            expected = ips != null;
+            changed = dataManager.hasRegisteredIP(uuid);
+            dataManager.removeAllIPs(uuid);
+            worker.model.remove(uuid);
+        }
+
+        if (changed != expected) {
+            throw new IllegalStateException("Operation " + operation + " on " + uuid + " " + ip + " returned " + changed
+                    + ", expected " + expected);
+        }
+        return changed;
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(1)
+    public Map<String, Set<UUID>> lookup() {
+        return dataManager.findPlayersByIP(BenchmarkEnvironment.address(ThreadLocalRandom.current().nextInt(ADDRESSES)),
+                Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    @Group("registry")
+    @GroupThreads(1)
+    public void save() {
+        dataManager.saveData();
+    }
+
+    private Map<UUID, Set<String>> expected() {
+        Map<UUID, Set<String>> expected = new HashMap<>();
+        for (Worker worker : workers) {
+            expected.putAll(worker.model);
+        }
+        return expected;
+    }
+
+    private static void verify(IPDataManager dataManager, Map<UUID, Set<String>> expected, String what) {
+        if (dataManager.getStoredPlayerCount() != expected.size()) {
+            throw new IllegalStateException(what + " has " + dataManager.getStoredPlayerCount() + " players, expected "
+                    + expected.size());
+        }
+
+        Map<String, Set<UUID>> byAddress = new HashMap<>();
+        for (Map.Entry<UUID, Set<String>> player : expected.entrySet()) {
+            Set<String> actual = new HashSet<>(dataManager.getRegisteredIPs(player.getKey()));
+            if (!actual.equals(player.getValue())) {
+                throw new IllegalStateException(what + " has " + actual + " for " + player.getKey() + ", expected "
+                        + player.getValue());
+            }
+            for (String ip : player.getValue()) {
+                byAddress.computeIfAbsent(ip, key -> new HashSet<>()).add(player.getKey());
+            }
+        }
+
+        for (int i = 0; i < ADDRESSES; i++) {
+            String ip = BenchmarkEnvironment.address(i);
+            Map<String, Set<UUID>> found = dataManager.findPlayersByIP(ip, Integer.MAX_VALUE);
+            Set<UUID> actual = found.getOrDefault(ip, Collections.emptySet());
+            Set<UUID> wanted = byAddress.getOrDefault(ip, Collections.emptySet());
+            if (found.size() > 1 || !actual.equals(wanted)) {
+                throw new IllegalStateException(what + " reverse index has " + actual.size() + " players under "
+                        + found.keySet() + " for " + ip + ", expected " + wanted.size());
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.chagui68.singleip.benchmark;
+
+import com.chagui68.singleip.storage.IPDataManager;
+import com.chagui68.singleip.utils.FailedLoginRecord;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recording failed logins and paging through a large history of them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FailedLoginBenchmark {
+
+    private static final int PLAYERS = 1000;
+    private static final int PAGE = 10;
+
+    @Param({"5000", "100000"})
+    public int history;
+
+    private File dataFolder;
+    private IPDataManager dataManager;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataFolder = BenchmarkEnvironment.createDataFolder();
+        YamlConfiguration config = BenchmarkEnvironment.config();
+        config.set("failed-logins.index-size", history);
+        config.set("failed-logins.queue-size", history);
+        dataManager = BenchmarkEnvironment.dataManager(dataFolder, config);
+
+        for (int i = 0; i < history; i++) {
+            int player = i % PLAYERS;
+            dataManager.logFailedLogin("Player" + player, BenchmarkEnvironment.player(player),
+                    BenchmarkEnvironment.address(i), "IP not registered (2/2 IPs used)");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dataManager.shutdown();
+        BenchmarkEnvironment.delete(dataFolder);
+    }
+
+    @Benchmark
+    public void logFailedLogin(Cursor cursor) {
+        int player = cursor.next++ % PLAYERS;
+        dataManager.logFailedLogin("Player" + player, BenchmarkEnvironment.player(player),
+                "192.0.2.1", "IP not registered (2/2 IPs used)");
+    }
+
+    @Benchmark
+    public List<FailedLoginRecord> getFailedLoginsFirstPage() {
+        return dataManager.getFailedLogins(0, Long.MAX_VALUE, 0, PAGE);
+    }
+
+    @Benchmark
+    public List<FailedLoginRecord> getFailedLoginsDeepPage() {
+        return dataManager.getFailedLogins(0, Long.MAX_VALUE, history / 2, PAGE);
+    }
+
+    @Benchmark
+    public List<FailedLoginRecord> getFailedLoginsByPlayer(Cursor cursor) {
+        UUID uuid = BenchmarkEnvironment.player(cursor.next++ % PLAYERS);
+        return dataManager.getFailedLoginsByPlayer(uuid, 0, Long.MAX_VALUE, 0, PAGE);
+    }
+}
@@ -0,0 +1,95 @@
+package com.chagui68.singleip.benchmark;
+
+import com.chagui68.singleip.utils.GeoIPBatchResolver;
+import com.chagui68.singleip.utils.GeoIPChecker;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Country lookups answered from the cache. The cache is filled through a local
+ * stand-in for the ip-api batch endpoint, so no request leaves the machine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeoIPCacheBenchmark {
+
+    private static final int CACHED = 4096;
+
+    private HttpServer server;
+    private GeoIPChecker geoIPChecker;
+    private final String[] addresses = new String[CACHED];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/batch", exchange -> {
+            JsonArray response = new JsonArray();
+            String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            for (JsonElement query : JsonParser.parseString(body).getAsJsonArray()) {
+                JsonObject result = new JsonObject();
+                result.addProperty("status", "success");
+                result.addProperty("countryCode", "US");
+                result.addProperty("query", query.getAsString());
+                response.add(result);
+            }
+            byte[] bytes = response.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            exchange.getResponseBody().write(bytes);
+            exchange.close();
+        });
+        server.start();
+
+        GeoIPBatchResolver resolver = new GeoIPBatchResolver(BenchmarkEnvironment.logger(),
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/batch", 10, 6000);
+        geoIPChecker = new GeoIPChecker(BenchmarkEnvironment.logger(), 60, 60, CACHED * 2, null, true, resolver);
+
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        for (int i = 0; i < CACHED; i++) {
+            addresses[i] = "8." + (i >>> 8) + "." + (i & 0xFF) + ".1";
+            lookups.add(geoIPChecker.getCountryCode(addresses[i]));
+        }
+        CompletableFuture.allOf(lookups.toArray(new CompletableFuture[0])).get(1, TimeUnit.MINUTES);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        geoIPChecker.shutdown();
+        server.stop(0);
+    }
+
+    @Benchmark
+    public String getCountryCodeCached(Cursor cursor) {
+        return geoIPChecker.getCountryCode(addresses[cursor.next++ & (CACHED - 1)]).getNow(null);
+    }
+}
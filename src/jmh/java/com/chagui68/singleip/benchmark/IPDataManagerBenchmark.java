@@ -0,0 +1,101 @@
+package com.chagui68.singleip.benchmark;
+
+import com.chagui68.singleip.storage.IPDataManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.net.InetAddress;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pre-login lookups and first-IP registration against a populated store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IPDataManagerBenchmark {
+
+    private static final int SAMPLES = 4096;
+
+    @Param({"10000", "100000", "1000000"})
+    public int players;
+
+    private File dataFolder;
+    private IPDataManager dataManager;
+    private final UUID[] registered = new UUID[SAMPLES];
+    private final InetAddress[] allowed = new InetAddress[SAMPLES];
+    private final InetAddress[] denied = new InetAddress[SAMPLES];
+    private final UUID[] newcomers = new UUID[SAMPLES];
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+
+        int advance() {
+            return next++ & (SAMPLES - 1);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataFolder = BenchmarkEnvironment.createDataFolder();
+        BenchmarkEnvironment.writePlayers(dataFolder, players);
+        dataManager = BenchmarkEnvironment.dataManager(dataFolder, BenchmarkEnvironment.config());
+        dataManager.loadData();
+
+        Random random = new Random(42);
+        for (int i = 0; i < SAMPLES; i++) {
+            int player = random.nextInt(players);
+            registered[i] = BenchmarkEnvironment.player(player);
+            allowed[i] = InetAddress.getByName(BenchmarkEnvironment.address(player));
+            denied[i] = InetAddress.getByAddress(new byte[]{(byte) 192, (byte) 168, (byte) (i >>> 8), (byte) i});
+            newcomers[i] = new UUID(0xF00D_0000_0000_0000L, i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dataManager.shutdown();
+        BenchmarkEnvironment.delete(dataFolder);
+    }
+
+    @Benchmark
+    public boolean isIPAllowed(Cursor cursor) {
+        int i = cursor.advance();
+        return dataManager.isIPAllowed(registered[i], allowed[i]);
+    }
+
+    @Benchmark
+    public boolean isIPAllowedDenied(Cursor cursor) {
+        int i = cursor.advance();
+        return dataManager.isIPAllowed(registered[i], denied[i]);
+    }
+
+    /**
+     * Registers a new player and removes it again so the store keeps its size.
+     */
+    @Benchmark
+    public boolean registerFirstIP(Cursor cursor) {
+        UUID uuid = newcomers[cursor.advance()];
+        boolean registeredNow = dataManager.registerFirstIP(uuid, "172.16.0.1");
+        dataManager.removeAllIPs(uuid);
+        return registeredNow;
+    }
+}
@@ -0,0 +1,69 @@
+package com.chagui68.singleip.benchmark;
+
+import com.chagui68.singleip.storage.IPDataManager;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full snapshot writes and reloads of player-ips.yml. {@code loadThreads} 0
+ * uses one thread per core, as the plugin does by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StorageBenchmark {
+
+    @Param({"10000", "100000"})
+    public int players;
+
+    @Param({"1", "0"})
+    public int loadThreads;
+
+    private File dataFolder;
+    private IPDataManager dataManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataFolder = BenchmarkEnvironment.createDataFolder();
+        BenchmarkEnvironment.writePlayers(dataFolder, players);
+        YamlConfiguration config = BenchmarkEnvironment.config();
+        config.set("storage.load-threads", loadThreads);
+        dataManager = BenchmarkEnvironment.dataManager(dataFolder, config);
+        dataManager.loadData();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dataManager.shutdown();
+        BenchmarkEnvironment.delete(dataFolder);
+    }
+
+    @Benchmark
+    public void saveData() {
+        dataManager.saveData();
+    }
+
+    @Benchmark
+    public int loadData() {
+        dataManager.loadData();
+        return dataManager.getStoredPlayerCount();
+    }
+}
@@ -0,0 +1,54 @@
+package com.chagui68.singleip.benchmark;
+
+import com.chagui68.singleip.storage.IPDataManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validation of the addresses typed into {@code ipmanager add}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ValidationBenchmark {
+
+    @Param({"203.0.113.45", "2001:db8:85a3::8a2e:370:7334", "::ffff:192.0.2.1", "256.1.1.1", "not-an-ip"})
+    public String input;
+
+    private File dataFolder;
+    private IPDataManager dataManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dataFolder = BenchmarkEnvironment.createDataFolder();
+        dataManager = BenchmarkEnvironment.dataManager(dataFolder, BenchmarkEnvironment.config());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        dataManager.shutdown();
+        BenchmarkEnvironment.delete(dataFolder);
+    }
+
+    @Benchmark
+    public boolean isValidIP() {
+        return dataManager.isValidIP(input);
+    }
+}
@@ -2,40 +2,220 @@ package com.chagui68.singleip;
 
 import com.chagui68.singleip.commands.IPCommand;
 import com.chagui68.singleip.listeners.PlayerConnectionListener;
+import com.chagui68.singleip.replication.Replicator;
 import com.chagui68.singleip.storage.IPDataManager;
+import com.chagui68.singleip.storage.PlayerNameTable;
+import com.chagui68.singleip.storage.Storage;
+import com.chagui68.singleip.utils.AccessLogger;
+import com.chagui68.singleip.utils.AccessPolicy;
+import com.chagui68.singleip.utils.ConnectionRateLimiter;
+import com.chagui68.singleip.utils.GeoIPChecker;
+import com.chagui68.singleip.utils.MetricsReporter;
+import com.chagui68.singleip.utils.ReloadWatcher;
+import org.bukkit.OfflinePlayer;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
 public class SingleIPPlugin extends JavaPlugin {
 
+    private final AtomicReference<AccessPolicy> policy = new AtomicReference<>();
+    private volatile ConnectionRateLimiter rateLimiter;
+    private Storage storage;
+    private PlayerNameTable playerNames;
     private IPDataManager dataManager;
+    private volatile Replicator replicator;
+    private GeoIPChecker geoIPChecker;
+    private AccessLogger accessLogger;
+    private MetricsReporter metrics;
+    private boolean replicationStarted;
+    private volatile ReloadWatcher reloadWatcher;
 
     @Override
     public void onEnable() {
+        long enableStart = System.nanoTime();
         saveDefaultConfig();
         getDataFolder().mkdirs();
+        policy.set(AccessPolicy.compile(getConfig(), getLogger()));
+        rateLimiter = new ConnectionRateLimiter(getConfig().getConfigurationSection("rate-limit"));
+
+        try {
+            storage = Storage.open(getDataFolder(), getLogger(), getConfig());
+        } catch (IOException e) {
+            // Running without the stored IPs would let anyone register a new first IP
+            getLogger().severe("Error opening storage, disabling plugin: " + e.getMessage());
+            getServer().getPluginManager().disablePlugin(this);
+            return;
+        }
 
         dataManager = new IPDataManager(this);
-        dataManager.loadData();
 
-        getServer().getPluginManager().registerEvents(
-                new PlayerConnectionListener(this, dataManager),
-                this
-        );
+        playerNames = new PlayerNameTable(storage.playerNames(), getLogger());
+        if (playerNames.size() == 0) {
+            // First start with the name table: take over the names the server already knows
+            for (OfflinePlayer player : getServer().getOfflinePlayers()) {
+                playerNames.seed(player.getUniqueId(), player.getName());
+            }
+        }
+
+        replicator = Replicator.fromConfig(this, dataManager);
+
+        geoIPChecker = GeoIPChecker.fromConfig(this);
+        accessLogger = new AccessLogger(this, geoIPChecker, storage.accessLogs());
+
+        PlayerConnectionListener connectionListener =
+                new PlayerConnectionListener(this, dataManager, geoIPChecker, accessLogger);
+        getServer().getPluginManager().registerEvents(connectionListener, this);
+        metrics = new MetricsReporter(this, connectionListener);
 
         getCommand("ipmanager").setExecutor(new IPCommand(this, dataManager));
 
-        getLogger().info("SingleIPPlugin v2.0.0 enabled successfully");
+        // Logins that arrive before this finishes wait for it in pre-login
+        Thread loader = new Thread(() -> loadPlayerIPs(enableStart), "SingleIP-Load");
+        loader.setDaemon(true);
+        loader.start();
+
+        getLogger().info("SingleIPPlugin v2.0.0 enabled in " + millisSince(enableStart) + " ms, loading player IPs");
+    }
+
+    private void loadPlayerIPs(long enableStart) {
+        long start = System.nanoTime();
+        if (loadPlayerIPs() != null) {
+            getLogger().info("Player IPs loaded in " + millisSince(start) + " ms, " +
+                    millisSince(enableStart) + " ms after enable");
+        }
+        startWatching();
+    }
+
+    /**
+     * Loads the stored IPs and, the first time that succeeds, starts replication.
+     * Used again by {@code ipmanager reload} and the file watcher while the first
+     * load has not succeeded. Returns null if the store could not be read.
+     */
+    public IPDataManager.ReloadResult loadPlayerIPs() {
+        IPDataManager.ReloadResult result = dataManager.loadData();
+        if (result != null) {
+            startReplication();
+        }
+        return result;
+    }
+
+    /**
+     * Starts replication once the IPs are loaded, so the first sync exchanges
+     * the whole registry instead of the part read so far.
+     */
+    private synchronized void startReplication() {
+        if (replicator == null || replicationStarted || !isEnabled()) {
+            return;
+        }
+        replicationStarted = true;
+        try {
+            replicator.start();
+        } catch (IOException e) {
+            getLogger().severe("Error starting replication: " + e.getMessage());
+            replicator.shutdown(0);
+            replicator = null;
+        }
+    }
+
+    private synchronized void startWatching() {
+        if (isEnabled()) {
+            reloadWatcher = ReloadWatcher.fromConfig(this);
+        }
+    }
+
+    private static long millisSince(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000L;
     }
 
     @Override
     public void onDisable() {
+        if (metrics != null) {
+            metrics.shutdown();
+        }
+        synchronized (this) {
+            if (reloadWatcher != null) {
+                reloadWatcher.shutdown();
+            }
+        }
+        if (accessLogger != null) {
+            accessLogger.shutdown(getConfig().getLong("storage.shutdown-timeout", 10) * 1000L);
+        }
+        if (geoIPChecker != null) {
+            geoIPChecker.shutdown();
+        }
+        synchronized (this) {
+            if (replicator != null) {
+                replicator.shutdown(getConfig().getLong("storage.shutdown-timeout", 10) * 1000L);
+            }
+        }
         if (dataManager != null) {
-            dataManager.saveData();
+            dataManager.shutdown();
+        }
+        if (playerNames != null) {
+            playerNames.shutdown(getConfig().getLong("storage.shutdown-timeout", 10) * 1000L);
+        }
+        if (storage != null) {
+            storage.close(getConfig().getLong("storage.shutdown-timeout", 10) * 1000L);
         }
         getLogger().info("SingleIPPlugin disabled. Data saved.");
     }
 
+    /**
+     * The access rules currently in force. Read it once per decision.
+     */
+    public AccessPolicy getPolicy() {
+        return policy.get();
+    }
+
+    /**
+     * Re-reads config.yml from disk and publishes a freshly compiled policy.
+     * The rate limiter is rebuilt too, so its buckets start full again.
+     */
+    public AccessPolicy reloadPolicy() {
+        reloadConfig();
+        AccessPolicy compiled = AccessPolicy.compile(getConfig(), getLogger());
+        policy.set(compiled);
+        rateLimiter = new ConnectionRateLimiter(getConfig().getConfigurationSection("rate-limit"));
+        return compiled;
+    }
+
+    public ConnectionRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Last known name of every player seen, for commands that must not resolve players through Bukkit.
+     */
+    public PlayerNameTable getPlayerNames() {
+        return playerNames;
+    }
+
     public IPDataManager getDataManager() {
         return dataManager;
     }
+
+    /**
+     * The replicator, or null when replication is disabled.
+     */
+    public Replicator getReplicator() {
+        return replicator;
+    }
+
+    public GeoIPChecker getGeoIPChecker() {
+        return geoIPChecker;
+    }
+
+    public AccessLogger getAccessLogger() {
+        return accessLogger;
+    }
+
+    public MetricsReporter getMetrics() {
+        return metrics;
+    }
 }
@@ -1,22 +1,39 @@
 package com.chagui68.singleip.commands;
 
 import com.chagui68.singleip.SingleIPPlugin;
+import com.chagui68.singleip.listeners.PlayerConnectionListener;
+import com.chagui68.singleip.replication.ReplicationStats;
+import com.chagui68.singleip.replication.Replicator;
 import com.chagui68.singleip.storage.IPDataManager;
+import com.chagui68.singleip.storage.PlayerNameTable;
+import com.chagui68.singleip.storage.RegistryTransfer;
+import com.chagui68.singleip.utils.FailedLoginRecord;
+import com.chagui68.singleip.utils.GeoIPChecker;
+import com.chagui68.singleip.utils.LatencyHistogram;
+import com.chagui68.singleip.utils.MetricsReporter;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
-import org.bukkit.OfflinePlayer;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.command.ConsoleCommandSender;
 import org.bukkit.command.TabCompleter;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class IPCommand implements CommandExecutor, TabCompleter {
 
+    private static final int FAILED_PAGE_SIZE = 10;
+    private static final int WHO_MAX_ADDRESSES = 50;
+    private static final int LIST_PAGE_SIZE = 10;
+    private static final int TAB_COMPLETE_LIMIT = 50;
+
     private final SingleIPPlugin plugin;
     private final IPDataManager dataManager;
+    private final AtomicBoolean transferRunning = new AtomicBoolean(false);
 
     public IPCommand(SingleIPPlugin plugin, IPDataManager dataManager) {
         this.plugin = plugin;
@@ -38,6 +55,12 @@ public class IPCommand implements CommandExecutor, TabCompleter {
 
         String subCommand = args[0].toLowerCase();
 
+        // reload also retries a first load that failed
+        if (!dataManager.isLoaded() && !subCommand.equals("stats") && !subCommand.equals("reload")) {
+            sender.sendMessage(ChatColor.YELLOW + "⚠ Player IPs are still loading, try again in a moment.");
+            return true;
+        }
+
         switch (subCommand) {
             case "add":
                 return handleAdd(sender, args);
@@ -53,6 +76,16 @@ public class IPCommand implements CommandExecutor, TabCompleter {
                 return handleReload(sender, args);
             case "failed":
                 return handleFailedLogins(sender, args);
+            case "who":
+                return handleWho(sender, args);
+            case "replication":
+                return handleReplication(sender);
+            case "stats":
+                return handleStats(sender);
+            case "import":
+                return handleImport(sender, args);
+            case "export":
+                return handleExport(sender, args);
             default:
                 sendHelp(sender);
                 return true;
@@ -61,37 +94,35 @@ public class IPCommand implements CommandExecutor, TabCompleter {
 
     private boolean handleAdd(CommandSender sender, String[] args) {
         if (args.length != 3) {
-            sender.sendMessage(ChatColor.RED + "Usage: ipmanager add <player> <ip>");
+            sender.sendMessage(ChatColor.RED + "Usage: ipmanager add <player> <ip|cidr>");
             return true;
         }
 
         String playerName = args[1];
         String ip = args[2];
 
-        if (!dataManager.isValidIP(ip)) {
+        if (!dataManager.isValidIP(ip) && !dataManager.isValidIPRange(ip)) {
             sender.sendMessage(ChatColor.RED + "✖ Invalid IP format: " + ip);
-            sender.sendMessage(ChatColor.YELLOW + "Valid formats: IPv4 (192.168.1.1) or IPv6");
+            sender.sendMessage(ChatColor.YELLOW + "Valid formats: IPv4 (192.168.1.1), IPv6 or a CIDR range (192.168.1.0/24, 2001:db8::/64)");
             return true;
         }
 
-        OfflinePlayer target = Bukkit.getOfflinePlayer(playerName);
-        UUID uuid = target.getUniqueId();
+        UUID uuid = resolvePlayer(playerName);
 
-        if (!dataManager.hasRegisteredIP(uuid)) {
+        if (uuid == null || !dataManager.hasRegisteredIP(uuid)) {
             sender.sendMessage(ChatColor.RED + "✖ Player not found in database.");
             sender.sendMessage(ChatColor.YELLOW + "The player must connect at least once first.");
             return true;
         }
 
-        int maxIPs = plugin.getConfig().getInt("max-ips-per-player", 2);
+        int maxIPs = plugin.getPolicy().getMaxIPsPerPlayer();
         if (dataManager.getIPCount(uuid) >= maxIPs) {
             sender.sendMessage(ChatColor.RED + "✖ This player already has " + maxIPs + " IPs registered.");
             sender.sendMessage(ChatColor.YELLOW + "Use 'ipmanager remove " + playerName + " <ip>' first.");
             return true;
         }
 
-        List<String> currentIPs = dataManager.getRegisteredIPs(uuid);
-        if (currentIPs.contains(ip)) {
+        if (dataManager.hasIPEntry(uuid, ip)) {
             sender.sendMessage(ChatColor.RED + "✖ This IP is already registered for " + playerName);
             return true;
         }
@@ -111,17 +142,16 @@ public class IPCommand implements CommandExecutor, TabCompleter {
 
     private boolean handleRemove(CommandSender sender, String[] args) {
         if (args.length != 3) {
-            sender.sendMessage(ChatColor.RED + "Usage: ipmanager remove <player> <ip>");
+            sender.sendMessage(ChatColor.RED + "Usage: ipmanager remove <player> <ip|cidr>");
             return true;
         }
 
         String playerName = args[1];
         String ip = args[2];
 
-        OfflinePlayer target = Bukkit.getOfflinePlayer(playerName);
-        UUID uuid = target.getUniqueId();
+        UUID uuid = resolvePlayer(playerName);
 
-        if (!dataManager.hasRegisteredIP(uuid)) {
+        if (uuid == null || !dataManager.hasRegisteredIP(uuid)) {
             sender.sendMessage(ChatColor.RED + "✖ Player not found in database.");
             return true;
         }
@@ -150,39 +180,99 @@ public class IPCommand implements CommandExecutor, TabCompleter {
     }
 
     private boolean handleList(CommandSender sender, String[] args) {
-        Set<UUID> players = dataManager.getAllPlayers();
+        int page = 1;
+        boolean sortByIPs = false;
+        String filter = null;
 
-        if (players.isEmpty()) {
-            sender.sendMessage(ChatColor.YELLOW + "⚠ No players registered in the database.");
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i].toLowerCase();
+                if (arg.equals("--sort") && i + 1 < args.length) {
+                    String value = args[++i].toLowerCase();
+                    if (!value.equals("ips") && !value.equals("name")) {
+                        throw new IllegalArgumentException("--sort " + value);
+                    }
+                    sortByIPs = value.equals("ips");
+                } else if (arg.equals("--filter") && i + 1 < args.length) {
+                    filter = args[++i].toLowerCase();
+                } else if (!arg.startsWith("--")) {
+                    page = Math.max(1, Integer.parseInt(arg));
+                } else {
+                    throw new IllegalArgumentException(arg);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            sender.sendMessage(ChatColor.RED + "Usage: ipmanager list [page] [--sort ips|name] [--filter <prefix>]");
             return true;
         }
 
-        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
-        sender.sendMessage(ChatColor.GREEN + "   Player IP List");
-        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+        int requestedPage = page;
+        boolean byIPs = sortByIPs;
+        String prefix = filter;
+        // Sorting every registered player would stall the tick loop on big servers
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<String> lines = buildListPage(requestedPage, byIPs, prefix);
+            Bukkit.getScheduler().runTask(plugin, () -> lines.forEach(sender::sendMessage));
+        });
+        return true;
+    }
 
-        int count = 0;
-        for (UUID uuid : players) {
-            count++;
-            OfflinePlayer player = Bukkit.getOfflinePlayer(uuid);
-            List<String> ips = dataManager.getRegisteredIPs(uuid);
+    private List<String> buildListPage(int page, boolean sortByIPs, String filter) {
+        PlayerNameTable names = plugin.getPlayerNames();
+        List<ListEntry> entries = new ArrayList<>();
+        for (UUID uuid : dataManager.getAllPlayers()) {
+            String name = names.getName(uuid);
+            String shown = name != null ? name : uuid.toString();
+            if (filter == null || shown.toLowerCase().startsWith(filter)) {
+                entries.add(new ListEntry(uuid, shown, dataManager.getIPCount(uuid)));
+            }
+        }
 
-            sender.sendMessage("");
-            sender.sendMessage(ChatColor.AQUA + "" + count + ". " + player.getName() +
+        List<String> lines = new ArrayList<>();
+        if (entries.isEmpty()) {
+            lines.add(ChatColor.YELLOW + (filter == null
+                    ? "⚠ No players registered in the database."
+                    : "⚠ No registered players match " + filter));
+            return lines;
+        }
+
+        Comparator<ListEntry> byName = Comparator.comparing(entry -> entry.name, String.CASE_INSENSITIVE_ORDER);
+        if (sortByIPs) {
+            entries.sort(Comparator.<ListEntry>comparingInt(entry -> entry.ips).reversed().thenComparing(byName));
+        } else {
+            entries.sort(byName);
+        }
+
+        int pages = (entries.size() + LIST_PAGE_SIZE - 1) / LIST_PAGE_SIZE;
+        int shownPage = Math.min(page, pages);
+        int from = (shownPage - 1) * LIST_PAGE_SIZE;
+
+        lines.add(ChatColor.GREEN + "═════════════════════════════════════");
+        lines.add(ChatColor.GREEN + "   Player IP List (Page " + shownPage + "/" + pages + ")");
+        lines.add(ChatColor.GREEN + "═════════════════════════════════════");
+
+        for (int index = from; index < Math.min(from + LIST_PAGE_SIZE, entries.size()); index++) {
+            ListEntry entry = entries.get(index);
+            List<String> ips = dataManager.getRegisteredIPs(entry.uuid);
+
+            lines.add("");
+            lines.add(ChatColor.AQUA + "" + (index + 1) + ". " + entry.name +
                     ChatColor.GRAY + " (" + ips.size() + " IP" + (ips.size() > 1 ? "s" : "") + ")");
-            sender.sendMessage(ChatColor.DARK_GRAY + "   UUID: " + uuid.toString());
+            lines.add(ChatColor.DARK_GRAY + "   UUID: " + entry.uuid);
 
             for (int i = 0; i < ips.size(); i++) {
                 String type = i == 0 ? ChatColor.YELLOW + "[Primary]" : ChatColor.AQUA + "[Secondary]";
-                sender.sendMessage(ChatColor.GRAY + "   " + type + " " + ChatColor.WHITE + ips.get(i));
+                lines.add(ChatColor.GRAY + "   " + type + " " + ChatColor.WHITE + ips.get(i));
             }
         }
 
-        sender.sendMessage("");
-        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
-        sender.sendMessage(ChatColor.GRAY + "Total players: " + ChatColor.WHITE + count);
-
-        return true;
+        lines.add("");
+        lines.add(ChatColor.GREEN + "═════════════════════════════════════");
+        lines.add(ChatColor.GRAY + "Total players: " + ChatColor.WHITE + entries.size());
+        if (shownPage < pages) {
+            lines.add(ChatColor.GRAY + "More results: " + ChatColor.WHITE + "ipmanager list " + (shownPage + 1));
+        }
+        return lines;
     }
 
     private boolean handleInfo(CommandSender sender, String[] args) {
@@ -192,17 +282,16 @@ public class IPCommand implements CommandExecutor, TabCompleter {
         }
 
         String playerName = args[1];
-        OfflinePlayer target = Bukkit.getOfflinePlayer(playerName);
-        UUID uuid = target.getUniqueId();
+        UUID uuid = resolvePlayer(playerName);
 
-        if (!dataManager.hasRegisteredIP(uuid)) {
+        if (uuid == null || !dataManager.hasRegisteredIP(uuid)) {
             sender.sendMessage(ChatColor.RED + "✖ Player not found in database.");
             sender.sendMessage(ChatColor.YELLOW + "The player must connect at least once.");
             return true;
         }
 
         List<String> ips = dataManager.getRegisteredIPs(uuid);
-        int maxIPs = plugin.getConfig().getInt("max-ips-per-player", 2);
+        int maxIPs = plugin.getPolicy().getMaxIPsPerPlayer();
 
         sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
         sender.sendMessage(ChatColor.GREEN + "   Information for " + playerName);
@@ -228,10 +317,9 @@ public class IPCommand implements CommandExecutor, TabCompleter {
         }
 
         String playerName = args[1];
-        OfflinePlayer target = Bukkit.getOfflinePlayer(playerName);
-        UUID uuid = target.getUniqueId();
+        UUID uuid = resolvePlayer(playerName);
 
-        if (!dataManager.hasRegisteredIP(uuid)) {
+        if (uuid == null || !dataManager.hasRegisteredIP(uuid)) {
             sender.sendMessage(ChatColor.RED + "✖ Player not found in database.");
             return true;
         }
@@ -250,94 +338,388 @@ public class IPCommand implements CommandExecutor, TabCompleter {
     }
 
     private boolean handleReload(CommandSender sender, String[] args) {
-        sender.sendMessage(ChatColor.YELLOW + "Reloading player IP data...");
+        sender.sendMessage(ChatColor.YELLOW + "Reloading configuration and player IP data...");
 
         try {
-            dataManager.loadData();
-            sender.sendMessage(ChatColor.GREEN + "✓ Player IP data reloaded successfully!");
-            sender.sendMessage(ChatColor.GRAY + "Total players in database: " +
-                    ChatColor.WHITE + dataManager.getStoredPlayerCount());
+            plugin.reloadPolicy();
         } catch (Exception e) {
-            sender.sendMessage(ChatColor.RED + "✖ Error reloading data: " + e.getMessage());
-            plugin.getLogger().severe("Error reloading player IPs: " + e.getMessage());
+            sender.sendMessage(ChatColor.RED + "✖ Error reloading configuration: " + e.getMessage());
+            plugin.getLogger().severe("Error reloading configuration: " + e.getMessage());
+            return true;
         }
 
+        // Reading the file happens off the main thread; players only switch to the new IPs once it is all read
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            IPDataManager.ReloadResult result = dataManager.isLoaded()
+                    ? dataManager.reloadData() : plugin.loadPlayerIPs();
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                if (result == null) {
+                    sender.sendMessage(ChatColor.RED + "✖ Error reloading player IP data, check the console. Nothing was changed.");
+                    return;
+                }
+                sender.sendMessage(ChatColor.GREEN + "✓ Configuration and player IP data reloaded successfully!");
+                sender.sendMessage(ChatColor.GRAY + "Players: " + ChatColor.WHITE + result.describe());
+                sender.sendMessage(ChatColor.GRAY + "Total players in database: " +
+                        ChatColor.WHITE + dataManager.getStoredPlayerCount());
+            });
+        });
         return true;
     }
 
-    private boolean handleFailedLogins(CommandSender sender, String[] args) {
-        if (args.length == 1) {
-            // Mostrar últimos 10 intentos fallidos globales
-            List<Map<String, String>> attempts = dataManager.getFailedLogins(10);
+    private boolean handleReplication(CommandSender sender) {
+        Replicator replicator = plugin.getReplicator();
+        if (replicator == null) {
+            sender.sendMessage(ChatColor.YELLOW + "Replication is disabled.");
+            return true;
+        }
 
-            if (attempts.isEmpty()) {
-                sender.sendMessage(ChatColor.GREEN + "✓ No failed login attempts recorded.");
-                return true;
+        ReplicationStats stats = replicator.getStats();
+        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+        sender.sendMessage(ChatColor.GREEN + "   Replication (" + replicator.getServerId() + ")");
+        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+        sender.sendMessage(ChatColor.GRAY + "Transport: " + ChatColor.WHITE + replicator.describeTransport());
+        sender.sendMessage(ChatColor.GRAY + "Published: " + ChatColor.WHITE + stats.getDeltasPublished() +
+                " deltas in " + stats.getBatchesPublished() + " batches (" + replicator.getPendingCount() + " pending)");
+        sender.sendMessage(ChatColor.GRAY + "Received: " + ChatColor.WHITE + stats.getDeltasReceived() +
+                " deltas, " + stats.getDeltasApplied() + " applied, " + stats.getConflictsLost() + " superseded");
+        sender.sendMessage(ChatColor.GRAY + "Lag: " + ChatColor.WHITE + stats.getLastLagMillis() + " ms last, " +
+                stats.getAverageLagMillis() + " ms average, " + stats.getMaxLagMillis() + " ms max");
+        sender.sendMessage(ChatColor.GRAY + "Throughput: " + ChatColor.WHITE +
+                String.format("%.1f", stats.getThroughput()) + " deltas/s, " + stats.getSyncsServed() + " syncs served");
+        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+        return true;
+    }
+
+    private boolean handleImport(CommandSender sender, String[] args) {
+        boolean dryRun = args.length == 3 && args[2].equalsIgnoreCase("--dry-run");
+        if (args.length != 2 && !dryRun) {
+            sender.sendMessage(ChatColor.RED + "Usage: ipmanager import <file.csv|file.jsonl> [--dry-run]");
+            return true;
+        }
+
+        File file = resolveFile(args[1]);
+        RegistryTransfer.Format format = RegistryTransfer.Format.forFile(file);
+        if (format == null) {
+            sender.sendMessage(ChatColor.RED + "✖ Unknown file type, use .csv or .jsonl");
+            return true;
+        }
+        if (!file.isFile()) {
+            sender.sendMessage(ChatColor.RED + "✖ File not found: " + file.getPath());
+            return true;
+        }
+        if (!transferRunning.compareAndSet(false, true)) {
+            sender.sendMessage(ChatColor.RED + "✖ An import or export is already running.");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + (dryRun ? "Checking " : "Importing ") + file.getName() + "...");
+        // Large files take a while to read, so the server keeps ticking meanwhile
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                RegistryTransfer.ImportResult result = new RegistryTransfer(dataManager, plugin.getLogger())
+                        .importFile(file, format, dryRun, (lines, entries) -> sendLater(sender,
+                                ChatColor.GRAY + "  " + lines + " lines read, " + entries + " valid entries..."));
+                if (!dryRun) {
+                    plugin.getLogger().info("Imported " + file.getName() + ": " + result.describe());
+                }
+                sendLater(sender, ChatColor.GREEN + "✓ " + (dryRun ? "Dry run of " : "Imported ") + file.getName()
+                        + ": " + ChatColor.WHITE + result.describe());
+            } catch (IOException e) {
+                plugin.getLogger().severe("Error importing " + file.getName() + ": " + e.getMessage());
+                sendLater(sender, ChatColor.RED + "✖ Error importing " + file.getName() + ": " + e.getMessage());
+            } finally {
+                transferRunning.set(false);
             }
+        });
+        return true;
+    }
 
-            sender.sendMessage(ChatColor.RED + "═════════════════════════════════════");
-            sender.sendMessage(ChatColor.RED + "   Failed Login Attempts (Last 10)");
-            sender.sendMessage(ChatColor.RED + "═════════════════════════════════════");
+    private boolean handleExport(CommandSender sender, String[] args) {
+        if (args.length != 2) {
+            sender.sendMessage(ChatColor.RED + "Usage: ipmanager export <file.csv|file.jsonl>");
+            return true;
+        }
 
-            for (Map<String, String> attempt : attempts) {
-                sender.sendMessage("");
-                sender.sendMessage(ChatColor.YELLOW + "Player: " + ChatColor.WHITE + attempt.get("player"));
-                sender.sendMessage(ChatColor.GRAY + "  IP: " + ChatColor.WHITE + attempt.get("attempted-ip"));
-                sender.sendMessage(ChatColor.GRAY + "  Reason: " + ChatColor.WHITE + attempt.get("reason"));
-                sender.sendMessage(ChatColor.GRAY + "  Time: " + ChatColor.WHITE + attempt.get("timestamp"));
+        File file = resolveFile(args[1]);
+        RegistryTransfer.Format format = RegistryTransfer.Format.forFile(file);
+        if (format == null) {
+            sender.sendMessage(ChatColor.RED + "✖ Unknown file type, use .csv or .jsonl");
+            return true;
+        }
+        if (!transferRunning.compareAndSet(false, true)) {
+            sender.sendMessage(ChatColor.RED + "✖ An import or export is already running.");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + "Exporting to " + file.getName() + "...");
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            try {
+                long players = new RegistryTransfer(dataManager, plugin.getLogger())
+                        .exportFile(file, format, (done, entries) -> sendLater(sender,
+                                ChatColor.GRAY + "  " + done + " players written..."));
+                sendLater(sender, ChatColor.GREEN + "✓ Exported " + players + " players to " + ChatColor.WHITE
+                        + file.getPath());
+            } catch (IOException e) {
+                plugin.getLogger().severe("Error exporting " + file.getName() + ": " + e.getMessage());
+                sendLater(sender, ChatColor.RED + "✖ Error exporting " + file.getName() + ": " + e.getMessage());
+            } finally {
+                transferRunning.set(false);
             }
+        });
+        return true;
+    }
+
+    /**
+     * Relative paths point into the plugin folder.
+     */
+    private File resolveFile(String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : new File(plugin.getDataFolder(), path);
+    }
+
+    private void sendLater(CommandSender sender, String message) {
+        Bukkit.getScheduler().runTask(plugin, () -> sender.sendMessage(message));
+    }
+
+    private boolean handleStats(CommandSender sender) {
+        MetricsReporter metrics = plugin.getMetrics();
+        PlayerConnectionListener listener = metrics.getListener();
+        GeoIPChecker geoIPChecker = plugin.getGeoIPChecker();
 
-            sender.sendMessage("");
-            sender.sendMessage(ChatColor.RED + "═════════════════════════════════════");
+        long allowed = listener.getAllowedCount();
+        long denied = listener.getDeniedRateLimitCount() + listener.getDeniedIPCount() + listener.getDeniedCountryCount()
+                + listener.getNotReadyCount();
+        long cacheHits = geoIPChecker.getCacheHits() + geoIPChecker.getNegativeCacheHits();
+        long cacheLookups = cacheHits + geoIPChecker.getCacheMisses();
+
+        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+        sender.sendMessage(ChatColor.GREEN + "   SingleIP Metrics");
+        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+        sender.sendMessage(ChatColor.GRAY + "Pre-logins: " + ChatColor.WHITE + (allowed + denied) + " (" +
+                String.format("%.2f", metrics.rate(allowed + denied)) + "/s), " + allowed + " allowed, " +
+                listener.getDeniedIPCount() + " IP denied, " + listener.getDeniedCountryCount() + " country denied, " +
+                listener.getDeniedRateLimitCount() + " rate limited, " + listener.getNotReadyCount() + " before IPs loaded");
+        sendLatency(sender, "Pre-login", listener.getPreLoginLatency(), metrics);
+        sendLatency(sender, "Storage load", dataManager.getLoadLatency(), metrics);
+        sendLatency(sender, "Storage save", dataManager.getSaveLatency(), metrics);
+        sendLatency(sender, "Storage record", dataManager.getRecordLatency(), metrics);
+        sendLatency(sender, "Failed-login log", dataManager.getFailedLoginLatency(), metrics);
+        sendLatency(sender, "GeoIP lookup", geoIPChecker.getLookupLatency(), metrics);
+        sender.sendMessage(ChatColor.GRAY + "GeoIP cache: " + ChatColor.WHITE + (cacheLookups == 0 ? "-" :
+                String.format("%.1f%%", 100d * cacheHits / cacheLookups)) + " hit rate, " +
+                geoIPChecker.getCacheSize() + " entries, " + geoIPChecker.getCacheEvictions() + " evicted, " +
+                geoIPChecker.getCoalescedLookups() + " joined a lookup in flight");
+        sender.sendMessage(ChatColor.GRAY + "Rate limiter: " + ChatColor.WHITE +
+                plugin.getRateLimiter().getRejectedCount() + " rejected since last reload");
+        if (metrics.getPrometheusFile() != null) {
+            sender.sendMessage(ChatColor.GRAY + "Prometheus export: " + ChatColor.WHITE + metrics.getPrometheusFile().getName());
+        }
+        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+        return true;
+    }
+
+    private static void sendLatency(CommandSender sender, String name, LatencyHistogram histogram, MetricsReporter metrics) {
+        long count = histogram.getCount();
+        if (count == 0) {
+            sender.sendMessage(ChatColor.GRAY + name + ": " + ChatColor.WHITE + "no samples");
+            return;
+        }
+        sender.sendMessage(ChatColor.GRAY + name + ": " + ChatColor.WHITE + String.format(
+                "p50 %s, p99 %s, max %s (%d, %.2f/s)",
+                formatNanos(histogram.getPercentileNanos(0.5)), formatNanos(histogram.getPercentileNanos(0.99)),
+                formatNanos(histogram.getMaxNanos()), count, metrics.rate(count)));
+    }
+
+    private static String formatNanos(long nanos) {
+        if (nanos < 1_000_000L) {
+            return String.format("%.1f µs", nanos / 1000d);
+        }
+        return String.format("%.1f ms", nanos / 1_000_000d);
+    }
+
+    private boolean handleWho(CommandSender sender, String[] args) {
+        if (args.length != 2) {
+            sender.sendMessage(ChatColor.RED + "Usage: ipmanager who <ip|cidr>");
             return true;
         }
 
-        if (args.length == 2) {
-            // Mostrar intentos fallidos de un jugador específico
-            String playerName = args[1];
-            OfflinePlayer target = Bukkit.getOfflinePlayer(playerName);
-            UUID uuid = target.getUniqueId();
+        Map<String, Set<UUID>> matches = dataManager.findPlayersByIP(args[1], WHO_MAX_ADDRESSES + 1);
+        if (matches == null) {
+            sender.sendMessage(ChatColor.RED + "✖ Invalid IP or CIDR range: " + args[1]);
+            sender.sendMessage(ChatColor.YELLOW + "Examples: 203.0.113.7, 203.0.113.0/24, 2001:db8::/48");
+            return true;
+        }
 
-            List<Map<String, String>> attempts = dataManager.getFailedLoginsByPlayer(uuid, 10);
+        if (matches.isEmpty()) {
+            sender.sendMessage(ChatColor.YELLOW + "⚠ No players registered on " + args[1]);
+            return true;
+        }
 
-            if (attempts.isEmpty()) {
-                sender.sendMessage(ChatColor.GREEN + "✓ No failed login attempts for " + playerName);
-                return true;
+        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+        sender.sendMessage(ChatColor.GREEN + "   Players on " + args[1]);
+        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+
+        int shown = 0;
+        for (Map.Entry<String, Set<UUID>> entry : matches.entrySet()) {
+            if (shown++ >= WHO_MAX_ADDRESSES) {
+                sender.sendMessage(ChatColor.GRAY + "... more addresses, narrow the range to see them");
+                break;
             }
+            sender.sendMessage(ChatColor.AQUA + entry.getKey() + ChatColor.GRAY + " (" + entry.getValue().size() + ")");
+            for (UUID uuid : entry.getValue()) {
+                String name = plugin.getPlayerNames().getName(uuid);
+                sender.sendMessage(ChatColor.GRAY + "  - " + ChatColor.WHITE + (name != null ? name : uuid.toString()));
+            }
+        }
 
-            sender.sendMessage(ChatColor.RED + "═════════════════════════════════════");
-            sender.sendMessage(ChatColor.RED + "   Failed Logins: " + playerName);
-            sender.sendMessage(ChatColor.RED + "═════════════════════════════════════");
+        sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
+        return true;
+    }
 
-            for (Map<String, String> attempt : attempts) {
-                sender.sendMessage("");
-                sender.sendMessage(ChatColor.GRAY + "  IP: " + ChatColor.WHITE + attempt.get("attempted-ip"));
-                sender.sendMessage(ChatColor.GRAY + "  Reason: " + ChatColor.WHITE + attempt.get("reason"));
-                sender.sendMessage(ChatColor.GRAY + "  Time: " + ChatColor.WHITE + attempt.get("timestamp"));
-            }
+    private boolean handleFailedLogins(CommandSender sender, String[] args) {
+        String target = null;
+        long since = Long.MIN_VALUE;
+        long until = Long.MAX_VALUE;
+        int page = 1;
 
-            sender.sendMessage("");
-            sender.sendMessage(ChatColor.RED + "═════════════════════════════════════");
+        try {
+            for (int i = 1; i < args.length; i++) {
+                String arg = args[i].toLowerCase();
+                if ((arg.equals("--since") || arg.equals("--until") || arg.equals("--page")) && i + 1 < args.length) {
+                    String value = args[++i];
+                    if (arg.equals("--since")) {
+                        since = parseTime(value);
+                    } else if (arg.equals("--until")) {
+                        until = parseTime(value);
+                    } else {
+                        page = Math.max(1, Integer.parseInt(value));
+                    }
+                } else if (target == null && !arg.startsWith("--")) {
+                    target = args[i];
+                } else {
+                    sender.sendMessage(ChatColor.RED + "Usage: ipmanager failed [player|ip] [--since <time>] [--until <time>] [--page <n>]");
+                    return true;
+                }
+            }
+        } catch (IllegalArgumentException | java.time.DateTimeException e) {
+            sender.sendMessage(ChatColor.RED + "✖ Invalid value: " + e.getMessage());
+            sender.sendMessage(ChatColor.YELLOW + "Times can be relative (30m, 12h, 7d) or dates (2024-01-31 or 2024-01-31T18:00)");
             return true;
         }
 
-        sender.sendMessage(ChatColor.RED + "Usage: ipmanager failed [player]");
+        UUID uuid = null;
+        if (target != null && !dataManager.isValidIP(target)) {
+            uuid = resolvePlayer(target);
+            if (uuid == null) {
+                sender.sendMessage(ChatColor.RED + "✖ Unknown player: " + target);
+                return true;
+            }
+        }
+
+        String query = target;
+        UUID player = uuid;
+        long from = since;
+        long to = until;
+        int requestedPage = page;
+        // With sqlite storage the failed logins are read from the database
+        Bukkit.getScheduler().runTaskAsynchronously(plugin, () -> {
+            List<String> lines = buildFailedLoginsPage(query, player, from, to, requestedPage);
+            Bukkit.getScheduler().runTask(plugin, () -> lines.forEach(sender::sendMessage));
+        });
         return true;
     }
 
+    private List<String> buildFailedLoginsPage(String target, UUID uuid, long since, long until, int page) {
+        int offset = (page - 1) * FAILED_PAGE_SIZE;
+        List<FailedLoginRecord> attempts;
+        String title;
+
+        if (target == null) {
+            // Intentos fallidos globales
+            attempts = dataManager.getFailedLogins(since, until, offset, FAILED_PAGE_SIZE + 1);
+            title = "Failed Login Attempts";
+        } else if (uuid == null) {
+            attempts = dataManager.getFailedLoginsByIP(target, since, until, offset, FAILED_PAGE_SIZE + 1);
+            title = "Failed Logins from " + target;
+        } else {
+            // Intentos fallidos de un jugador específico
+            attempts = dataManager.getFailedLoginsByPlayer(uuid, since, until, offset, FAILED_PAGE_SIZE + 1);
+            title = "Failed Logins: " + target;
+        }
+
+        List<String> lines = new ArrayList<>();
+        if (attempts.isEmpty()) {
+            lines.add(ChatColor.GREEN + "✓ No failed login attempts" + (target == null ? " recorded." : " for " + target));
+            return lines;
+        }
+
+        boolean hasMore = attempts.size() > FAILED_PAGE_SIZE;
+        if (hasMore) {
+            attempts = attempts.subList(0, FAILED_PAGE_SIZE);
+        }
+
+        lines.add(ChatColor.RED + "═════════════════════════════════════");
+        lines.add(ChatColor.RED + "   " + title + " (Page " + page + ")");
+        lines.add(ChatColor.RED + "═════════════════════════════════════");
+
+        for (FailedLoginRecord attempt : attempts) {
+            lines.add("");
+            lines.add(ChatColor.YELLOW + "Player: " + ChatColor.WHITE + attempt.getPlayerName());
+            lines.add(ChatColor.GRAY + "  IP: " + ChatColor.WHITE + attempt.getAttemptedIP());
+            lines.add(ChatColor.GRAY + "  Reason: " + ChatColor.WHITE + attempt.getReason());
+            lines.add(ChatColor.GRAY + "  Time: " + ChatColor.WHITE + attempt.getFormattedTimestamp());
+        }
+
+        lines.add("");
+        if (hasMore) {
+            lines.add(ChatColor.GRAY + "More results: add " + ChatColor.WHITE + "--page " + (page + 1));
+        }
+        lines.add(ChatColor.RED + "═════════════════════════════════════");
+        return lines;
+    }
+
+    /**
+     * Parses a relative time such as {@code 30m} or {@code 7d} into the instant that long ago,
+     * or an ISO date or date-time in the server's zone.
+     */
+    static long parseTime(String value) {
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("empty time");
+        }
+        char unit = Character.toLowerCase(value.charAt(value.length() - 1));
+        if (Character.isLetter(unit) && value.length() > 1 && Character.isDigit(value.charAt(0))) {
+            long amount = Long.parseLong(value.substring(0, value.length() - 1));
+            long millis;
+            switch (unit) {
+                case 's': millis = 1000L; break;
+                case 'm': millis = 60_000L; break;
+                case 'h': millis = 3_600_000L; break;
+                case 'd': millis = 86_400_000L; break;
+                case 'w': millis = 604_800_000L; break;
+                default: throw new IllegalArgumentException(value);
+            }
+            return System.currentTimeMillis() - amount * millis;
+        }
+
+        java.time.LocalDateTime dateTime = value.contains("T")
+                ? java.time.LocalDateTime.parse(value)
+                : java.time.LocalDate.parse(value).atStartOfDay();
+        return dateTime.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     private void sendHelp(CommandSender sender) {
         sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
         sender.sendMessage(ChatColor.GREEN + "   SingleIPPlugin - Commands");
         sender.sendMessage(ChatColor.GRAY + "   By Chagui68");
         sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
-        sender.sendMessage(ChatColor.YELLOW + "ipmanager add <player> <ip>");
-        sender.sendMessage(ChatColor.GRAY + "  → Add second IP for a player");
+        sender.sendMessage(ChatColor.YELLOW + "ipmanager add <player> <ip|cidr>");
+        sender.sendMessage(ChatColor.GRAY + "  → Add an IP or range for a player");
         sender.sendMessage("");
         sender.sendMessage(ChatColor.YELLOW + "ipmanager remove <player> <ip>");
         sender.sendMessage(ChatColor.GRAY + "  → Remove a specific IP");
         sender.sendMessage("");
-        sender.sendMessage(ChatColor.YELLOW + "ipmanager list");
-        sender.sendMessage(ChatColor.GRAY + "  → View all registered players");
+        sender.sendMessage(ChatColor.YELLOW + "ipmanager list [page] [--sort ips|name] [--filter <prefix>]");
+        sender.sendMessage(ChatColor.GRAY + "  → View registered players");
         sender.sendMessage("");
         sender.sendMessage(ChatColor.YELLOW + "ipmanager info <player>");
         sender.sendMessage(ChatColor.GRAY + "  → View player IP details");
@@ -346,10 +728,25 @@ public class IPCommand implements CommandExecutor, TabCompleter {
         sender.sendMessage(ChatColor.GRAY + "  → Remove all IPs for a player");
         sender.sendMessage("");
         sender.sendMessage(ChatColor.YELLOW + "ipmanager reload");
-        sender.sendMessage(ChatColor.GRAY + "  → Reload player IPs from file");
+        sender.sendMessage(ChatColor.GRAY + "  → Reload config and player IPs, applying only what changed");
+        sender.sendMessage("");
+        sender.sendMessage(ChatColor.YELLOW + "ipmanager who <ip|cidr>");
+        sender.sendMessage(ChatColor.GRAY + "  → View players registered on an IP or range");
         sender.sendMessage("");
-        sender.sendMessage(ChatColor.YELLOW + "ipmanager failed [player]");
+        sender.sendMessage(ChatColor.YELLOW + "ipmanager failed [player|ip] [--since <time>] [--until <time>] [--page <n>]");
         sender.sendMessage(ChatColor.GRAY + "  → View failed login attempts");
+        sender.sendMessage("");
+        sender.sendMessage(ChatColor.YELLOW + "ipmanager replication");
+        sender.sendMessage(ChatColor.GRAY + "  → View replication lag and throughput");
+        sender.sendMessage("");
+        sender.sendMessage(ChatColor.YELLOW + "ipmanager stats");
+        sender.sendMessage(ChatColor.GRAY + "  → View login, storage and GeoIP latencies");
+        sender.sendMessage("");
+        sender.sendMessage(ChatColor.YELLOW + "ipmanager import <file.csv|file.jsonl> [--dry-run]");
+        sender.sendMessage(ChatColor.GRAY + "  → Add uuid/IP pairs from a file in the plugin folder");
+        sender.sendMessage("");
+        sender.sendMessage(ChatColor.YELLOW + "ipmanager export <file.csv|file.jsonl>");
+        sender.sendMessage(ChatColor.GRAY + "  → Write every registered IP to a file");
         sender.sendMessage(ChatColor.GREEN + "═════════════════════════════════════");
     }
 
@@ -362,15 +759,42 @@ public class IPCommand implements CommandExecutor, TabCompleter {
         List<String> completions = new ArrayList<>();
 
         if (args.length == 1) {
-            completions.addAll(Arrays.asList("add", "remove", "list", "info", "reset", "reload", "failed"));
-        } else if (args.length == 2 && !args[0].equalsIgnoreCase("list") && !args[0].equalsIgnoreCase("reload")) {
-            for (OfflinePlayer player : Bukkit.getOfflinePlayers()) {
-                if (player.getName() != null) {
-                    completions.add(player.getName());
-                }
-            }
+            completions.addAll(Arrays.asList("add", "remove", "list", "info", "reset", "reload", "failed", "who", "replication",
+                    "stats", "import", "export"));
+        } else if (args.length == 2 && !args[0].equalsIgnoreCase("list") && !args[0].equalsIgnoreCase("reload")
+                && !args[0].equalsIgnoreCase("who") && !args[0].equalsIgnoreCase("replication")
+                && !args[0].equalsIgnoreCase("stats") && !args[0].equalsIgnoreCase("import")
+                && !args[0].equalsIgnoreCase("export")) {
+            completions.addAll(plugin.getPlayerNames().complete(args[1], TAB_COMPLETE_LIMIT));
         }
 
         return completions;
     }
+
+    /**
+     * Looks a player up by the last name they connected with, or by UUID.
+     * Returns null if the plugin never saw them.
+     */
+    private UUID resolvePlayer(String nameOrUUID) {
+        if (nameOrUUID.length() == 36 && nameOrUUID.indexOf('-') == 8) {
+            try {
+                return UUID.fromString(nameOrUUID);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+        return plugin.getPlayerNames().getUUID(nameOrUUID);
+    }
+
+    private static final class ListEntry {
+        final UUID uuid;
+        final String name;
+        final int ips;
+
+        ListEntry(UUID uuid, String name, int ips) {
+            this.uuid = uuid;
+            this.name = name;
+            this.ips = ips;
+        }
+    }
 }
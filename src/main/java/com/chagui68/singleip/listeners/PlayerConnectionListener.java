@@ -2,7 +2,11 @@ package com.chagui68.singleip.listeners;
 
 import com.chagui68.singleip.SingleIPPlugin;
 import com.chagui68.singleip.storage.IPDataManager;
-import org.bukkit.ChatColor;
+import com.chagui68.singleip.utils.AccessLogger;
+import com.chagui68.singleip.utils.AccessPolicy;
+import com.chagui68.singleip.utils.CountryFilter;
+import com.chagui68.singleip.utils.GeoIPChecker;
+import com.chagui68.singleip.utils.LatencyHistogram;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
@@ -11,46 +15,175 @@ import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
 
 import java.net.InetAddress;
-import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
 
 public class PlayerConnectionListener implements Listener {
 
     private final SingleIPPlugin plugin;
     private final IPDataManager dataManager;
+    private final GeoIPChecker geoIPChecker;
+    private final AccessLogger accessLogger;
 
-    public PlayerConnectionListener(SingleIPPlugin plugin, IPDataManager dataManager) {
+    private final LatencyHistogram preLoginLatency = new LatencyHistogram();
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder deniedRateLimit = new LongAdder();
+    private final LongAdder deniedIP = new LongAdder();
+    private final LongAdder deniedCountry = new LongAdder();
+    private final LongAdder notReady = new LongAdder();
+
+    public PlayerConnectionListener(SingleIPPlugin plugin, IPDataManager dataManager, GeoIPChecker geoIPChecker,
+                                    AccessLogger accessLogger) {
         this.plugin = plugin;
         this.dataManager = dataManager;
+        this.geoIPChecker = geoIPChecker;
+        this.accessLogger = accessLogger;
     }
 
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
-        UUID uuid = event.getUniqueId();
+        long start = System.nanoTime();
+        try {
+            handlePreLogin(event, start);
+        } finally {
+            preLoginLatency.record(System.nanoTime() - start);
+        }
+    }
+
+    private void handlePreLogin(AsyncPlayerPreLoginEvent event, long start) {
         InetAddress address = event.getAddress();
-        String playerIP = address.getHostAddress();
+        AccessPolicy policy = plugin.getPolicy();
+
+        // Floods are turned away here, before any lookup, storage access or logging
+        if (!plugin.getRateLimiter().tryAcquire(address)) {
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, policy.getKickRateLimitMessage());
+            deniedRateLimit.increment();
+            return;
+        }
+
+        UUID uuid = event.getUniqueId();
         String playerName = event.getName();
+        plugin.getPlayerNames().record(uuid, playerName);
 
-        if (!dataManager.hasRegisteredIP(uuid)) {
-            dataManager.registerFirstIP(uuid, playerIP);
-            plugin.getLogger().info("First IP registered for " + playerName + ": " + playerIP);
+        // Only connections arriving while the stored IPs are still loading ever wait here
+        if (!dataManager.isLoaded() && !dataManager.awaitLoaded(policy.getNotReadyWaitMillis())) {
+            notReady.increment();
+            if (!policy.isAllowWhenNotReady()) {
+                event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, policy.getKickNotReadyMessage());
+                return;
+            }
+            plugin.getLogger().warning("Connection allowed unchecked while IPs load - Player: " + playerName +
+                    " | IP: " + address.getHostAddress());
             return;
         }
+        CountryFilter countryFilter = policy.getCountryFilter();
 
-        if (!dataManager.isIPAllowed(uuid, playerIP)) {
-            String kickMessage = plugin.getConfig().getString("kick-message",
-                    ChatColor.RED + "✖ Unauthorized IP address\n" +
-                            ChatColor.GRAY + "This IP is not registered for your account\n" +
-                            ChatColor.YELLOW + "Contact an administrator if you need help");
+        // Start the country lookup first so it runs while the IP checks below are made
+        CompletableFuture<String> countryLookup = countryFilter.isEnabled()
+                ? geoIPChecker.getCountryCode(address.getHostAddress())
+                : null;
 
-            int maxIPs = plugin.getConfig().getInt("max-ips-per-player", 2);
-            List<String> registeredIPs = dataManager.getRegisteredIPs(uuid);
+        boolean registered = dataManager.hasRegisteredIP(uuid);
 
-            String reason = "IP not registered (" + registeredIPs.size() + "/" + maxIPs + " IPs used)";
+        if (registered && !dataManager.isIPAllowed(uuid, address) && !policy.isAlwaysAllowed(address.getAddress())) {
+            String playerIP = address.getHostAddress();
+            String reason = "IP not registered (" + dataManager.getIPCount(uuid) + "/" + policy.getMaxIPsPerPlayer() + " IPs used)";
             dataManager.logFailedLogin(playerName, uuid, playerIP, reason);
 
-            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, kickMessage);
+            event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, policy.getKickMessage());
+            deniedIP.increment();
             plugin.getLogger().warning("Connection denied - Player: " + playerName + " | IP: " + playerIP);
+            return;
+        }
+
+        if (countryLookup != null) {
+            String countryCode = awaitCountry(countryLookup, start, countryFilter.getDeadlineMillis());
+            CountryFilter.Result result = countryFilter.check(countryCode);
+
+            if (result == CountryFilter.Result.BLOCKED || result == CountryFilter.Result.UNRESOLVED_BLOCKED) {
+                String playerIP = address.getHostAddress();
+                String reason = result == CountryFilter.Result.BLOCKED
+                        ? "Country not allowed (" + countryCode + ")"
+                        : "Country lookup did not finish in " + countryFilter.getDeadlineMillis() + " ms";
+
+                dataManager.logFailedLogin(playerName, uuid, playerIP, reason);
+                event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER, policy.getKickCountryMessage());
+                deniedCountry.increment();
+                plugin.getLogger().warning("Connection denied - Player: " + playerName + " | IP: " + playerIP + " | " + reason);
+                return;
+            }
+
+            if (result == CountryFilter.Result.UNRESOLVED_ALLOWED && policy.isDebug()) {
+                plugin.getLogger().info("Country unresolved for " + playerName + ", allowed by fail-policy");
+            }
+        }
+
+        if (!registered) {
+            String playerIP = address.getHostAddress();
+            dataManager.registerFirstIP(uuid, playerIP);
+            plugin.getLogger().info("First IP registered for " + playerName + ": " + playerIP);
+        }
+
+        accessLogger.logAccessAttempt(uuid, playerName, address.getHostAddress(), deviceName(policy, uuid));
+        allowed.increment();
+    }
+
+    /** Time from the start of a pre-login to its decision, whatever the outcome. */
+    public LatencyHistogram getPreLoginLatency() {
+        return preLoginLatency;
+    }
+
+    public long getAllowedCount() {
+        return allowed.sum();
+    }
+
+    public long getDeniedRateLimitCount() {
+        return deniedRateLimit.sum();
+    }
+
+    public long getDeniedIPCount() {
+        return deniedIP.sum();
+    }
+
+    public long getDeniedCountryCount() {
+        return deniedCountry.sum();
+    }
+
+    /**
+     * Connections that arrived before the stored IPs were loaded and waited in
+     * vain, whether they were then kicked or let in by the not-ready policy.
+     */
+    public long getNotReadyCount() {
+        return notReady.sum();
+    }
+
+    /**
+     * Floodgate gives Bedrock players UUIDs with the upper half zeroed; anyone else joined with Java.
+     */
+    private static String deviceName(AccessPolicy policy, UUID uuid) {
+        if (!policy.isSaveDeviceName()) {
+            return "Unknown";
+        }
+        return uuid.getMostSignificantBits() == 0 ? "Bedrock Edition" : "Java Edition";
+    }
+
+    /**
+     * Waits for the lookup only for what is left of the per-login budget.
+     * Returns null when it fails or misses the deadline.
+     */
+    private static String awaitCountry(CompletableFuture<String> lookup, long startNanos, long deadlineMillis) {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(deadlineMillis) - (System.nanoTime() - startNanos);
+        try {
+            return remaining > 0 ? lookup.get(remaining, TimeUnit.NANOSECONDS) : lookup.getNow(null);
+        } catch (TimeoutException | ExecutionException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
         }
     }
 
@@ -59,7 +192,8 @@ public class PlayerConnectionListener implements Listener {
         Player player = event.getPlayer();
         UUID uuid = player.getUniqueId();
 
-        if (!dataManager.hasRegisteredIP(uuid)) {
+        // Registering now would be overwritten by the stored IPs still loading
+        if (dataManager.isLoaded() && !dataManager.hasRegisteredIP(uuid)) {
             String ip = player.getAddress().getAddress().getHostAddress();
             dataManager.registerFirstIP(uuid, ip);
             plugin.getLogger().info("First IP registered for " + player.getName() + ": " + ip);
@@ -0,0 +1,176 @@
+package com.chagui68.singleip.replication;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versions of the entries of one player, including tombstones for removed
+ * entries and the version of the last reset. The highest version wins; equal
+ * versions are ordered by server ID so every server picks the same winner.
+ * Entries loaded from disk have no version and lose to any replicated change,
+ * including a tombstone remembered from before a restart.
+ */
+final class EntryVersions {
+
+    static final long UNVERSIONED = 0L;
+
+    private final Map<String, Version> entries = new HashMap<>();
+    private long clearedAt = -1;
+    private String clearedBy = "";
+
+    /**
+     * Records an add or removal if it is newer than what is known. Returns
+     * whether it won and should be applied.
+     */
+    synchronized boolean accept(String entry, long version, String origin, boolean removed) {
+        if (clearedAt >= 0 && compare(clearedAt, clearedBy, version, origin) >= 0) {
+            return false;
+        }
+        Version current = entries.get(entry);
+        if (current != null && compare(current.version, current.origin, version, origin) >= 0) {
+            return false;
+        }
+        if (current == null && version == UNVERSIONED) {
+            // Nothing to remember beyond the entry itself
+            return true;
+        }
+        entries.put(entry, new Version(version, origin, removed));
+        return true;
+    }
+
+    /**
+     * Records a reset if it is newer than the last one. Entries older than it
+     * are forgotten; the caller removes them from the player's set.
+     */
+    synchronized boolean acceptClear(long version, String origin) {
+        if (clearedAt >= 0 && compare(clearedAt, clearedBy, version, origin) >= 0) {
+            return false;
+        }
+        clearedAt = version;
+        clearedBy = origin;
+        entries.values().removeIf(current -> compare(current.version, current.origin, version, origin) < 0);
+        return true;
+    }
+
+    /**
+     * Whether a present entry predates the last reset, i.e. has no newer add.
+     */
+    synchronized boolean isCleared(String entry) {
+        if (clearedAt < 0) {
+            return false;
+        }
+        Version current = entries.get(entry);
+        return current == null || compare(current.version, current.origin, clearedAt, clearedBy) < 0;
+    }
+
+    synchronized boolean isEmpty() {
+        return entries.isEmpty() && clearedAt < 0;
+    }
+
+    synchronized long versionOf(String entry) {
+        Version current = entries.get(entry);
+        return current == null || current.removed ? UNVERSIONED : current.version;
+    }
+
+    synchronized String originOf(String entry) {
+        Version current = entries.get(entry);
+        return current == null ? "" : current.origin;
+    }
+
+    synchronized long getClearedAt() {
+        return clearedAt;
+    }
+
+    synchronized String getClearedBy() {
+        return clearedBy;
+    }
+
+    synchronized List<String> tombstones() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Version> entry : entries.entrySet()) {
+            if (entry.getValue().removed) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    synchronized long tombstoneVersion(String entry) {
+        Version current = entries.get(entry);
+        return current == null || !current.removed ? UNVERSIONED : current.version;
+    }
+
+    /**
+     * Forgets tombstones and resets older than {@code version}.
+     */
+    synchronized void expire(long version) {
+        entries.values().removeIf(current -> current.removed && current.version < version);
+        if (clearedAt >= 0 && clearedAt < version) {
+            clearedAt = -1;
+            clearedBy = "";
+        }
+    }
+
+    /**
+     * Writes the versions, tombstones and last reset in the format {@link #read} expects.
+     */
+    synchronized void write(DataOutputStream out) throws IOException {
+        out.writeLong(clearedAt);
+        out.writeUTF(clearedBy);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, Version> entry : entries.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().version);
+            out.writeUTF(entry.getValue().origin);
+            out.writeBoolean(entry.getValue().removed);
+        }
+    }
+
+    static EntryVersions read(DataInputStream in) throws IOException {
+        EntryVersions result = new EntryVersions();
+        result.clearedAt = in.readLong();
+        result.clearedBy = in.readUTF();
+        int count = in.readInt();
+        if (count < 0) {
+            throw new IOException("Invalid entry count " + count);
+        }
+        for (int i = 0; i < count; i++) {
+            String entry = in.readUTF();
+            result.entries.put(entry, new Version(in.readLong(), in.readUTF(), in.readBoolean()));
+        }
+        return result;
+    }
+
+    /**
+     * The newest version known, to move the clock past it after a restart.
+     */
+    synchronized long newestVersion() {
+        long newest = clearedAt;
+        for (Version version : entries.values()) {
+            newest = Math.max(newest, version.version);
+        }
+        return newest;
+    }
+
+    static int compare(long version, String origin, long otherVersion, String otherOrigin) {
+        int result = Long.compare(version, otherVersion);
+        return result != 0 ? result : origin.compareTo(otherOrigin);
+    }
+
+    private static final class Version {
+        private final long version;
+        private final String origin;
+        private final boolean removed;
+
+        Version(long version, String origin, boolean removed) {
+            this.version = version;
+            this.origin = origin;
+            this.removed = removed;
+        }
+    }
+}
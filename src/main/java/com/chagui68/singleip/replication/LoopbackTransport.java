@@ -0,0 +1,63 @@
+package com.chagui68.singleip.replication;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Delivers messages between replicators in the same JVM that share a channel
+ * name, synchronously on the publishing thread. Meant for tests and
+ * benchmarks of the replication logic without a network.
+ */
+public class LoopbackTransport implements ReplicationTransport {
+
+    private static final Map<String, Set<LoopbackTransport>> CHANNELS = new ConcurrentHashMap<>();
+
+    private final String channel;
+    private volatile Receiver receiver;
+
+    public LoopbackTransport(String channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void start(Receiver receiver) {
+        this.receiver = receiver;
+        Set<LoopbackTransport> members = CHANNELS.computeIfAbsent(channel, key -> new CopyOnWriteArraySet<>());
+        for (LoopbackTransport member : members) {
+            receiver.connected(member.channelFrom(this));
+            member.receiver.connected(channelFrom(member));
+        }
+        members.add(this);
+    }
+
+    @Override
+    public void publish(byte[] message) {
+        for (LoopbackTransport member : CHANNELS.getOrDefault(channel, Set.of())) {
+            if (member != this) {
+                member.receiver.received(message, channelFrom(member));
+            }
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "loopback " + channel + ", " + (CHANNELS.getOrDefault(channel, Set.of()).size() - 1) + " peers";
+    }
+
+    @Override
+    public void close() {
+        Set<LoopbackTransport> members = CHANNELS.get(channel);
+        if (members != null) {
+            members.remove(this);
+        }
+    }
+
+    /**
+     * A channel into this transport's receiver whose replies go back to {@code sender}.
+     */
+    private Channel channelFrom(LoopbackTransport sender) {
+        return message -> receiver.received(message, sender.channelFrom(this));
+    }
+}
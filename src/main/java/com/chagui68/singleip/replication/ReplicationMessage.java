@@ -0,0 +1,102 @@
+package com.chagui68.singleip.replication;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Binary encoding of replication messages: a header with the message type,
+ * the sending server and the send time, followed by the deltas. A delta is
+ * the operation, the player, the entry version, the server that made the
+ * change and the canonical entry (empty for a reset).
+ */
+final class ReplicationMessage {
+
+    static final byte BATCH = 1;
+    static final byte SYNC_REQUEST = 2;
+    static final byte SYNC = 3;
+
+    private static final byte FORMAT = 1;
+
+    final byte type;
+    final String sender;
+    final long sentAt;
+    final List<Delta> deltas;
+
+    ReplicationMessage(byte type, String sender, long sentAt, List<Delta> deltas) {
+        this.type = type;
+        this.sender = sender;
+        this.sentAt = sentAt;
+        this.deltas = deltas;
+    }
+
+    static final class Delta {
+        final char op;
+        final UUID uuid;
+        final long version;
+        final String origin;
+        final String entry;
+
+        Delta(char op, UUID uuid, long version, String origin, String entry) {
+            this.op = op;
+            this.uuid = uuid;
+            this.version = version;
+            this.origin = origin;
+            this.entry = entry;
+        }
+    }
+
+    byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + deltas.size() * 48);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT);
+            out.writeByte(type);
+            out.writeUTF(sender);
+            out.writeLong(sentAt);
+            out.writeInt(deltas.size());
+            for (Delta delta : deltas) {
+                out.writeByte(delta.op);
+                out.writeLong(delta.uuid.getMostSignificantBits());
+                out.writeLong(delta.uuid.getLeastSignificantBits());
+                out.writeLong(delta.version);
+                // Most deltas in a batch come from the sender itself
+                out.writeUTF(delta.origin.equals(sender) ? "" : delta.origin);
+                out.writeUTF(delta.entry == null ? "" : delta.entry);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static ReplicationMessage decode(byte[] message) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(message));
+        if (in.readByte() != FORMAT) {
+            throw new IOException("Unsupported replication message format");
+        }
+        byte type = in.readByte();
+        String sender = in.readUTF();
+        long sentAt = in.readLong();
+        int count = in.readInt();
+        if (count < 0 || count > message.length / 20) {
+            throw new IOException("Invalid delta count " + count);
+        }
+
+        List<Delta> deltas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            char op = (char) in.readByte();
+            UUID uuid = new UUID(in.readLong(), in.readLong());
+            long version = in.readLong();
+            String origin = in.readUTF();
+            String entry = in.readUTF();
+            deltas.add(new Delta(op, uuid, version, origin.isEmpty() ? sender : origin, entry.isEmpty() ? null : entry));
+        }
+        return new ReplicationMessage(type, sender, sentAt, deltas);
+    }
+}
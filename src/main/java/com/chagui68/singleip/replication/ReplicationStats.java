@@ -0,0 +1,95 @@
+package com.chagui68.singleip.replication;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for {@code ipmanager replication}. Lag is measured from the moment
+ * a batch was sent to the moment it was applied here, so it includes clock
+ * skew between the servers.
+ */
+public class ReplicationStats {
+
+    private final long startedAt = System.currentTimeMillis();
+    private final LongAdder deltasPublished = new LongAdder();
+    private final LongAdder batchesPublished = new LongAdder();
+    private final LongAdder deltasReceived = new LongAdder();
+    private final LongAdder deltasApplied = new LongAdder();
+    private final LongAdder conflictsLost = new LongAdder();
+    private final LongAdder syncsServed = new LongAdder();
+    private final LongAdder lagTotal = new LongAdder();
+    private final LongAdder lagSamples = new LongAdder();
+    private final LongAccumulator lagMax = new LongAccumulator(Math::max, 0);
+    private volatile long lastLag;
+
+    void published(int deltas) {
+        deltasPublished.add(deltas);
+        batchesPublished.increment();
+    }
+
+    void received(int deltas, long sentAt) {
+        deltasReceived.add(deltas);
+        long lag = Math.max(0, System.currentTimeMillis() - sentAt);
+        lastLag = lag;
+        lagTotal.add(lag);
+        lagSamples.increment();
+        lagMax.accumulate(lag);
+    }
+
+    void applied() {
+        deltasApplied.increment();
+    }
+
+    void conflictLost() {
+        conflictsLost.increment();
+    }
+
+    void syncServed() {
+        syncsServed.increment();
+    }
+
+    public long getDeltasPublished() {
+        return deltasPublished.sum();
+    }
+
+    public long getBatchesPublished() {
+        return batchesPublished.sum();
+    }
+
+    public long getDeltasReceived() {
+        return deltasReceived.sum();
+    }
+
+    public long getDeltasApplied() {
+        return deltasApplied.sum();
+    }
+
+    public long getConflictsLost() {
+        return conflictsLost.sum();
+    }
+
+    public long getSyncsServed() {
+        return syncsServed.sum();
+    }
+
+    public long getLastLagMillis() {
+        return lastLag;
+    }
+
+    public long getMaxLagMillis() {
+        return lagMax.get();
+    }
+
+    public long getAverageLagMillis() {
+        long samples = lagSamples.sum();
+        return samples == 0 ? 0 : lagTotal.sum() / samples;
+    }
+
+    /**
+     * Deltas published and received per second since replication started.
+     */
+    public double getThroughput() {
+        double seconds = Math.max(1, System.currentTimeMillis() - startedAt) / 1000d;
+        return (deltasPublished.sum() + deltasReceived.sum()) / seconds;
+    }
+}
@@ -0,0 +1,45 @@
+package com.chagui68.singleip.replication;
+
+import java.io.IOException;
+
+/**
+ * Carries opaque messages between the servers of a network. Messages from one
+ * sender arrive in the order they were published; delivery is best effort, and
+ * the catch-up sync done whenever a link comes up repairs anything lost.
+ */
+public interface ReplicationTransport {
+
+    interface Receiver {
+        /**
+         * A message from another server. {@code replyTo} reaches only that server.
+         */
+        void received(byte[] message, Channel replyTo);
+
+        /**
+         * A link to another server came up; {@code channel} reaches only that server.
+         */
+        void connected(Channel channel);
+    }
+
+    interface Channel {
+        /**
+         * Sends to one server. Unlike {@link #publish} this may block while the
+         * server catches up, so large syncs are not dropped.
+         */
+        void send(byte[] message);
+    }
+
+    void start(Receiver receiver) throws IOException;
+
+    /**
+     * Sends a message to every other server without blocking on slow peers.
+     */
+    void publish(byte[] message);
+
+    /**
+     * A short human readable state, e.g. how many peers are connected.
+     */
+    String describe();
+
+    void close();
+}
@@ -0,0 +1,442 @@
+package com.chagui68.singleip.replication;
+
+import com.chagui68.singleip.SingleIPPlugin;
+import com.chagui68.singleip.storage.IPDataManager;
+import com.chagui68.singleip.storage.IPRange;
+import com.chagui68.singleip.storage.PlayerIPJournal;
+import com.chagui68.singleip.storage.PlayerIPSet;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the IP registry of several servers in sync. Every local change gets
+ * a version from a hybrid clock (milliseconds shifted left 16 bits, plus a
+ * counter) and is published in small batches; incoming changes are applied
+ * per entry only if their version is newer than the one known here, so all
+ * servers converge on the last write whatever order deltas arrive in.
+ * Whenever a link to another server comes up both sides exchange their full
+ * registry, which is how a server that joins late, or missed deltas while a
+ * link was down, catches up.
+ * <p>
+ * Versions, tombstones and resets are saved to {@code replication-state.dat}
+ * every few seconds and on shutdown, so a removal keeps winning over other
+ * servers' copies of the entry for the whole tombstone TTL, across restarts.
+ * Entries without a version, such as ones loaded from disk before replication
+ * was enabled, are merged as a union with the other servers' entries.
+ */
+public class Replicator implements IPDataManager.ChangeListener, ReplicationTransport.Receiver {
+
+    private static final byte STATE_FORMAT = 1;
+    private static final long STATE_SAVE_SECONDS = 5;
+
+    private final IPDataManager dataManager;
+    private final ReplicationTransport transport;
+    private final Logger logger;
+    private final String serverId;
+    private final int batchSize;
+    private final long tombstoneTtlMillis;
+    private final Map<UUID, EntryVersions> versions = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<ReplicationMessage.Delta> outgoing = new ConcurrentLinkedQueue<>();
+    private final AtomicLong clock = new AtomicLong();
+    private final ReplicationStats stats = new ReplicationStats();
+    private final ScheduledExecutorService publisher;
+    private final ExecutorService syncExecutor;
+    private final File stateFile;
+    private final AtomicBoolean stateDirty = new AtomicBoolean();
+
+    /**
+     * @param stateFile where versions are kept between restarts, or null to only keep them in memory
+     */
+    public Replicator(IPDataManager dataManager, ReplicationTransport transport, Logger logger, ConfigurationSection config,
+                      File stateFile) {
+        this.dataManager = dataManager;
+        this.transport = transport;
+        this.logger = logger;
+        this.stateFile = stateFile;
+        String configuredId = config == null ? "" : config.getString("server-id", "");
+        this.serverId = configuredId.isEmpty() ? UUID.randomUUID().toString().substring(0, 8) : configuredId;
+        this.batchSize = config == null ? 500 : Math.max(1, config.getInt("batch-size", 500));
+        this.tombstoneTtlMillis = TimeUnit.DAYS.toMillis(config == null ? 7 : Math.max(1, config.getLong("tombstone-ttl", 7)));
+
+        long interval = config == null ? 200 : Math.max(10, config.getLong("batch-interval", 200));
+        this.publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SingleIP-Replication");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleWithFixedDelay(this::publishPending, interval, interval, TimeUnit.MILLISECONDS);
+        publisher.scheduleWithFixedDelay(this::expireTombstones, 1, 1, TimeUnit.HOURS);
+        publisher.scheduleWithFixedDelay(this::saveState, STATE_SAVE_SECONDS, STATE_SAVE_SECONDS, TimeUnit.SECONDS);
+        this.syncExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "SingleIP-Replication-Sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Builds a replicator from the {@code replication} section, or returns null
+     * if replication is disabled or misconfigured.
+     */
+    public static Replicator fromConfig(SingleIPPlugin plugin, IPDataManager dataManager) {
+        ConfigurationSection section = plugin.getConfig().getConfigurationSection("replication");
+        if (section == null || !section.getBoolean("enabled", false)) {
+            return null;
+        }
+
+        ReplicationTransport transport;
+        String type = section.getString("transport", "socket");
+        if (type.equalsIgnoreCase("loopback")) {
+            transport = new LoopbackTransport(section.getString("channel", "singleip"));
+        } else if (type.equalsIgnoreCase("socket")) {
+            transport = SocketTransport.fromConfig(section.getConfigurationSection("socket"), plugin.getLogger());
+        } else {
+            plugin.getLogger().severe("Unknown replication transport: " + type);
+            return null;
+        }
+        return transport == null ? null : new Replicator(dataManager, transport, plugin.getLogger(), section,
+                new File(plugin.getDataFolder(), "replication-state.dat"));
+    }
+
+    public void start() throws IOException {
+        loadState();
+        dataManager.setChangeListener(this);
+        transport.start(this);
+        logger.info("Replication started as " + serverId + " (" + transport.describe() + ")");
+    }
+
+    public String getServerId() {
+        return serverId;
+    }
+
+    public ReplicationStats getStats() {
+        return stats;
+    }
+
+    public String describeTransport() {
+        return transport.describe();
+    }
+
+    public int getPendingCount() {
+        return outgoing.size();
+    }
+
+    /**
+     * Publishes what is still queued and stops, waiting at most {@code timeoutMillis}.
+     */
+    public void shutdown(long timeoutMillis) {
+        dataManager.setChangeListener(null);
+        publisher.execute(this::publishPending);
+        publisher.execute(this::saveState);
+        publisher.shutdown();
+        syncExecutor.shutdownNow();
+        try {
+            if (!publisher.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warning("Timed out publishing replication deltas, " + outgoing.size() + " not sent");
+                publisher.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            publisher.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        transport.close();
+    }
+
+    /**
+     * Called inside the compute for the player, so versions for one player are
+     * handed out in the order the changes were applied.
+     */
+    @Override
+    public void changed(char op, UUID uuid, String ip) {
+        long version = tick();
+        update(uuid, entryVersions -> op == PlayerIPJournal.CLEAR
+                ? entryVersions.acceptClear(version, serverId)
+                : entryVersions.accept(ip, version, serverId, op == PlayerIPJournal.REMOVE));
+        outgoing.add(new ReplicationMessage.Delta(op, uuid, version, serverId, ip));
+    }
+
+    @Override
+    public void connected(ReplicationTransport.Channel channel) {
+        channel.send(new ReplicationMessage(ReplicationMessage.SYNC_REQUEST, serverId,
+                System.currentTimeMillis(), new ArrayList<>()).encode());
+        syncExecutor.execute(() -> sendState(channel));
+    }
+
+    @Override
+    public void received(byte[] message, ReplicationTransport.Channel replyTo) {
+        ReplicationMessage decoded;
+        try {
+            decoded = ReplicationMessage.decode(message);
+        } catch (IOException e) {
+            logger.warning("Invalid replication message ignored: " + e.getMessage());
+            return;
+        }
+        if (decoded.sender.equals(serverId)) {
+            return;
+        }
+
+        switch (decoded.type) {
+            case ReplicationMessage.SYNC_REQUEST:
+                syncExecutor.execute(() -> sendState(replyTo));
+                break;
+            case ReplicationMessage.BATCH:
+                stats.received(decoded.deltas.size(), decoded.sentAt);
+                decoded.deltas.forEach(this::apply);
+                break;
+            case ReplicationMessage.SYNC:
+                decoded.deltas.forEach(this::apply);
+                break;
+            default:
+                logger.warning("Unknown replication message type ignored: " + decoded.type);
+        }
+    }
+
+    private void apply(ReplicationMessage.Delta delta) {
+        observe(delta.version);
+
+        if (delta.op == PlayerIPJournal.CLEAR) {
+            applyClear(delta);
+            return;
+        }
+
+        IPRange entry = delta.entry == null ? null : IPRange.parse(delta.entry);
+        if (entry == null) {
+            logger.warning("Invalid replicated IP ignored: " + delta.entry);
+            return;
+        }
+        String ip = entry.toString();
+        boolean removed = delta.op == PlayerIPJournal.REMOVE;
+        if (!removed && delta.op != PlayerIPJournal.ADD) {
+            logger.warning("Unknown replicated operation ignored: " + delta.op);
+            return;
+        }
+
+        boolean[] won = new boolean[1];
+        dataManager.applyRemote(delta.uuid, delta.op, ip, current -> {
+            won[0] = update(delta.uuid, entryVersions -> entryVersions.accept(ip, delta.version, delta.origin, removed));
+            if (!won[0]) {
+                return current;
+            }
+            if (removed) {
+                return current == null ? null : current.without(entry);
+            }
+            return current == null ? PlayerIPSet.of(entry) : current.with(entry);
+        });
+
+        if (won[0]) {
+            stats.applied();
+        } else {
+            stats.conflictLost();
+        }
+    }
+
+    /**
+     * A reset only removes entries older than itself; an entry added after it
+     * elsewhere survives.
+     */
+    private void applyClear(ReplicationMessage.Delta delta) {
+        if (!update(delta.uuid, entryVersions -> entryVersions.acceptClear(delta.version, delta.origin))) {
+            stats.conflictLost();
+            return;
+        }
+
+        for (String ip : dataManager.getRegisteredIPs(delta.uuid)) {
+            IPRange entry = IPRange.parse(ip);
+            dataManager.applyRemote(delta.uuid, PlayerIPJournal.REMOVE, ip, current -> {
+                EntryVersions entryVersions = versions.get(delta.uuid);
+                if (current == null || entryVersions == null || !entryVersions.isCleared(ip)) {
+                    return current;
+                }
+                return current.without(entry);
+            });
+        }
+        stats.applied();
+    }
+
+    private void publishPending() {
+        try {
+            while (!outgoing.isEmpty()) {
+                List<ReplicationMessage.Delta> batch = new ArrayList<>(Math.min(batchSize, outgoing.size()));
+                ReplicationMessage.Delta delta;
+                while (batch.size() < batchSize && (delta = outgoing.poll()) != null) {
+                    batch.add(delta);
+                }
+                transport.publish(new ReplicationMessage(ReplicationMessage.BATCH, serverId,
+                        System.currentTimeMillis(), batch).encode());
+                stats.published(batch.size());
+            }
+        } catch (RuntimeException e) {
+            logger.severe("Error publishing replication deltas: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams the whole registry to one server: every entry with its version,
+     * plus the tombstones and resets it may not have seen.
+     */
+    private void sendState(ReplicationTransport.Channel channel) {
+        try {
+            Set<UUID> players = new HashSet<>(dataManager.getAllPlayers());
+            players.addAll(versions.keySet());
+
+            List<ReplicationMessage.Delta> batch = new ArrayList<>(batchSize);
+            for (UUID uuid : players) {
+                EntryVersions entryVersions = versions.get(uuid);
+                if (entryVersions != null) {
+                    long clearedAt = entryVersions.getClearedAt();
+                    if (clearedAt >= 0) {
+                        batch.add(new ReplicationMessage.Delta(PlayerIPJournal.CLEAR, uuid, clearedAt,
+                                entryVersions.getClearedBy(), null));
+                    }
+                    for (String ip : entryVersions.tombstones()) {
+                        batch.add(new ReplicationMessage.Delta(PlayerIPJournal.REMOVE, uuid,
+                                entryVersions.tombstoneVersion(ip), entryVersions.originOf(ip), ip));
+                    }
+                }
+                for (String ip : dataManager.getRegisteredIPs(uuid)) {
+                    long version = entryVersions == null ? EntryVersions.UNVERSIONED : entryVersions.versionOf(ip);
+                    String origin = entryVersions == null || version == EntryVersions.UNVERSIONED
+                            ? serverId : entryVersions.originOf(ip);
+                    batch.add(new ReplicationMessage.Delta(PlayerIPJournal.ADD, uuid, version, origin, ip));
+                }
+
+                if (batch.size() >= batchSize) {
+                    channel.send(new ReplicationMessage(ReplicationMessage.SYNC, serverId,
+                            System.currentTimeMillis(), batch).encode());
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                channel.send(new ReplicationMessage(ReplicationMessage.SYNC, serverId,
+                        System.currentTimeMillis(), batch).encode());
+            }
+            stats.syncServed();
+        } catch (RuntimeException e) {
+            logger.severe("Error sending replication sync: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Changes a player's versions under the map's lock, so a player whose
+     * versions are being expired never loses a concurrent update.
+     */
+    private boolean update(UUID uuid, Predicate<EntryVersions> change) {
+        boolean[] accepted = new boolean[1];
+        versions.compute(uuid, (key, current) -> {
+            EntryVersions entryVersions = current != null ? current : new EntryVersions();
+            accepted[0] = change.test(entryVersions);
+            stateDirty.set(true);
+            return entryVersions.isEmpty() ? null : entryVersions;
+        });
+        return accepted[0];
+    }
+
+    private void expireTombstones() {
+        long oldest = (System.currentTimeMillis() - tombstoneTtlMillis) << 16;
+        for (UUID uuid : versions.keySet()) {
+            versions.computeIfPresent(uuid, (key, entryVersions) -> {
+                entryVersions.expire(oldest);
+                stateDirty.set(true);
+                return entryVersions.isEmpty() ? null : entryVersions;
+            });
+        }
+    }
+
+    /**
+     * Reads the versions saved by the last run, dropping tombstones that have
+     * expired since. A missing or unreadable file leaves every entry unversioned.
+     */
+    private void loadState() {
+        if (stateFile == null || !stateFile.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile.toPath())))) {
+            if (in.readByte() != STATE_FORMAT) {
+                throw new IOException("unsupported format");
+            }
+            observe(in.readLong());
+            int players = in.readInt();
+            for (int i = 0; i < players; i++) {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                EntryVersions entryVersions = EntryVersions.read(in);
+                observe(entryVersions.newestVersion());
+                versions.put(uuid, entryVersions);
+            }
+            expireTombstones();
+            logger.info("Loaded replication versions of " + versions.size() + " players");
+        } catch (IOException e) {
+            versions.clear();
+            logger.warning("Error loading " + stateFile.getName() + ", removals made before the restart may be undone: "
+                    + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the versions if they changed, replacing the file only once it is complete.
+     */
+    private void saveState() {
+        if (stateFile == null || !stateDirty.getAndSet(false)) {
+            return;
+        }
+
+        Path target = stateFile.toPath();
+        Path temp = target.resolveSibling(stateFile.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeByte(STATE_FORMAT);
+                out.writeLong(clock.get());
+                List<Map.Entry<UUID, EntryVersions>> players = new ArrayList<>(versions.entrySet());
+                out.writeInt(players.size());
+                for (Map.Entry<UUID, EntryVersions> player : players) {
+                    out.writeLong(player.getKey().getMostSignificantBits());
+                    out.writeLong(player.getKey().getLeastSignificantBits());
+                    player.getValue().write(out);
+                }
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            stateDirty.set(true);
+            logger.warning("Error saving " + stateFile.getName() + ": " + e.getMessage());
+        }
+    }
+
+    private long tick() {
+        long now = System.currentTimeMillis() << 16;
+        return clock.updateAndGet(current -> Math.max(current + 1, now));
+    }
+
+    private void observe(long version) {
+        clock.accumulateAndGet(version, Math::max);
+    }
+}
@@ -0,0 +1,374 @@
+package com.chagui68.singleip.replication;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+/**
+ * Full mesh of TCP links. Each server listens on {@code bind} and dials every
+ * address in {@code peers}; it publishes on the links it dialed and answers on
+ * whichever link a message came in. Frames are length prefixed and signed with
+ * HMAC-SHA256 over the shared {@code secret}, and every link has its own
+ * bounded send queue, so a slow or dead peer never holds up the others: when
+ * its queue overflows the link is dropped and the peer catches up on reconnect.
+ * <p>
+ * Each side of a link starts by sending a random nonce. A frame's signature
+ * also covers the receiver's nonce and the frame's sequence number on the
+ * link, so a recorded frame is rejected if replayed on that link or any other.
+ */
+public class SocketTransport implements ReplicationTransport {
+
+    private static final int MAX_FRAME = 16 * 1024 * 1024;
+    private static final int MAC_LENGTH = 32;
+    private static final int NONCE_LENGTH = 16;
+    private static final int SEND_QUEUE = 1024;
+    private static final int CONNECT_TIMEOUT_MILLIS = 3000;
+    private static final long RECONNECT_SECONDS = 5;
+    private static final long SEND_TIMEOUT_SECONDS = 30;
+
+    private final InetSocketAddress bindAddress;
+    private final List<InetSocketAddress> peers;
+    private final SecretKeySpec key;
+    private final Logger logger;
+    private final Map<InetSocketAddress, Link> outbound = new ConcurrentHashMap<>();
+    private final Set<Link> links = ConcurrentHashMap.newKeySet();
+    private final Set<InetSocketAddress> unreachable = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService connector;
+    private final SecureRandom random = new SecureRandom();
+    private volatile boolean running;
+    private volatile Receiver receiver;
+    private ServerSocket serverSocket;
+
+    public SocketTransport(InetSocketAddress bindAddress, List<InetSocketAddress> peers, String secret, Logger logger) {
+        this.bindAddress = bindAddress;
+        this.peers = peers;
+        this.key = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.logger = logger;
+        this.connector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SingleIP-Replication-Connect");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Builds the transport from the {@code replication.socket} section. Returns
+     * null, after logging why, if it is incomplete.
+     */
+    public static SocketTransport fromConfig(ConfigurationSection section, Logger logger) {
+        if (section == null) {
+            logger.severe("Replication needs a replication.socket section");
+            return null;
+        }
+        String secret = section.getString("secret", "");
+        if (secret.length() < 16) {
+            logger.severe("replication.socket.secret must be at least 16 characters");
+            return null;
+        }
+
+        InetSocketAddress bind = parseAddress(section.getString("bind", "0.0.0.0:25580"));
+        if (bind == null) {
+            logger.severe("Invalid replication.socket.bind: " + section.getString("bind"));
+            return null;
+        }
+        List<InetSocketAddress> peers = new ArrayList<>();
+        for (String value : section.getStringList("peers")) {
+            InetSocketAddress peer = parseAddress(value);
+            if (peer == null) {
+                logger.warning("Invalid replication peer ignored: " + value);
+            } else {
+                peers.add(peer);
+            }
+        }
+        return new SocketTransport(bind, peers, secret, logger);
+    }
+
+    @Override
+    public void start(Receiver receiver) throws IOException {
+        this.receiver = receiver;
+        this.running = true;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(bindAddress);
+
+        Thread acceptor = new Thread(this::acceptLoop, "SingleIP-Replication-Accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        connector.scheduleWithFixedDelay(this::connectPeers, 0, RECONNECT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void publish(byte[] message) {
+        for (Link link : outbound.values()) {
+            link.offer(message);
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "socket " + bindAddress.getPort() + ", " + outbound.size() + "/" + peers.size() + " peers connected";
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        connector.shutdownNow();
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+            }
+        } catch (IOException e) {
+            logger.warning("Error closing replication socket: " + e.getMessage());
+        }
+        for (Link link : links) {
+            link.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                new Link(socket, null).start();
+            } catch (IOException e) {
+                if (running) {
+                    logger.warning("Error accepting replication link: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void connectPeers() {
+        for (InetSocketAddress peer : peers) {
+            if (!running || outbound.containsKey(peer)) {
+                continue;
+            }
+            try {
+                Socket socket = new Socket();
+                socket.connect(peer, CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                Link link = new Link(socket, peer);
+                outbound.put(peer, link);
+                link.start();
+                if (unreachable.remove(peer)) {
+                    logger.info("Replication peer reachable again: " + peer);
+                }
+                receiver.connected(link);
+            } catch (IOException e) {
+                // Report once per outage, not on every retry
+                if (unreachable.add(peer)) {
+                    logger.warning("Replication peer unreachable: " + peer + " (" + e.getMessage() + ")");
+                }
+            }
+        }
+    }
+
+    /**
+     * Signs a frame for a receiver that sent {@code nonce}, as its {@code sequence}th frame on the link.
+     */
+    private static byte[] sign(Mac mac, byte[] nonce, long sequence, byte[] payload) {
+        mac.update(nonce);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            mac.update((byte) (sequence >>> shift));
+        }
+        return mac.doFinal(payload);
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static InetSocketAddress parseAddress(String value) {
+        int colon = value == null ? -1 : value.lastIndexOf(':');
+        if (colon <= 0) {
+            return null;
+        }
+        try {
+            String host = value.substring(0, colon).replace("[", "").replace("]", "");
+            int port = Integer.parseInt(value.substring(colon + 1).trim());
+            return new InetSocketAddress(host, port);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * One TCP connection with a reader thread and a writer thread.
+     */
+    private final class Link implements Channel {
+        private final Socket socket;
+        private final InetSocketAddress peer;
+        private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(SEND_QUEUE);
+        private final byte[] nonce = new byte[NONCE_LENGTH];
+        private final CompletableFuture<byte[]> peerNonce = new CompletableFuture<>();
+        private volatile boolean open = true;
+
+        Link(Socket socket, InetSocketAddress peer) {
+            this.socket = socket;
+            this.peer = peer;
+            random.nextBytes(nonce);
+        }
+
+        void start() {
+            links.add(this);
+            startThread(this::readLoop);
+            startThread(this::writeLoop);
+        }
+
+        /**
+         * Queues a published message, dropping the link if the peer is too far behind.
+         */
+        void offer(byte[] message) {
+            if (open && !queue.offer(message)) {
+                logger.warning("Replication link to " + socket.getRemoteSocketAddress() + " is too slow, reconnecting");
+                close();
+            }
+        }
+
+        /**
+         * Replies and syncs wait for room in the queue instead, since they are
+         * sent from their own thread and would otherwise overflow it at once.
+         */
+        @Override
+        public void send(byte[] message) {
+            try {
+                if (open && !queue.offer(message, SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                    logger.warning("Replication link to " + socket.getRemoteSocketAddress() + " stalled, reconnecting");
+                    close();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void close() {
+            if (!open) {
+                return;
+            }
+            open = false;
+            peerNonce.cancel(false);
+            links.remove(this);
+            if (peer != null) {
+                outbound.remove(peer, this);
+            }
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already unusable
+            }
+        }
+
+        private void readLoop() {
+            Mac mac = newMac();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                byte[] received = new byte[NONCE_LENGTH];
+                in.readFully(received);
+                peerNonce.complete(received);
+
+                byte[] expected = new byte[MAC_LENGTH];
+                long sequence = 0;
+                while (open) {
+                    int length = in.readInt();
+                    if (length < 0 || length > MAX_FRAME) {
+                        throw new IOException("Invalid frame length " + length);
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    in.readFully(expected);
+                    if (!MessageDigest.isEqual(sign(mac, nonce, sequence++, payload), expected)) {
+                        throw new IOException("Invalid or replayed frame signature");
+                    }
+                    receiver.received(payload, this);
+                }
+            } catch (EOFException e) {
+                if (open && running) {
+                    logger.info("Replication link to " + socket.getRemoteSocketAddress() + " closed by the peer");
+                }
+            } catch (IOException e) {
+                if (open && running) {
+                    logger.warning("Replication link to " + socket.getRemoteSocketAddress() + " closed: " + e.getMessage());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private void writeLoop() {
+            Mac mac = newMac();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+                out.write(nonce);
+                out.flush();
+                byte[] receiverNonce = peerNonce.get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+                long sequence = 0;
+                while (open) {
+                    byte[] message = queue.poll(1, TimeUnit.SECONDS);
+                    if (message == null) {
+                        continue;
+                    }
+                    out.writeInt(message.length);
+                    out.write(message);
+                    out.write(sign(mac, receiverNonce, sequence++, message));
+                    if (queue.isEmpty()) {
+                        out.flush();
+                    }
+                }
+            } catch (IOException e) {
+                if (open && running) {
+                    logger.warning("Error writing to replication link: " + e.getMessage());
+                }
+            } catch (TimeoutException | ExecutionException e) {
+                if (open && running) {
+                    logger.warning("Replication link to " + socket.getRemoteSocketAddress() + " sent no handshake");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (CancellationException e) {
+                // Closed before the handshake
+            } finally {
+                close();
+            }
+        }
+
+        private void startThread(Runnable task) {
+            Thread thread = new Thread(task, "SingleIP-Replication-Link");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+}
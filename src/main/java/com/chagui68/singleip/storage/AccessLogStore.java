@@ -0,0 +1,22 @@
+package com.chagui68.singleip.storage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Where the recent accesses of each player are persisted. The entries are
+ * kept in memory by the access logger, which only saves players that changed.
+ */
+public interface AccessLogStore {
+
+    void loadLogs(BiConsumer<UUID, List<String>> consumer) throws IOException;
+
+    /**
+     * Replaces the stored entries of every player in {@code changed}, oldest
+     * first. An empty list removes the player.
+     */
+    void saveLogs(Map<UUID, List<String>> changed) throws IOException;
+}
@@ -0,0 +1,34 @@
+package com.chagui68.singleip.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Replaces whole files so that a crash or a full disk mid-write leaves the old
+ * file in place instead of a truncated one.
+ */
+final class AtomicFiles {
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Writes {@code content} to a temporary file next to {@code target}, then renames it over the target.
+     */
+    static void write(File target, String content) throws IOException {
+        Path targetPath = target.toPath();
+        Path tempPath = targetPath.resolveSibling(target.getName() + ".tmp");
+
+        Files.write(tempPath, content.getBytes(StandardCharsets.UTF_8));
+        try {
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tempPath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.chagui68.singleip.storage;
+
+import com.chagui68.singleip.utils.FailedLoginRecord;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * History of failed logins. Queries return records newest first, limited to
+ * {@code [since, until]} and paged by {@code offset} and {@code limit}.
+ */
+public interface FailedLoginStore {
+
+    /**
+     * Queues a record without blocking. Returns false if it had to be dropped.
+     */
+    boolean log(FailedLoginRecord record);
+
+    List<FailedLoginRecord> query(long since, long until, int offset, int limit);
+
+    List<FailedLoginRecord> queryByPlayer(UUID uuid, long since, long until, int offset, int limit);
+
+    List<FailedLoginRecord> queryByIP(String ip, long since, long until, int offset, int limit);
+
+    /**
+     * Stops accepting new records and waits up to {@code timeoutMillis} for queued ones.
+     */
+    void close(long timeoutMillis);
+}
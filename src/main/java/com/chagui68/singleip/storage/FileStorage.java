@@ -0,0 +1,64 @@
+package com.chagui68.singleip.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.util.logging.Logger;
+
+/**
+ * The flat file backend: player-ips.yml (plus player-ips.journal in
+ * {@code journal} format), failed login segments, access-logs.yml and
+ * player-names.yml.
+ */
+public class FileStorage implements Storage {
+
+    private final PlayerIPStore players;
+    private final FailedLoginStore failedLogins;
+    private final AccessLogStore accessLogs;
+    private final PlayerNameStore playerNames;
+
+    public FileStorage(File dataFolder, Logger logger, ConfigurationSection config) {
+        PlayerIPJournal journal = null;
+        if (config.getString("storage.format", "yaml").equalsIgnoreCase("journal")) {
+            journal = new PlayerIPJournal(new File(dataFolder, "player-ips.journal"), logger);
+        }
+        this.players = new YamlPlayerIPStore(new File(dataFolder, "player-ips.yml"), logger, journal,
+                Math.max(1, config.getInt("storage.compact-after", 5000)), loadThreads(config));
+        this.failedLogins = new SegmentFailedLoginStore(dataFolder, logger, config);
+        this.accessLogs = new YamlAccessLogStore(new File(dataFolder, "access-logs.yml"), logger);
+        this.playerNames = new YamlPlayerNameStore(new File(dataFolder, "player-names.yml"), logger);
+    }
+
+    /**
+     * {@code storage.load-threads}, or one per core up to 8 when it is 0.
+     */
+    private static int loadThreads(ConfigurationSection config) {
+        int configured = config.getInt("storage.load-threads", 0);
+        return configured > 0 ? configured : Math.min(8, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public PlayerIPStore players() {
+        return players;
+    }
+
+    @Override
+    public FailedLoginStore failedLogins() {
+        return failedLogins;
+    }
+
+    @Override
+    public AccessLogStore accessLogs() {
+        return accessLogs;
+    }
+
+    @Override
+    public PlayerNameStore playerNames() {
+        return playerNames;
+    }
+
+    @Override
+    public void close(long timeoutMillis) {
+        // Every store closes its own files
+    }
+}
@@ -0,0 +1,277 @@
+package com.chagui68.singleip.storage;
+
+/**
+ * Single-pass parser for IP literals. Accepts dotted IPv4 and IPv6 with
+ * {@code ::} compression, a trailing embedded IPv4 and a zone ID (which is
+ * ignored), and writes the address into the 128-bit {@link IPKey} space, where
+ * IPv4 and IPv4-mapped IPv6 ({@code ::ffff:a.b.c.d}) end up as the same value.
+ * Parsing allocates nothing and never resolves host names.
+ */
+public final class IPAddressParser {
+
+    public static final int INVALID = 0;
+    /** Written as dotted IPv4; prefix lengths on it count 32 bits. */
+    public static final int V4 = 4;
+    /** Written as IPv6, including IPv4-mapped forms; prefix lengths count 128 bits. */
+    public static final int V6 = 6;
+
+    private IPAddressParser() {
+    }
+
+    /**
+     * Parses {@code text[start, end)} into {@code out[0]} (high bits) and
+     * {@code out[1]} (low bits). Returns the notation it was written in, or
+     * {@link #INVALID}. {@code out} may be null to only validate.
+     */
+    public static int parse(CharSequence text, int start, int end, long[] out) {
+        if (text == null || start >= end) {
+            return INVALID;
+        }
+
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == ':') {
+                return parseV6(text, start, end, out) ? V6 : INVALID;
+            }
+        }
+
+        long value = parseV4(text, start, end);
+        if (value < 0) {
+            return INVALID;
+        }
+        if (out != null) {
+            out[0] = 0L;
+            out[1] = IPKey.V4_MAPPED_PREFIX | value;
+        }
+        return V4;
+    }
+
+    public static boolean isValid(CharSequence text) {
+        return text != null && parse(text, 0, text.length(), null) != INVALID;
+    }
+
+    /**
+     * Returns the canonical spelling of an address (dotted IPv4, RFC 5952
+     * IPv6), or null if it is not one.
+     */
+    public static String canonicalize(String text) {
+        IPKey key = IPKey.parse(text);
+        return key == null ? null : key.toString();
+    }
+
+    /**
+     * Dotted decimal with exactly four octets, no leading zeros. Returns the
+     * value as an unsigned 32-bit number, or -1.
+     */
+    private static long parseV4(CharSequence text, int start, int end) {
+        long value = 0;
+        int i = start;
+
+        for (int octets = 0; octets < 4; octets++) {
+            if (octets > 0) {
+                if (i >= end || text.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+
+            int digitsStart = i;
+            int octet = 0;
+            while (i < end && i - digitsStart < 3) {
+                char c = text.charAt(i);
+                if (c < '0' || c > '9') {
+                    break;
+                }
+                octet = octet * 10 + (c - '0');
+                i++;
+            }
+
+            int digits = i - digitsStart;
+            if (digits == 0 || octet > 255 || (digits > 1 && text.charAt(digitsStart) == '0')) {
+                return -1;
+            }
+            value = (value << 8) | octet;
+        }
+
+        return i == end ? value : -1;
+    }
+
+    private static boolean parseV6(CharSequence text, int start, int end, long[] out) {
+        // A zone ID only scopes link-local addresses to an interface; it is not part of the address
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '%') {
+                if (i == end - 1) {
+                    return false;
+                }
+                end = i;
+                break;
+            }
+        }
+
+        // Groups before "::" go into head, the ones after it into tail
+        long headHigh = 0;
+        long headLow = 0;
+        long tailHigh = 0;
+        long tailLow = 0;
+        int groups = 0;
+        int compressedAt = -1;
+        int i = start;
+
+        if (text.charAt(i) == ':') {
+            if (end - i < 2 || text.charAt(i + 1) != ':') {
+                return false;
+            }
+            compressedAt = 0;
+            i += 2;
+        }
+
+        while (i < end) {
+            int groupStart = i;
+            int group = 0;
+            while (i < end && i - groupStart < 5) {
+                int digit = hexDigit(text.charAt(i));
+                if (digit < 0) {
+                    break;
+                }
+                group = (group << 4) | digit;
+                i++;
+            }
+
+            if (i < end && text.charAt(i) == '.') {
+                // Embedded IPv4 takes the last two groups
+                long v4 = groups <= 6 ? parseV4(text, groupStart, end) : -1;
+                if (v4 < 0) {
+                    return false;
+                }
+                for (int half = 1; half >= 0; half--) {
+                    int value = (int) (v4 >>> (16 * half)) & 0xFFFF;
+                    if (compressedAt < 0) {
+                        headHigh = (headHigh << 16) | (headLow >>> 48);
+                        headLow = (headLow << 16) | value;
+                    } else {
+                        tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+                        tailLow = (tailLow << 16) | value;
+                    }
+                }
+                groups += 2;
+                break;
+            }
+
+            int digits = i - groupStart;
+            if (digits == 0 || digits > 4 || groups == 8) {
+                return false;
+            }
+            if (compressedAt < 0) {
+                headHigh = (headHigh << 16) | (headLow >>> 48);
+                headLow = (headLow << 16) | group;
+            } else {
+                tailHigh = (tailHigh << 16) | (tailLow >>> 48);
+                tailLow = (tailLow << 16) | group;
+            }
+            groups++;
+
+            if (i == end) {
+                break;
+            }
+            if (text.charAt(i) != ':' || ++i == end) {
+                return false;
+            }
+            if (text.charAt(i) == ':') {
+                if (compressedAt >= 0) {
+                    return false;
+                }
+                compressedAt = groups;
+                i++;
+            }
+        }
+
+        if (compressedAt < 0 ? groups != 8 : groups > 7) {
+            return false;
+        }
+
+        if (out != null) {
+            // Move the head groups above the zeros that "::" stands for
+            int shift = compressedAt < 0 ? 0 : 16 * (8 - compressedAt);
+            long high;
+            long low;
+            if (shift == 0) {
+                high = headHigh;
+                low = headLow;
+            } else if (shift >= 128) {
+                high = 0;
+                low = 0;
+            } else if (shift >= 64) {
+                high = headLow << (shift - 64);
+                low = 0;
+            } else {
+                high = (headHigh << shift) | (headLow >>> (64 - shift));
+                low = headLow << shift;
+            }
+            out[0] = high | tailHigh;
+            out[1] = low | tailLow;
+        }
+        return true;
+    }
+
+    /**
+     * Formats a 128-bit address: dotted decimal inside the IPv4-mapped range,
+     * otherwise lowercase IPv6 with the longest run of two or more zero groups
+     * compressed (RFC 5952).
+     */
+    static String format(long high, long low) {
+        if (high == 0L && (low & 0xFFFFFFFF00000000L) == IPKey.V4_MAPPED_PREFIX) {
+            int value = (int) low;
+            return ((value >>> 24) & 0xFF) + "." + ((value >>> 16) & 0xFF) + "." +
+                    ((value >>> 8) & 0xFF) + "." + (value & 0xFF);
+        }
+
+        int bestStart = -1;
+        int bestLength = 1;
+        int runStart = -1;
+        for (int i = 0; i < 8; i++) {
+            if (group(high, low, i) == 0) {
+                if (runStart < 0) {
+                    runStart = i;
+                }
+                if (i - runStart + 1 > bestLength) {
+                    bestStart = runStart;
+                    bestLength = i - runStart + 1;
+                }
+            } else {
+                runStart = -1;
+            }
+        }
+
+        StringBuilder result = new StringBuilder(39);
+        for (int i = 0; i < 8; i++) {
+            if (i == bestStart) {
+                result.append("::");
+                i += bestLength - 1;
+                continue;
+            }
+            if (result.length() > 0 && result.charAt(result.length() - 1) != ':') {
+                result.append(':');
+            }
+            result.append(Integer.toHexString(group(high, low, i)));
+        }
+        return result.toString();
+    }
+
+    private static int hexDigit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    private static int group(long high, long low, int index) {
+        long half = index < 4 ? high : low;
+        return (int) (half >>> (48 - 16 * (index & 3))) & 0xFFFF;
+    }
+}
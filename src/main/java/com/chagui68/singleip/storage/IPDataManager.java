@@ -1,190 +1,483 @@
 package com.chagui68.singleip.storage;
 
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
+import com.chagui68.singleip.SingleIPPlugin;
+import com.chagui68.singleip.utils.AccessPolicy;
+import com.chagui68.singleip.utils.FailedLoginRecord;
+import com.chagui68.singleip.utils.LatencyHistogram;
+import org.bukkit.configuration.ConfigurationSection;
 
 import java.io.File;
 import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
+import java.net.InetAddress;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 public class IPDataManager {
 
-    private static final Pattern IP_PATTERN = Pattern.compile(
-            "^((25[0-5]|(2[0-4]|1\\d|[1-9]|)\\d)\\.?\\b){4}$|" +
-                    "^(([0-9a-fA-F]{1,4}:){7,7}[0-9a-fA-F]{1,4}|([0-9a-fA-F]{1,4}:){1,7}:|([0-9a-fA-F]{1,4}:){1,6}:[0-9a-fA-F]{1,4})$"
-    );
+    /** Operation passed for changes that must not be recorded again, e.g. while loading. */
+    private static final char NO_RECORD = 0;
 
-    private final com.chagui68.singleip.SingleIPPlugin plugin;
-    private final File dataFile;
-    private final File failedLoginsFile;
-    private final Map<UUID, List<String>> playerIPs;
+    private final Supplier<AccessPolicy> policy;
+    private final Map<UUID, PlayerIPSet> playerIPs;
+    private final ReverseIPIndex reverseIndex = new ReverseIPIndex();
     private final Logger logger;
-    private final DateTimeFormatter dateFormatter;
+    private final PlayerIPStore store;
+    private final FailedLoginStore failedLogins;
+    private final Storage ownedStorage;
+    private final Object saveLock = new Object();
+    // Mutations share the read side; snapshots take the write side for the instant they copy the map
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private final boolean writeBehind;
+    private final long shutdownTimeoutMillis;
+    private final ScheduledExecutorService flusher;
+    private volatile ChangeListener changeListener;
+    // Players changed since the last snapshot, which a reload must not revert to the file
+    private final Set<UUID> unsaved = ConcurrentHashMap.newKeySet();
+    // Players changed while a reload reads the store, set only for that long
+    private volatile Set<UUID> touchedDuringReload;
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final LatencyHistogram loadLatency = new LatencyHistogram();
+    private final LatencyHistogram saveLatency = new LatencyHistogram();
+    private final LatencyHistogram recordLatency = new LatencyHistogram();
+    private final LatencyHistogram failedLoginLatency = new LatencyHistogram();
+
+    /**
+     * Told about every change made on this server, inside the compute for the
+     * player, so changes to one player are seen in the order they were applied.
+     */
+    public interface ChangeListener {
+        void changed(char op, UUID uuid, String ip);
+    }
+
+    public IPDataManager(SingleIPPlugin plugin) {
+        this(plugin.getStorage(), null, plugin.getLogger(), plugin.getConfig(), plugin::getPolicy);
+    }
+
+    /**
+     * Builds a manager outside a running server, e.g. for benchmarks, on the
+     * backend {@code config} selects. {@code policy} is asked for the current
+     * {@link AccessPolicy} each time one is needed.
+     */
+    public IPDataManager(File dataFolder, Logger logger, ConfigurationSection config, Supplier<AccessPolicy> policy) throws IOException {
+        this(Storage.open(dataFolder, logger, config), logger, config, policy);
+    }
 
-    public IPDataManager(com.chagui68.singleip.SingleIPPlugin plugin) {
-        this.plugin = plugin;
-        this.logger = plugin.getLogger();
-        this.dataFile = new File(plugin.getDataFolder(), "player-ips.yml");
-        this.failedLoginsFile = new File(plugin.getDataFolder(), "failed-logins.yml");
+    private IPDataManager(Storage storage, Logger logger, ConfigurationSection config, Supplier<AccessPolicy> policy) {
+        this(storage, storage, logger, config, policy);
+    }
+
+    private IPDataManager(Storage storage, Storage ownedStorage, Logger logger, ConfigurationSection config,
+                          Supplier<AccessPolicy> policy) {
+        this.policy = policy;
+        this.logger = logger;
+        this.store = storage.players();
+        this.failedLogins = storage.failedLogins();
+        this.ownedStorage = ownedStorage;
         this.playerIPs = new ConcurrentHashMap<>();
-        this.dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+        this.writeBehind = config.getString("storage.save-mode", "write-behind")
+                .equalsIgnoreCase("write-behind");
+        this.shutdownTimeoutMillis = Math.max(1, config.getLong("storage.shutdown-timeout", 10)) * 1000L;
+
+        if (writeBehind || store.isIncremental()) {
+            long interval = Math.max(1, config.getLong("storage.flush-interval", 5));
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "SingleIP-Storage");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushIfDirty, interval, interval, TimeUnit.SECONDS);
+        } else {
+            this.flusher = null;
+        }
     }
 
-    public void loadData() {
-        if (!dataFile.exists()) {
-            try {
-                dataFile.getParentFile().mkdirs();
-                dataFile.createNewFile();
-                logger.info("Data file created: player-ips.yml");
-            } catch (IOException e) {
-                logger.severe("Error creating data file: " + e.getMessage());
-                return;
+    /**
+     * Whether a {@link #loadData()} has read the store successfully. Until then
+     * nothing is written back, so a store that failed to load is never replaced.
+     */
+    public boolean isLoaded() {
+        return loaded.getCount() == 0;
+    }
+
+    /**
+     * Waits up to {@code timeoutMillis} for the first successful load and returns whether it happened.
+     */
+    public boolean awaitLoaded(long timeoutMillis) {
+        try {
+            return loaded.await(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public void setChangeListener(ChangeListener changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Loads the stored IPs, replacing what is in memory. Also used for the first
+     * load, which is diffed against an empty map, and to retry it after it
+     * failed. Returns what changed, or null if the store could not be read.
+     */
+    public ReloadResult loadData() {
+        long start = System.nanoTime();
+        try {
+            ReloadResult result = reloadData();
+            if (result == null) {
+                if (!isLoaded()) {
+                    // Opening the gate now would hand every account whatever IP it connects from
+                    logger.severe("Player IPs could not be loaded; logins follow storage.not-ready-policy "
+                            + "until ipmanager reload succeeds");
+                }
+                return null;
             }
+            logger.info("Loaded " + playerIPs.size() + " players with their IPs");
+            loaded.countDown();
+            return result;
+        } finally {
+            loadLatency.record(System.nanoTime() - start);
         }
+    }
 
-        if (!failedLoginsFile.exists()) {
+    /**
+     * Reads the store into a fresh map without touching the live one, then swaps
+     * in only the players that differ, while no other change can be made. Players
+     * changed in memory after the store was read, or not saved yet, keep their
+     * live set. Returns what changed, or null if the store could not be read.
+     */
+    public ReloadResult reloadData() {
+        synchronized (saveLock) {
+            Set<UUID> touched = ConcurrentHashMap.newKeySet();
+            touchedDuringReload = touched;
+
+            Map<UUID, PlayerIPSet> stored;
             try {
-                failedLoginsFile.createNewFile();
-                logger.info("Failed logins file created: failed-logins.yml");
+                stored = readStore();
             } catch (IOException e) {
-                logger.severe("Error creating failed logins file: " + e.getMessage());
+                touchedDuringReload = null;
+                logger.severe("Error loading player IPs: " + e.getMessage());
+                return null;
             }
-        }
 
-        FileConfiguration data = YamlConfiguration.loadConfiguration(dataFile);
+            snapshotLock.writeLock().lock();
+            try {
+                touchedDuringReload = null;
+                Set<UUID> keep = new HashSet<>(unsaved);
+                keep.addAll(touched);
+
+                Map<UUID, PlayerIPSet> replacements = new HashMap<>();
+                int added = 0;
+                int removed = 0;
+                int changed = 0;
+                for (Map.Entry<UUID, PlayerIPSet> entry : playerIPs.entrySet()) {
+                    PlayerIPSet next = stored.get(entry.getKey());
+                    if (keep.contains(entry.getKey()) || entry.getValue().equals(next)) {
+                        continue;
+                    }
+                    replacements.put(entry.getKey(), next);
+                    if (next == null) {
+                        removed++;
+                    } else {
+                        changed++;
+                    }
+                }
+                for (Map.Entry<UUID, PlayerIPSet> entry : stored.entrySet()) {
+                    if (!playerIPs.containsKey(entry.getKey()) && !keep.contains(entry.getKey())) {
+                        replacements.put(entry.getKey(), entry.getValue());
+                        added++;
+                    }
+                }
 
-        if (data.contains("players")) {
-            for (String uuidString : data.getConfigurationSection("players").getKeys(false)) {
-                try {
-                    UUID uuid = UUID.fromString(uuidString);
-                    List<String> ips = data.getStringList("players." + uuidString);
-                    playerIPs.put(uuid, new ArrayList<>(ips));
-                } catch (IllegalArgumentException e) {
-                    logger.warning("Invalid UUID ignored: " + uuidString);
+                // The write lock keeps mutations and snapshots out; readers see each player switch at once
+                for (Map.Entry<UUID, PlayerIPSet> entry : replacements.entrySet()) {
+                    UUID uuid = entry.getKey();
+                    PlayerIPSet next = entry.getValue();
+                    modify(uuid, NO_RECORD, null, current -> {
+                        publishReplacement(uuid, current, next);
+                        return next;
+                    });
                 }
+                return new ReloadResult(added, removed, changed, keep.size());
+            } finally {
+                snapshotLock.writeLock().unlock();
             }
         }
+    }
+
+    /**
+     * Tells the change listener about a player replaced by a reload, entry by
+     * entry, so replication versions the edit like any local change and peers
+     * do not bring the old entries back on their next sync.
+     */
+    private void publishReplacement(UUID uuid, PlayerIPSet previous, PlayerIPSet next) {
+        ChangeListener listener = changeListener;
+        if (listener == null) {
+            return;
+        }
+        if (next == null) {
+            listener.changed(PlayerIPJournal.CLEAR, uuid, null);
+            return;
+        }
 
-        logger.info("Loaded " + playerIPs.size() + " players with their IPs");
+        List<IPRange> before = previous == null ? Collections.emptyList() : previous.entries();
+        List<IPRange> after = next.entries();
+        for (IPRange entry : before) {
+            if (!after.contains(entry)) {
+                listener.changed(PlayerIPJournal.REMOVE, uuid, entry.toString());
+            }
+        }
+        for (IPRange entry : after) {
+            if (!before.contains(entry)) {
+                listener.changed(PlayerIPJournal.ADD, uuid, entry.toString());
+            }
+        }
     }
 
-    public void saveData() {
-        FileConfiguration data = new YamlConfiguration();
+    /**
+     * Whether the stored IPs were changed by something other than this plugin since they were last read or written.
+     */
+    public boolean isStoreChangedOnDisk() {
+        return store.changedOnDisk();
+    }
 
-        for (Map.Entry<UUID, List<String>> entry : playerIPs.entrySet()) {
-            data.set("players." + entry.getKey().toString(), entry.getValue());
+    private Map<UUID, PlayerIPSet> readStore() throws IOException {
+        Map<UUID, PlayerIPSet> stored = new ConcurrentHashMap<>();
+        // Players behind the same address end up with identical sets; share one instance while loading
+        Map<PlayerIPSet, PlayerIPSet> shared = new ConcurrentHashMap<>();
+
+        store.load(new PlayerIPStore.Loader() {
+            @Override
+            public void player(UUID uuid, List<String> entries) {
+                PlayerIPSet ips = null;
+                for (String ip : entries) {
+                    IPRange entry = IPRange.parse(ip);
+                    if (entry == null) {
+                        logger.warning("Invalid IP ignored for " + uuid + ": " + ip);
+                        continue;
+                    }
+                    ips = ips == null ? PlayerIPSet.of(entry) : ips.with(entry);
+                }
+                if (ips != null) {
+                    stored.put(uuid, shared.computeIfAbsent(ips, key -> key));
+                }
+            }
+
+            @Override
+            public void change(char op, UUID uuid, String ip) {
+                applyJournalRecord(stored, op, uuid, ip);
+            }
+        });
+        return stored;
+    }
+
+    private void applyJournalRecord(Map<UUID, PlayerIPSet> target, char op, UUID uuid, String ip) {
+        IPRange entry = ip == null ? null : IPRange.parse(ip);
+        if (op != PlayerIPJournal.CLEAR && entry == null) {
+            logger.warning("Invalid IP in journal ignored: " + ip);
+            return;
         }
 
-        try {
-            data.save(dataFile);
-            if (plugin.getConfig().getBoolean("debug", false)) {
-                logger.info("Data saved: " + playerIPs.size() + " players");
+        switch (op) {
+            case PlayerIPJournal.ADD:
+                target.compute(uuid, (key, current) -> current == null ? PlayerIPSet.of(entry) : current.with(entry));
+                break;
+            case PlayerIPJournal.REMOVE:
+                target.computeIfPresent(uuid, (key, current) -> current.without(entry));
+                break;
+            case PlayerIPJournal.CLEAR:
+                target.remove(uuid);
+                break;
+            default:
+                logger.warning("Unknown journal operation ignored: " + op);
+        }
+    }
+
+    /**
+     * Writes a full snapshot of the map. The store prepares for it (e.g. rotates
+     * its journal) in the same instant the map is copied, so the snapshot covers
+     * exactly the changes recorded before it. Returns whether the snapshot was
+     * written; failures are logged and retried by the next save.
+     */
+    public boolean saveData() {
+        if (!isLoaded()) {
+            // A snapshot now would replace the stored players with the ones read so far
+            return false;
+        }
+        synchronized (saveLock) {
+            long start = System.nanoTime();
+            Map<UUID, PlayerIPSet> view;
+            List<UUID> saving;
+            snapshotLock.writeLock().lock();
+            try {
+                store.beginSnapshot();
+                // Clear before copying so mutations made during the write schedule another flush
+                dirty.set(false);
+                view = new HashMap<>(playerIPs);
+                saving = new ArrayList<>(unsaved);
+                unsaved.clear();
+            } catch (IOException e) {
+                logger.severe("Error saving data: " + e.getMessage());
+                return false;
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+
+            // Sets are immutable, so the copy can be serialized at leisure
+            try {
+                store.writeSnapshot(view);
+                if (policy.get().isDebug()) {
+                    logger.info("Data saved: " + view.size() + " players");
+                }
+                return true;
+            } catch (IOException e) {
+                dirty.set(true);
+                unsaved.addAll(saving);
+                logger.severe("Error saving data: " + e.getMessage());
+                return false;
+            } finally {
+                saveLatency.record(System.nanoTime() - start);
             }
-        } catch (IOException e) {
-            logger.severe("Error saving data: " + e.getMessage());
         }
     }
 
-    public void logFailedLogin(String playerName, UUID uuid, String attemptedIP, String reason) {
-        FileConfiguration failedLogins = YamlConfiguration.loadConfiguration(failedLoginsFile);
+    /**
+     * Flushes pending changes and stops the background flusher, waiting at most
+     * {@code storage.shutdown-timeout} seconds for the final write.
+     */
+    public void shutdown() {
+        failedLogins.close(shutdownTimeoutMillis);
+
+        if (flusher == null) {
+            saveData();
+            store.close();
+        } else {
+            flusher.execute(this::flushIfDirty);
+            flusher.execute(store::close);
+            flusher.shutdown();
 
-        String timestamp = LocalDateTime.now().format(dateFormatter);
-        String logKey = "failed-logins." + timestamp.replace(" ", "_").replace(":", "-");
+            try {
+                if (!flusher.awaitTermination(shutdownTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                    logger.severe("Timed out while flushing player IPs, recent changes may be lost");
+                    flusher.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                flusher.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
 
-        failedLogins.set(logKey + ".player", playerName);
-        failedLogins.set(logKey + ".uuid", uuid.toString());
-        failedLogins.set(logKey + ".attempted-ip", attemptedIP);
-        failedLogins.set(logKey + ".reason", reason);
-        failedLogins.set(logKey + ".timestamp", timestamp);
+        if (ownedStorage != null) {
+            ownedStorage.close(shutdownTimeoutMillis);
+        }
+    }
 
+    /**
+     * Hands a change to an incremental store. Runs inside the compute for the
+     * player, so changes to one player reach the store in the order they were applied.
+     */
+    private void record(char op, UUID uuid, String ip, PlayerIPSet ips) {
+        long start = System.nanoTime();
         try {
-            failedLogins.save(failedLoginsFile);
-            if (plugin.getConfig().getBoolean("log-failed-attempts", true)) {
-                logger.warning("Failed login attempt - Player: " + playerName + " | IP: " + attemptedIP + " | Reason: " + reason);
-            }
+            store.record(op, uuid, ip, ips);
         } catch (IOException e) {
-            logger.severe("Error saving failed login: " + e.getMessage());
+            // Keep the change durable through a full snapshot instead
+            logger.severe("Error recording IP change: " + e.getMessage());
+            dirty.set(true);
+        } finally {
+            recordLatency.record(System.nanoTime() - start);
         }
     }
 
-    public List<Map<String, String>> getFailedLogins(int limit) {
-        FileConfiguration failedLogins = YamlConfiguration.loadConfiguration(failedLoginsFile);
-        List<Map<String, String>> attempts = new ArrayList<>();
-
-        if (!failedLogins.contains("failed-logins")) {
-            return attempts;
+    private void scheduleSave() {
+        if (store.isIncremental()) {
+            return;
         }
+        if (writeBehind) {
+            dirty.set(true);
+        } else {
+            saveData();
+        }
+    }
 
-        Set<String> keys = failedLogins.getConfigurationSection("failed-logins").getKeys(false);
-        List<String> sortedKeys = new ArrayList<>(keys);
-        Collections.sort(sortedKeys, Collections.reverseOrder());
-
-        int count = 0;
-        for (String key : sortedKeys) {
-            if (count >= limit) break;
+    private void flushIfDirty() {
+        if (dirty.get() || store.wantsSnapshot()) {
+            saveData();
+        }
+    }
 
-            Map<String, String> attempt = new HashMap<>();
-            attempt.put("player", failedLogins.getString("failed-logins." + key + ".player"));
-            attempt.put("uuid", failedLogins.getString("failed-logins." + key + ".uuid"));
-            attempt.put("attempted-ip", failedLogins.getString("failed-logins." + key + ".attempted-ip"));
-            attempt.put("reason", failedLogins.getString("failed-logins." + key + ".reason"));
-            attempt.put("timestamp", failedLogins.getString("failed-logins." + key + ".timestamp"));
-            attempts.add(attempt);
-            count++;
+    public void logFailedLogin(String playerName, UUID uuid, String attemptedIP, String reason) {
+        long start = System.nanoTime();
+        String canonicalIP = IPAddressParser.canonicalize(attemptedIP);
+        FailedLoginRecord record = new FailedLoginRecord(System.currentTimeMillis(), uuid, playerName,
+                canonicalIP != null ? canonicalIP : attemptedIP, reason);
+        failedLogins.log(record);
+        failedLoginLatency.record(System.nanoTime() - start);
+
+        if (policy.get().isLogFailedAttempts()) {
+            logger.warning("Failed login attempt - Player: " + playerName + " | IP: " + attemptedIP + " | Reason: " + reason);
         }
+    }
 
-        return attempts;
+    /** Time taken by {@link #loadData()}. */
+    public LatencyHistogram getLoadLatency() {
+        return loadLatency;
     }
 
-    public List<Map<String, String>> getFailedLoginsByPlayer(UUID uuid, int limit) {
-        FileConfiguration failedLogins = YamlConfiguration.loadConfiguration(failedLoginsFile);
-        List<Map<String, String>> attempts = new ArrayList<>();
+    /** Time taken by full snapshots, including journal compactions. */
+    public LatencyHistogram getSaveLatency() {
+        return saveLatency;
+    }
 
-        if (!failedLogins.contains("failed-logins")) {
-            return attempts;
-        }
+    /** Time taken to hand single changes to an incremental store. */
+    public LatencyHistogram getRecordLatency() {
+        return recordLatency;
+    }
 
-        Set<String> keys = failedLogins.getConfigurationSection("failed-logins").getKeys(false);
-        List<String> sortedKeys = new ArrayList<>(keys);
-        Collections.sort(sortedKeys, Collections.reverseOrder());
+    /** Time taken to log a failed login, which only queues it. */
+    public LatencyHistogram getFailedLoginLatency() {
+        return failedLoginLatency;
+    }
 
-        int count = 0;
-        for (String key : sortedKeys) {
-            String storedUUID = failedLogins.getString("failed-logins." + key + ".uuid");
-            if (storedUUID != null && storedUUID.equals(uuid.toString())) {
-                if (count >= limit) break;
+    public List<FailedLoginRecord> getFailedLogins(long since, long until, int offset, int limit) {
+        return failedLogins.query(since, until, offset, limit);
+    }
 
-                Map<String, String> attempt = new HashMap<>();
-                attempt.put("player", failedLogins.getString("failed-logins." + key + ".player"));
-                attempt.put("uuid", storedUUID);
-                attempt.put("attempted-ip", failedLogins.getString("failed-logins." + key + ".attempted-ip"));
-                attempt.put("reason", failedLogins.getString("failed-logins." + key + ".reason"));
-                attempt.put("timestamp", failedLogins.getString("failed-logins." + key + ".timestamp"));
-                attempts.add(attempt);
-                count++;
-            }
-        }
+    public List<FailedLoginRecord> getFailedLoginsByPlayer(UUID uuid, long since, long until, int offset, int limit) {
+        return failedLogins.queryByPlayer(uuid, since, until, offset, limit);
+    }
 
-        return attempts;
+    public List<FailedLoginRecord> getFailedLoginsByIP(String ip, long since, long until, int offset, int limit) {
+        String canonicalIP = IPAddressParser.canonicalize(ip);
+        return failedLogins.queryByIP(canonicalIP != null ? canonicalIP : ip, since, until, offset, limit);
     }
 
     public List<String> getRegisteredIPs(UUID uuid) {
-        return playerIPs.getOrDefault(uuid, new ArrayList<>());
+        PlayerIPSet ips = playerIPs.get(uuid);
+        return ips == null ? new ArrayList<>() : ips.toStrings();
     }
 
     public boolean registerFirstIP(UUID uuid, String ip) {
-        if (!playerIPs.containsKey(uuid)) {
-            List<String> ips = new ArrayList<>();
-            ips.add(ip);
-            playerIPs.put(uuid, ips);
-            saveData();
+        IPKey address = IPKey.parse(ip);
+        if (address == null) {
+            return false;
+        }
 
-            if (plugin.getConfig().getBoolean("debug", false)) {
+        IPRange entry = IPRange.of(address, 128);
+        if (modify(uuid, PlayerIPJournal.ADD, entry.toString(), current -> current != null ? current : PlayerIPSet.of(entry))) {
+            if (policy.get().isDebug()) {
                 logger.info("Primary IP registered - UUID: " + uuid + " | IP: " + ip);
             }
             return true;
@@ -192,48 +485,152 @@ public class IPDataManager {
         return false;
     }
 
+    /**
+     * Adds an address or CIDR range to a registered player.
+     */
     public boolean addSecondIP(UUID uuid, String ip) {
-        if (!playerIPs.containsKey(uuid)) {
+        IPRange entry = IPRange.parse(ip);
+        if (entry == null || !modify(uuid, PlayerIPJournal.ADD, entry.toString(), current -> current == null ? null : current.with(entry))) {
             return false;
         }
 
-        List<String> ips = playerIPs.get(uuid);
+        logger.info("IP added - UUID: " + uuid + " | IP: " + ip);
+        return true;
+    }
 
-        if (ips.contains(ip)) {
+    public boolean removeIP(UUID uuid, String ip) {
+        IPRange entry = IPRange.parse(ip);
+        if (entry == null || !modify(uuid, PlayerIPJournal.REMOVE, entry.toString(), current -> current == null ? null : current.without(entry))) {
             return false;
         }
 
-        ips.add(ip);
-        saveData();
+        logger.info("IP removed - UUID: " + uuid + " | IP: " + ip);
 
-        logger.info("IP added - UUID: " + uuid + " | IP: " + ip);
         return true;
     }
 
-    public boolean removeIP(UUID uuid, String ip) {
-        if (!playerIPs.containsKey(uuid)) {
-            return false;
-        }
+    public boolean isIPAllowed(UUID uuid, String ip) {
+        IPKey address = IPKey.parse(ip);
+        PlayerIPSet ips = playerIPs.get(uuid);
+        return address != null && ips != null && ips.contains(address);
+    }
+
+    public boolean hasIPEntry(UUID uuid, String ip) {
+        IPRange entry = IPRange.parse(ip);
+        return entry != null && hasIPEntry(uuid, entry);
+    }
 
-        List<String> ips = playerIPs.get(uuid);
-        boolean removed = ips.remove(ip);
+    public boolean hasIPEntry(UUID uuid, IPRange entry) {
+        PlayerIPSet ips = playerIPs.get(uuid);
+        return ips != null && ips.hasEntry(entry);
+    }
+
+    /**
+     * Pre-login check against the raw address bytes, without formatting the address.
+     */
+    public boolean isIPAllowed(UUID uuid, InetAddress address) {
+        return isIPAllowed(uuid, address.getAddress());
+    }
+
+    /**
+     * Applies a change that was made on another server. {@code change} runs
+     * inside the compute for the player and may return the current set to
+     * reject it. The result is persisted like a local change but is not
+     * reported to the {@link ChangeListener}.
+     */
+    public boolean applyRemote(UUID uuid, char op, String ip, UnaryOperator<PlayerIPSet> change) {
+        return modify(uuid, op, ip, change, false, true);
+    }
 
-        if (removed) {
-            if (ips.isEmpty()) {
-                playerIPs.remove(uuid);
+    /**
+     * Adds imported entries, registering players not seen before and ignoring
+     * the per-player limit. Nothing is persisted until the next
+     * {@link #saveData()}, which the importer runs once at the end; the change
+     * listener still sees every added entry. Returns how many entries were new.
+     */
+    public int importEntries(Map<UUID, List<IPRange>> batch) {
+        int added = 0;
+        for (Map.Entry<UUID, List<IPRange>> player : batch.entrySet()) {
+            for (IPRange entry : player.getValue()) {
+                if (modify(player.getKey(), PlayerIPJournal.ADD, entry.toString(),
+                        current -> current == null ? PlayerIPSet.of(entry) : current.with(entry), true, false)) {
+                    added++;
+                }
             }
-            saveData();
-            logger.info("IP removed - UUID: " + uuid + " | IP: " + ip);
         }
+        return added;
+    }
 
-        return removed;
+    private boolean modify(UUID uuid, char op, String ip, UnaryOperator<PlayerIPSet> change) {
+        return modify(uuid, op, ip, change, true, true);
     }
 
-    public boolean isIPAllowed(UUID uuid, String ip) {
-        if (!playerIPs.containsKey(uuid)) {
-            return false;
+    /**
+     * Atomically replaces a player's set with {@code change} applied to it (null
+     * removes the player). The reverse index, the store and the change listener
+     * are updated inside the same compute, so they see changes to one player in
+     * the order they were made. Returns whether anything changed; readers never
+     * block on this. Without {@code persist} the change is only marked unsaved.
+     */
+    private boolean modify(UUID uuid, char op, String ip, UnaryOperator<PlayerIPSet> change, boolean local,
+                           boolean persist) {
+        boolean[] changed = new boolean[1];
+
+        snapshotLock.readLock().lock();
+        try {
+            playerIPs.compute(uuid, (key, current) -> {
+                PlayerIPSet next = change.apply(current);
+                if (next == current) {
+                    return current;
+                }
+                changed[0] = true;
+                reindex(uuid, current, next);
+                if (op != NO_RECORD) {
+                    if (persist && store.isIncremental()) {
+                        record(op, uuid, ip, next);
+                    } else {
+                        unsaved.add(uuid);
+                    }
+                    Set<UUID> touched = touchedDuringReload;
+                    if (touched != null) {
+                        touched.add(uuid);
+                    }
+                }
+                ChangeListener listener = changeListener;
+                if (op != NO_RECORD && local && listener != null) {
+                    listener.changed(op, uuid, ip);
+                }
+                return next;
+            });
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+
+        if (changed[0] && op != NO_RECORD && persist) {
+            scheduleSave();
+        }
+        return changed[0];
+    }
+
+    private void reindex(UUID uuid, PlayerIPSet previous, PlayerIPSet ips) {
+        List<IPRange> before = previous == null ? Collections.emptyList() : previous.entries();
+        List<IPRange> after = ips == null ? Collections.emptyList() : ips.entries();
+
+        for (IPRange key : before) {
+            if (!after.contains(key)) {
+                reverseIndex.remove(key, uuid);
+            }
+        }
+        for (IPRange key : after) {
+            if (!before.contains(key)) {
+                reverseIndex.add(key, uuid);
+            }
         }
-        return playerIPs.get(uuid).contains(ip);
+    }
+
+    private boolean isIPAllowed(UUID uuid, byte[] address) {
+        PlayerIPSet ips = playerIPs.get(uuid);
+        return ips != null && ips.contains(address);
     }
 
     public boolean hasRegisteredIP(UUID uuid) {
@@ -241,7 +638,8 @@ public class IPDataManager {
     }
 
     public int getIPCount(UUID uuid) {
-        return playerIPs.getOrDefault(uuid, new ArrayList<>()).size();
+        PlayerIPSet ips = playerIPs.get(uuid);
+        return ips == null ? 0 : ips.size();
     }
 
     public int getStoredPlayerCount() {
@@ -249,7 +647,29 @@ public class IPDataManager {
     }
 
     public boolean isValidIP(String ip) {
-        return IP_PATTERN.matcher(ip).matches();
+        return IPAddressParser.isValid(ip);
+    }
+
+    /**
+     * Finds the players whose entries overlap an address or CIDR range
+     * ({@code 203.0.113.0/24}, {@code 2001:db8::/48}): entries inside it and
+     * registered ranges covering it. Returns null if the query is invalid.
+     */
+    public Map<String, Set<UUID>> findPlayersByIP(String query, int limit) {
+        IPRange range = IPRange.parse(query);
+        if (range == null) {
+            return null;
+        }
+
+        Map<String, Set<UUID>> result = new LinkedHashMap<>();
+        for (Map.Entry<IPRange, Set<UUID>> entry : reverseIndex.range(range, limit).entrySet()) {
+            result.put(entry.getKey().toString(), entry.getValue());
+        }
+        return result;
+    }
+
+    public boolean isValidIPRange(String range) {
+        return range.indexOf('/') > 0 && IPRange.parse(range) != null;
     }
 
     public Set<UUID> getAllPlayers() {
@@ -257,7 +677,45 @@ public class IPDataManager {
     }
 
     public void removeAllIPs(UUID uuid) {
-        playerIPs.remove(uuid);
-        saveData();
+        modify(uuid, PlayerIPJournal.CLEAR, null, current -> null);
+    }
+
+    /**
+     * What a reload changed in memory. Players kept are those changed since the
+     * store was last written, which keep their live IPs.
+     */
+    public static final class ReloadResult {
+        private final int added;
+        private final int removed;
+        private final int changed;
+        private final int kept;
+
+        ReloadResult(int added, int removed, int changed, int kept) {
+            this.added = added;
+            this.removed = removed;
+            this.changed = changed;
+            this.kept = kept;
+        }
+
+        public int getAdded() {
+            return added;
+        }
+
+        public int getRemoved() {
+            return removed;
+        }
+
+        public int getChanged() {
+            return changed;
+        }
+
+        public int getKept() {
+            return kept;
+        }
+
+        public String describe() {
+            return added + " added, " + removed + " removed, " + changed + " changed"
+                    + (kept > 0 ? ", " + kept + " unsaved kept" : "");
+        }
     }
 }
@@ -0,0 +1,84 @@
+package com.chagui68.singleip.storage;
+
+/**
+ * An address as an unsigned 128-bit number. IPv4 addresses are stored in the
+ * IPv4-mapped range ({@code ::ffff:a.b.c.d}) so both families share one ordering.
+ */
+public final class IPKey implements Comparable<IPKey> {
+
+    static final long V4_MAPPED_PREFIX = 0x0000FFFF00000000L;
+
+    private final long high;
+    private final long low;
+
+    public IPKey(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static IPKey ofV4(int address) {
+        return new IPKey(0L, V4_MAPPED_PREFIX | (address & 0xFFFFFFFFL));
+    }
+
+    public static IPKey of(byte[] address) {
+        if (address.length == 4) {
+            return ofV4(PlayerIPSet.packV4(address));
+        }
+        return new IPKey(PlayerIPSet.high(address), PlayerIPSet.low(address));
+    }
+
+    /**
+     * Parses an IP literal, or returns null if it is not one. IPv4-mapped IPv6
+     * gives the same key as the plain IPv4 address.
+     */
+    public static IPKey parse(String text) {
+        long[] value = new long[2];
+        if (text == null || IPAddressParser.parse(text, 0, text.length(), value) == IPAddressParser.INVALID) {
+            return null;
+        }
+        return new IPKey(value[0], value[1]);
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public boolean isV4() {
+        return high == 0L && (low & 0xFFFFFFFF00000000L) == V4_MAPPED_PREFIX;
+    }
+
+    @Override
+    public int compareTo(IPKey other) {
+        int result = Long.compareUnsigned(high, other.high);
+        return result != 0 ? result : Long.compareUnsigned(low, other.low);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof IPKey)) {
+            return false;
+        }
+        IPKey that = (IPKey) other;
+        return high == that.high && low == that.low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low);
+    }
+
+    /**
+     * Canonical form: dotted IPv4, or compressed lowercase IPv6 (RFC 5952).
+     */
+    @Override
+    public String toString() {
+        return IPAddressParser.format(high, low);
+    }
+}
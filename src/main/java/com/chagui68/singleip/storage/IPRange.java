@@ -0,0 +1,129 @@
+package com.chagui68.singleip.storage;
+
+/**
+ * Inclusive range of {@link IPKey}s described by an address and a prefix
+ * length, such as {@code 203.0.113.0/24} or {@code 2001:db8::/32}. A plain
+ * address is a range holding only itself.
+ */
+public final class IPRange implements Comparable<IPRange> {
+
+    private final IPKey first;
+    private final IPKey last;
+    private final int prefixLength;
+
+    private IPRange(IPKey first, IPKey last, int prefixLength) {
+        this.first = first;
+        this.last = last;
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * @param prefixLength prefix length in the 128-bit key space (IPv4 /24 is 120)
+     */
+    public static IPRange of(IPKey address, int prefixLength) {
+        long highMask = mask(prefixLength);
+        long lowMask = mask(prefixLength - 64);
+        IPKey first = new IPKey(address.getHigh() & highMask, address.getLow() & lowMask);
+        IPKey last = new IPKey(first.getHigh() | ~highMask, first.getLow() | ~lowMask);
+        return new IPRange(first, last, prefixLength);
+    }
+
+    /**
+     * Parses {@code ip} or {@code ip/prefix}. Returns null if the input is not valid.
+     */
+    public static IPRange parse(String value) {
+        if (value == null) {
+            return null;
+        }
+        int slash = value.indexOf('/');
+        int end = slash < 0 ? value.length() : slash;
+        long[] address = new long[2];
+        int notation = IPAddressParser.parse(value, 0, end, address);
+        if (notation == IPAddressParser.INVALID) {
+            return null;
+        }
+
+        int familyBits = notation == IPAddressParser.V4 ? 32 : 128;
+        int prefix = familyBits;
+        if (slash >= 0) {
+            int digits = value.length() - slash - 1;
+            if (digits < 1 || digits > 3) {
+                return null;
+            }
+            prefix = 0;
+            for (int i = slash + 1; i < value.length(); i++) {
+                char c = value.charAt(i);
+                if (c < '0' || c > '9') {
+                    return null;
+                }
+                prefix = prefix * 10 + (c - '0');
+            }
+            if (prefix > familyBits) {
+                return null;
+            }
+        }
+
+        return of(new IPKey(address[0], address[1]), prefix + (128 - familyBits));
+    }
+
+    public IPKey getFirst() {
+        return first;
+    }
+
+    public IPKey getLast() {
+        return last;
+    }
+
+    public int getPrefixLength() {
+        return prefixLength;
+    }
+
+    public boolean isSingleAddress() {
+        return prefixLength == 128;
+    }
+
+    public boolean contains(IPKey key) {
+        return first.compareTo(key) <= 0 && key.compareTo(last) <= 0;
+    }
+
+    @Override
+    public int compareTo(IPRange other) {
+        int result = first.compareTo(other.first);
+        return result != 0 ? result : Integer.compare(prefixLength, other.prefixLength);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof IPRange)) {
+            return false;
+        }
+        IPRange that = (IPRange) other;
+        return prefixLength == that.prefixLength && first.equals(that.first);
+    }
+
+    @Override
+    public int hashCode() {
+        return first.hashCode() * 31 + prefixLength;
+    }
+
+    @Override
+    public String toString() {
+        if (isSingleAddress()) {
+            return first.toString();
+        }
+        return first + "/" + (first.isV4() ? prefixLength - 96 : prefixLength);
+    }
+
+    private static long mask(int bits) {
+        if (bits <= 0) {
+            return 0L;
+        }
+        if (bits >= 64) {
+            return -1L;
+        }
+        return -1L << (64 - bits);
+    }
+}
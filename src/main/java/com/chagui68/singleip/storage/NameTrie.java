@@ -0,0 +1,156 @@
+package com.chagui68.singleip.storage;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Case-insensitive trie from player name to UUID. Each node keeps its children
+ * in a sorted array sized to the branches it really has, instead of a slot per
+ * possible character, and completions walk only the subtree under the typed
+ * prefix, stopping as soon as the limit is reached. Not thread-safe.
+ */
+final class NameTrie {
+
+    private static final char[] NO_LABELS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    private final Node root = new Node();
+    private int size;
+
+    /**
+     * Maps {@code name} to {@code uuid} and returns the UUID it replaced, if any.
+     */
+    UUID put(String name, UUID uuid) {
+        String key = name.toLowerCase();
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+        }
+        UUID previous = node.uuid;
+        if (previous == null) {
+            size++;
+        }
+        node.name = name;
+        node.uuid = uuid;
+        return previous;
+    }
+
+    /**
+     * Removes {@code name} only while it still points at {@code uuid}.
+     */
+    void remove(String name, UUID uuid) {
+        String key = name.toLowerCase();
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        for (int i = 0; i < key.length(); i++) {
+            path[i + 1] = path[i].child(key.charAt(i));
+            if (path[i + 1] == null) {
+                return;
+            }
+        }
+
+        Node node = path[key.length()];
+        if (!uuid.equals(node.uuid)) {
+            return;
+        }
+        node.name = null;
+        node.uuid = null;
+        size--;
+
+        // Drop the branch that only led to this name
+        for (int i = key.length(); i > 0 && path[i].isEmpty(); i--) {
+            path[i - 1].removeChild(key.charAt(i - 1));
+        }
+    }
+
+    UUID get(String name) {
+        String key = name.toLowerCase();
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node == null ? null : node.uuid;
+    }
+
+    /**
+     * Adds up to {@code limit} names starting with {@code prefix}, in
+     * alphabetical order, with the case they were recorded in.
+     */
+    void complete(String prefix, int limit, List<String> out) {
+        String key = prefix.toLowerCase();
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node != null) {
+            collect(node, limit, out);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    private static void collect(Node node, int limit, List<String> out) {
+        if (node.name != null) {
+            out.add(node.name);
+        }
+        for (int i = 0; i < node.labels.length && out.size() < limit; i++) {
+            collect(node.children[i], limit, out);
+        }
+    }
+
+    private static final class Node {
+        char[] labels = NO_LABELS;
+        Node[] children = NO_CHILDREN;
+        String name;
+        UUID uuid;
+
+        Node child(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            return index >= 0 ? children[index] : null;
+        }
+
+        Node childOrCreate(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index >= 0) {
+                return children[index];
+            }
+
+            int insertAt = -index - 1;
+            char[] newLabels = new char[labels.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(labels, 0, newLabels, 0, insertAt);
+            System.arraycopy(children, 0, newChildren, 0, insertAt);
+            System.arraycopy(labels, insertAt, newLabels, insertAt + 1, labels.length - insertAt);
+            System.arraycopy(children, insertAt, newChildren, insertAt + 1, children.length - insertAt);
+
+            Node child = new Node();
+            newLabels[insertAt] = label;
+            newChildren[insertAt] = child;
+            labels = newLabels;
+            children = newChildren;
+            return child;
+        }
+
+        void removeChild(char label) {
+            int index = Arrays.binarySearch(labels, label);
+            if (index < 0) {
+                return;
+            }
+            char[] newLabels = new char[labels.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(labels, 0, newLabels, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(labels, index + 1, newLabels, index, labels.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            labels = newLabels.length == 0 ? NO_LABELS : newLabels;
+            children = newChildren.length == 0 ? NO_CHILDREN : newChildren;
+        }
+
+        boolean isEmpty() {
+            return uuid == null && labels.length == 0;
+        }
+    }
+}
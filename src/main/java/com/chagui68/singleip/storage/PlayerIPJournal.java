@@ -0,0 +1,189 @@
+package com.chagui68.singleip.storage;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of player IP mutations. Each record is a single line
+ * {@code <op> <uuid> <ip> <crc32>} so a torn or corrupted tail is detected
+ * on replay and skipped instead of breaking the whole load.
+ */
+public class PlayerIPJournal {
+
+    public static final char ADD = 'A';
+    public static final char REMOVE = 'R';
+    public static final char CLEAR = 'C';
+
+    private static final String NO_IP = "-";
+
+    private final File journalFile;
+    private final File compactingFile;
+    private final Logger logger;
+    private BufferedWriter writer;
+    private int records;
+
+    public interface Replayer {
+        void apply(char op, UUID uuid, String ip);
+    }
+
+    public PlayerIPJournal(File journalFile, Logger logger) {
+        this.journalFile = journalFile;
+        this.compactingFile = new File(journalFile.getParentFile(), journalFile.getName() + ".compacting");
+        this.logger = logger;
+    }
+
+    /**
+     * Replays a journal left behind by an interrupted compaction, then the live journal.
+     */
+    public synchronized int replay(Replayer replayer) {
+        records = 0;
+        int applied = replayFile(compactingFile, replayer);
+        int live = replayFile(journalFile, replayer);
+        records = live;
+        return applied + live;
+    }
+
+    public synchronized void open() throws IOException {
+        if (writer != null) {
+            return;
+        }
+
+        // A crash can leave a partial last line; start the next record on a fresh one
+        boolean needsNewline = false;
+        if (journalFile.exists() && journalFile.length() > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(journalFile, "r")) {
+                raf.seek(raf.length() - 1);
+                needsNewline = raf.read() != '\n';
+            }
+        }
+
+        writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(journalFile, true), StandardCharsets.UTF_8));
+        if (needsNewline) {
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    public synchronized void append(char op, UUID uuid, String ip) throws IOException {
+        if (writer == null) {
+            open();
+        }
+
+        String body = op + " " + uuid + " " + (ip == null ? NO_IP : ip);
+        writer.write(body);
+        writer.write(' ');
+        writer.write(Long.toHexString(checksum(body)));
+        writer.newLine();
+        writer.flush();
+        records++;
+    }
+
+    /**
+     * Moves the live journal aside so a snapshot can be written. Records appended
+     * from now on go to a fresh journal and are replayed on top of that snapshot.
+     */
+    public synchronized void beginCompaction() throws IOException {
+        close();
+
+        if (journalFile.exists()) {
+            if (compactingFile.exists()) {
+                // Leftover from a failed compaction: keep both record sets in order
+                byte[] pending = Files.readAllBytes(journalFile.toPath());
+                Files.write(compactingFile.toPath(), pending, java.nio.file.StandardOpenOption.APPEND);
+                Files.delete(journalFile.toPath());
+            } else {
+                Files.move(journalFile.toPath(), compactingFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        records = 0;
+        open();
+    }
+
+    public synchronized void finishCompaction() throws IOException {
+        Files.deleteIfExists(compactingFile.toPath());
+    }
+
+    public synchronized int size() {
+        return records;
+    }
+
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.severe("Error closing IP journal: " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    private int replayFile(File file, Replayer replayer) {
+        if (!file.exists()) {
+            return 0;
+        }
+
+        int applied = 0;
+        int skipped = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                int crcStart = line.lastIndexOf(' ');
+                String[] parts = crcStart > 0 ? line.substring(0, crcStart).split(" ") : new String[0];
+                if (parts.length != 3 || parts[0].length() != 1 || !validChecksum(line, crcStart)) {
+                    skipped++;
+                    continue;
+                }
+
+                try {
+                    UUID uuid = UUID.fromString(parts[1]);
+                    replayer.apply(parts[0].charAt(0), uuid, NO_IP.equals(parts[2]) ? null : parts[2]);
+                    applied++;
+                } catch (IllegalArgumentException e) {
+                    skipped++;
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("Error reading IP journal " + file.getName() + ": " + e.getMessage());
+        }
+
+        if (skipped > 0) {
+            logger.warning("Skipped " + skipped + " corrupted records in " + file.getName());
+        }
+        return applied;
+    }
+
+    private boolean validChecksum(String line, int crcStart) {
+        try {
+            long expected = Long.parseLong(line.substring(crcStart + 1), 16);
+            return expected == checksum(line.substring(0, crcStart));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static long checksum(String body) {
+        CRC32 crc = new CRC32();
+        crc.update(body.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
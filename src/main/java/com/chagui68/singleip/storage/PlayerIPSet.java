@@ -0,0 +1,252 @@
+package com.chagui68.singleip.storage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Immutable set of addresses and ranges registered for one player. IPv4
+ * entries are packed into {@code int}s and IPv6 into pairs of {@code long}s,
+ * with prefix lengths only stored when a set holds CIDR ranges. Sets with
+ * ranges or more than a handful of entries are matched through a
+ * {@link PrefixTrie}; smaller exact sets are cheaper to scan directly.
+ */
+public final class PlayerIPSet {
+
+    private static final int LINEAR_SCAN_LIMIT = 4;
+    private static final int[] NO_V4 = new int[0];
+    private static final long[] NO_V6 = new long[0];
+
+    private final int[] v4;
+    private final byte[] v4Prefix;
+    private final long[] v6;
+    private final byte[] v6Prefix;
+    private final boolean primaryIsV6;
+    private final PrefixTrie trie;
+
+    private PlayerIPSet(List<IPRange> entries) {
+        int v4Count = 0;
+        boolean ranges = false;
+        for (IPRange entry : entries) {
+            if (entry.getFirst().isV4()) {
+                v4Count++;
+            }
+            ranges |= !entry.isSingleAddress();
+        }
+
+        int[] packed = v4Count == 0 ? NO_V4 : new int[v4Count];
+        long[] wide = entries.size() == v4Count ? NO_V6 : new long[(entries.size() - v4Count) * 2];
+        byte[] packedPrefix = ranges && v4Count > 0 ? new byte[v4Count] : null;
+        byte[] widePrefix = ranges && wide.length > 0 ? new byte[wide.length / 2] : null;
+
+        int i4 = 0;
+        int i6 = 0;
+        for (IPRange entry : entries) {
+            IPKey first = entry.getFirst();
+            if (first.isV4()) {
+                if (packedPrefix != null) {
+                    packedPrefix[i4] = (byte) (entry.getPrefixLength() - 96);
+                }
+                packed[i4++] = (int) first.getLow();
+            } else {
+                if (widePrefix != null) {
+                    widePrefix[i6 / 2] = (byte) entry.getPrefixLength();
+                }
+                wide[i6++] = first.getHigh();
+                wide[i6++] = first.getLow();
+            }
+        }
+
+        this.v4 = packed;
+        this.v4Prefix = packedPrefix;
+        this.v6 = wide;
+        this.v6Prefix = widePrefix;
+        this.primaryIsV6 = !entries.isEmpty() && !entries.get(0).getFirst().isV4();
+        this.trie = ranges || entries.size() > LINEAR_SCAN_LIMIT
+                ? PrefixTrie.build(entries.toArray(new IPRange[0]))
+                : null;
+    }
+
+    public static PlayerIPSet of(byte[] address) {
+        return of(IPRange.of(IPKey.of(address), 128));
+    }
+
+    public static PlayerIPSet of(IPRange entry) {
+        List<IPRange> entries = new ArrayList<>(1);
+        entries.add(entry);
+        return new PlayerIPSet(entries);
+    }
+
+    /**
+     * Whether the address is covered by any entry, exact or range.
+     */
+    public boolean contains(byte[] address) {
+        if (address.length == 4) {
+            return contains(0L, IPKey.V4_MAPPED_PREFIX | (packV4(address) & 0xFFFFFFFFL));
+        }
+        return address.length == 16 && contains(high(address), low(address));
+    }
+
+    public boolean contains(IPKey address) {
+        return contains(address.getHigh(), address.getLow());
+    }
+
+    private boolean contains(long high, long low) {
+        if (trie != null) {
+            return trie.longestMatch(high, low) >= 0;
+        }
+
+        if (high == 0L && (low & 0xFFFFFFFF00000000L) == IPKey.V4_MAPPED_PREFIX) {
+            int packed = (int) low;
+            for (int value : v4) {
+                if (value == packed) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        for (int i = 0; i < v6.length; i += 2) {
+            if (v6[i] == high && v6[i + 1] == low) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether {@code entry} itself is registered, as opposed to merely covered.
+     */
+    public boolean hasEntry(IPRange entry) {
+        return entries().contains(entry);
+    }
+
+    public PlayerIPSet with(byte[] address) {
+        return with(IPRange.of(IPKey.of(address), 128));
+    }
+
+    public PlayerIPSet with(IPRange entry) {
+        List<IPRange> entries = entries();
+        if (entries.contains(entry)) {
+            return this;
+        }
+        entries.add(entry);
+        return new PlayerIPSet(entries);
+    }
+
+    public PlayerIPSet without(byte[] address) {
+        return without(IPRange.of(IPKey.of(address), 128));
+    }
+
+    /**
+     * Returns the set without {@code entry}, or null when nothing would be left.
+     * If the primary entry is removed the oldest remaining one takes its place.
+     */
+    public PlayerIPSet without(IPRange entry) {
+        List<IPRange> entries = entries();
+        if (!entries.remove(entry)) {
+            return this;
+        }
+        return entries.isEmpty() ? null : new PlayerIPSet(entries);
+    }
+
+    /**
+     * The registered entries, primary first.
+     */
+    public List<IPRange> entries() {
+        List<IPRange> v4Entries = new ArrayList<>(v4.length);
+        List<IPRange> v6Entries = new ArrayList<>(v6.length / 2);
+
+        for (int i = 0; i < v4.length; i++) {
+            v4Entries.add(IPRange.of(IPKey.ofV4(v4[i]), 96 + (v4Prefix == null ? 32 : v4Prefix[i])));
+        }
+        for (int i = 0; i < v6.length; i += 2) {
+            v6Entries.add(IPRange.of(new IPKey(v6[i], v6[i + 1]), v6Prefix == null ? 128 : v6Prefix[i / 2] & 0xFF));
+        }
+
+        List<IPRange> result = new ArrayList<>(size() + 1);
+        if (primaryIsV6) {
+            result.addAll(v6Entries);
+            result.addAll(v4Entries);
+        } else {
+            result.addAll(v4Entries);
+            result.addAll(v6Entries);
+        }
+        return result;
+    }
+
+    public int size() {
+        return v4.length + v6.length / 2;
+    }
+
+    /**
+     * Formats the entries, primary first, in canonical form; ranges use CIDR notation.
+     */
+    public List<String> toStrings() {
+        List<String> result = new ArrayList<>(size());
+        for (IPRange entry : entries()) {
+            result.add(entry.toString());
+        }
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof PlayerIPSet)) {
+            return false;
+        }
+        PlayerIPSet that = (PlayerIPSet) other;
+        return primaryIsV6 == that.primaryIsV6 && Arrays.equals(v4, that.v4) && Arrays.equals(v6, that.v6)
+                && Arrays.equals(v4Prefix, that.v4Prefix) && Arrays.equals(v6Prefix, that.v6Prefix);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * Arrays.hashCode(v4) + Arrays.hashCode(v6)) + (primaryIsV6 ? 1 : 0);
+    }
+
+    /**
+     * Converts an IP literal into its raw bytes, or null if it is not one:
+     * 4 bytes for IPv4 (including IPv4-mapped IPv6), 16 otherwise.
+     */
+    public static byte[] parseAddress(String ip) {
+        IPKey key = IPKey.parse(ip);
+        if (key == null) {
+            return null;
+        }
+        if (key.isV4()) {
+            int value = (int) key.getLow();
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (key.getHigh() >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (key.getLow() >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    static int packV4(byte[] address) {
+        return ((address[0] & 0xFF) << 24) | ((address[1] & 0xFF) << 16) | ((address[2] & 0xFF) << 8) | (address[3] & 0xFF);
+    }
+
+    static long high(byte[] address) {
+        return readLong(address, 0);
+    }
+
+    static long low(byte[] address) {
+        return readLong(address, 8);
+    }
+
+    private static long readLong(byte[] address, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (address[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
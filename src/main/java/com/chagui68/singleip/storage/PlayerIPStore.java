@@ -0,0 +1,65 @@
+package com.chagui68.singleip.storage;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Where player IPs are persisted. {@link IPDataManager} keeps every set in
+ * memory and only hands the store what changed, either one change at a time
+ * ({@link #isIncremental()}) or as a full snapshot of the map.
+ */
+public interface PlayerIPStore {
+
+    interface Loader {
+        /**
+         * A player's stored entries, primary first. May be called from several
+         * threads at once, each time for a different player.
+         */
+        void player(UUID uuid, List<String> entries);
+
+        /** A change recorded after the last snapshot, replayed in order once every player is loaded. */
+        void change(char op, UUID uuid, String ip);
+    }
+
+    void load(Loader loader) throws IOException;
+
+    /**
+     * Whether something other than this store changed what it would load, e.g.
+     * the file was edited by hand. Stores that cannot tell return false.
+     */
+    default boolean changedOnDisk() {
+        return false;
+    }
+
+    /**
+     * Whether {@link #record} persists each change by itself, so changes do not
+     * need to schedule a snapshot.
+     */
+    boolean isIncremental();
+
+    /**
+     * Persists one change; {@code ips} is the player's set after it, or null if
+     * the player was removed. Runs inside the compute for the player, so changes
+     * to one player arrive in the order they were applied.
+     */
+    void record(char op, UUID uuid, String ip, PlayerIPSet ips) throws IOException;
+
+    /**
+     * Whether a snapshot is due even though nothing is dirty, e.g. to compact a long journal.
+     */
+    boolean wantsSnapshot();
+
+    /**
+     * Called while the map is locked, right before it is copied for {@link #writeSnapshot}.
+     */
+    void beginSnapshot() throws IOException;
+
+    /**
+     * Replaces everything stored with {@code view}.
+     */
+    void writeSnapshot(Map<UUID, PlayerIPSet> view) throws IOException;
+
+    void close();
+}
@@ -0,0 +1,20 @@
+package com.chagui68.singleip.storage;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Where the last name seen for each UUID is persisted. The names are kept in
+ * memory by the {@link PlayerNameTable}, which only saves players that changed.
+ */
+public interface PlayerNameStore {
+
+    void loadNames(BiConsumer<UUID, String> consumer) throws IOException;
+
+    /**
+     * Replaces the stored name of every player in {@code changed}.
+     */
+    void saveNames(Map<UUID, String> changed) throws IOException;
+}
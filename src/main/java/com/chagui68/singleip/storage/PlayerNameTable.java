@@ -0,0 +1,153 @@
+package com.chagui68.singleip.storage;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Last name seen for each UUID and the other way round, fed from pre-login, so
+ * commands resolve names and complete them without Bukkit's user cache or a
+ * profile lookup. Names are looked up case-insensitively through a
+ * {@link NameTrie}; changes are saved in batches by a single writer.
+ */
+public class PlayerNameTable {
+
+    private static final long FLUSH_INTERVAL_SECONDS = 30;
+
+    private final PlayerNameStore store;
+    private final Logger logger;
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+    private final NameTrie byName = new NameTrie();
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService writer;
+
+    public PlayerNameTable(PlayerNameStore store, Logger logger) {
+        this.store = store;
+        this.logger = logger;
+
+        try {
+            store.loadNames(this::put);
+        } catch (IOException e) {
+            logger.severe("Error loading player names: " + e.getMessage());
+        }
+
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SingleIP-Names");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_SECONDS, FLUSH_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Records the name a player connected with, replacing an older one after a rename.
+     */
+    public void record(UUID uuid, String name) {
+        if (uuid == null || name == null || name.isEmpty() || name.equals(names.get(uuid))) {
+            return;
+        }
+        if (put(uuid, name)) {
+            dirty.add(uuid);
+        }
+    }
+
+    /**
+     * Same as {@link #record}, but never overwrites a name that is already known.
+     */
+    public void seed(UUID uuid, String name) {
+        if (uuid != null && name != null && !name.isEmpty() && !names.containsKey(uuid)) {
+            record(uuid, name);
+        }
+    }
+
+    /**
+     * The last known name, or null if the player was never seen.
+     */
+    public String getName(UUID uuid) {
+        return names.get(uuid);
+    }
+
+    /**
+     * The player last seen with this name, ignoring case, or null.
+     */
+    public UUID getUUID(String name) {
+        synchronized (byName) {
+            return byName.get(name);
+        }
+    }
+
+    /**
+     * Up to {@code limit} known names starting with {@code prefix}, ignoring case, in alphabetical order.
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<String> matches = new ArrayList<>(Math.min(limit, 64));
+        synchronized (byName) {
+            byName.complete(prefix, limit, matches);
+        }
+        return matches;
+    }
+
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Writes pending changes and stops the writer, waiting at most {@code timeoutMillis}.
+     */
+    public void shutdown(long timeoutMillis) {
+        writer.execute(this::flush);
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warning("Timed out while saving player names");
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean put(UUID uuid, String name) {
+        synchronized (byName) {
+            String previous = names.put(uuid, name);
+            if (name.equals(previous)) {
+                return false;
+            }
+            if (previous != null) {
+                byName.remove(previous, uuid);
+            }
+            // A name taken over after a rename now points at its new owner
+            byName.put(name, uuid);
+            return true;
+        }
+    }
+
+    private void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, String> changed = new HashMap<>();
+        for (UUID uuid : new ArrayList<>(dirty)) {
+            dirty.remove(uuid);
+            changed.put(uuid, names.get(uuid));
+        }
+
+        try {
+            store.saveNames(changed);
+        } catch (IOException e) {
+            dirty.addAll(changed.keySet());
+            logger.severe("Error saving player names: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.chagui68.singleip.storage;
+
+import java.util.Arrays;
+
+/**
+ * Immutable path-compressed binary trie over the 128-bit {@link IPKey} space.
+ * Nodes live in parallel primitive arrays; a node only exists where prefixes
+ * branch or end, so {@code n} prefixes need at most {@code 2n - 1} nodes and a
+ * lookup visits at most 128 bits whatever the number of prefixes.
+ */
+public final class PrefixTrie {
+
+    private static final int NONE = -1;
+
+    private long[] high;
+    private long[] low;
+    private byte[] length;
+    private int[] children;
+    private boolean[] terminal;
+    private int nodes;
+
+    private PrefixTrie(int capacity) {
+        high = new long[capacity];
+        low = new long[capacity];
+        length = new byte[capacity];
+        children = new int[capacity * 2];
+        terminal = new boolean[capacity];
+        Arrays.fill(children, NONE);
+    }
+
+    public static PrefixTrie build(IPRange[] prefixes) {
+        PrefixTrie trie = new PrefixTrie(Math.max(1, prefixes.length * 2));
+        for (IPRange prefix : prefixes) {
+            trie.insert(prefix.getFirst().getHigh(), prefix.getFirst().getLow(), prefix.getPrefixLength());
+        }
+        return trie;
+    }
+
+    /**
+     * Returns the length of the longest stored prefix covering the address, or -1 if none does.
+     */
+    public int longestMatch(long addressHigh, long addressLow) {
+        int best = NONE;
+        int node = nodes == 0 ? NONE : 0;
+
+        while (node != NONE) {
+            int nodeLength = length[node] & 0xFF;
+            if (commonPrefix(addressHigh, addressLow, high[node], low[node]) < nodeLength) {
+                break;
+            }
+            if (terminal[node]) {
+                best = nodeLength;
+            }
+            if (nodeLength == 128) {
+                break;
+            }
+            node = children[node * 2 + bit(addressHigh, addressLow, nodeLength)];
+        }
+
+        return best;
+    }
+
+    private void insert(long keyHigh, long keyLow, int keyLength) {
+        if (nodes == 0) {
+            newNode(keyHigh, keyLow, keyLength, true);
+            return;
+        }
+
+        int parentSlot = NONE;
+        int node = 0;
+
+        while (true) {
+            int nodeLength = length[node] & 0xFF;
+            int common = Math.min(commonPrefix(keyHigh, keyLow, high[node], low[node]), Math.min(keyLength, nodeLength));
+
+            if (common == nodeLength) {
+                if (keyLength == nodeLength) {
+                    terminal[node] = true;
+                    return;
+                }
+                int slot = node * 2 + bit(keyHigh, keyLow, nodeLength);
+                if (children[slot] == NONE) {
+                    int leaf = newNode(keyHigh, keyLow, keyLength, true);
+                    children[slot] = leaf;
+                    return;
+                }
+                parentSlot = slot;
+                node = children[slot];
+                continue;
+            }
+
+            int replacement;
+            if (common == keyLength) {
+                // The new prefix sits above this node
+                replacement = newNode(keyHigh, keyLow, keyLength, true);
+                children[replacement * 2 + bit(high[node], low[node], keyLength)] = node;
+            } else {
+                // Branch where the new prefix and this node diverge
+                replacement = newNode(keyHigh, keyLow, common, false);
+                int leaf = newNode(keyHigh, keyLow, keyLength, true);
+                children[replacement * 2 + bit(keyHigh, keyLow, common)] = leaf;
+                children[replacement * 2 + bit(high[node], low[node], common)] = node;
+            }
+
+            if (parentSlot == NONE) {
+                swapWithRoot(replacement, node);
+            } else {
+                children[parentSlot] = replacement;
+            }
+            return;
+        }
+    }
+
+    /**
+     * Lookups always start at node 0, so a new root trades places with the old one.
+     */
+    private void swapWithRoot(int replacement, int oldRoot) {
+        long h = high[oldRoot];
+        long l = low[oldRoot];
+        byte len = length[oldRoot];
+        boolean term = terminal[oldRoot];
+        int left = children[oldRoot * 2];
+        int right = children[oldRoot * 2 + 1];
+
+        high[oldRoot] = high[replacement];
+        low[oldRoot] = low[replacement];
+        length[oldRoot] = length[replacement];
+        terminal[oldRoot] = terminal[replacement];
+        children[oldRoot * 2] = children[replacement * 2] == oldRoot ? replacement : children[replacement * 2];
+        children[oldRoot * 2 + 1] = children[replacement * 2 + 1] == oldRoot ? replacement : children[replacement * 2 + 1];
+
+        high[replacement] = h;
+        low[replacement] = l;
+        length[replacement] = len;
+        terminal[replacement] = term;
+        children[replacement * 2] = left;
+        children[replacement * 2 + 1] = right;
+    }
+
+    private int newNode(long keyHigh, long keyLow, int keyLength, boolean isTerminal) {
+        if (nodes == terminal.length) {
+            int capacity = nodes * 2;
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            length = Arrays.copyOf(length, capacity);
+            terminal = Arrays.copyOf(terminal, capacity);
+            children = Arrays.copyOf(children, capacity * 2);
+            Arrays.fill(children, nodes * 2, capacity * 2, NONE);
+        }
+
+        int node = nodes++;
+        high[node] = keyLength >= 64 ? keyHigh : keyHigh & mask(keyLength);
+        low[node] = keyLength >= 64 ? keyLow & mask(keyLength - 64) : 0L;
+        length[node] = (byte) keyLength;
+        terminal[node] = isTerminal;
+        return node;
+    }
+
+    private static int commonPrefix(long h1, long l1, long h2, long l2) {
+        long diff = h1 ^ h2;
+        if (diff != 0) {
+            return Long.numberOfLeadingZeros(diff);
+        }
+        diff = l1 ^ l2;
+        return diff == 0 ? 128 : 64 + Long.numberOfLeadingZeros(diff);
+    }
+
+    private static int bit(long keyHigh, long keyLow, int index) {
+        return index < 64 ? (int) (keyHigh >>> (63 - index)) & 1 : (int) (keyLow >>> (127 - index)) & 1;
+    }
+
+    private static long mask(int bits) {
+        if (bits <= 0) {
+            return 0L;
+        }
+        return bits >= 64 ? -1L : -1L << (64 - bits);
+    }
+}
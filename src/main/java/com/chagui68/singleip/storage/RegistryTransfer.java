@@ -0,0 +1,310 @@
+package com.chagui68.singleip.storage;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Streams the IP registry to and from CSV ({@code uuid,ip} per entry) or JSON
+ * Lines ({@code {"uuid": ..., "ips": [...]}} per player, {@code "ip"} also
+ * accepted). Files are read a line at a time and applied in batches, so memory
+ * stays flat however large the file is, and the store is written once at the
+ * end instead of once per entry.
+ */
+public class RegistryTransfer {
+
+    private static final int BATCH_SIZE = 5000;
+    private static final long PROGRESS_EVERY = 50_000;
+    private static final int LOGGED_INVALID_LINES = 10;
+
+    public enum Format {
+        CSV, JSONL;
+
+        /**
+         * The format matching the file extension, or null if it is not one we know.
+         */
+        public static Format forFile(File file) {
+            String name = file.getName().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".csv")) {
+                return CSV;
+            }
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson") || name.endsWith(".json")) {
+                return JSONL;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Told every 50,000 lines imported or players exported, from the thread doing the transfer.
+     */
+    public interface Progress {
+        void update(long done, long entries);
+    }
+
+    private final IPDataManager dataManager;
+    private final Logger logger;
+
+    public RegistryTransfer(IPDataManager dataManager, Logger logger) {
+        this.dataManager = dataManager;
+        this.logger = logger;
+    }
+
+    /**
+     * Adds every valid entry in {@code file} to the registry. With {@code dryRun}
+     * the file is only validated and nothing is changed. Throws if the entries
+     * were added but could not be saved.
+     */
+    public ImportResult importFile(File file, Format format, boolean dryRun, Progress progress) throws IOException {
+        requireLoaded();
+        ImportResult result = new ImportResult(dryRun);
+        Map<UUID, List<IPRange>> batch = new LinkedHashMap<>();
+        int batched = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                result.lines++;
+                if (result.lines % PROGRESS_EVERY == 0) {
+                    progress.update(result.lines, result.entries);
+                }
+
+                String trimmed = line.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                    continue;
+                }
+                if (result.lines == 1 && format == Format.CSV && trimmed.toLowerCase(Locale.ROOT).startsWith("uuid")) {
+                    continue;
+                }
+
+                int before = batched;
+                batched += parseLine(trimmed, format, batch);
+                if (batched == before) {
+                    invalid(result, line);
+                }
+
+                if (batched >= BATCH_SIZE) {
+                    apply(batch, dryRun, result);
+                    batch.clear();
+                    batched = 0;
+                }
+            }
+        }
+        apply(batch, dryRun, result);
+
+        if (!dryRun && result.added > 0 && !dataManager.saveData()) {
+            throw new IOException(result.describe() + ", but they could not be saved yet (see the console)");
+        }
+        return result;
+    }
+
+    /**
+     * Writes every registered entry to {@code file}, replacing it only once the
+     * whole export is written. Returns the number of players exported.
+     */
+    public long exportFile(File file, Format format, Progress progress) throws IOException {
+        requireLoaded();
+        Path target = file.toPath();
+        Path temp = target.resolveSibling(file.getName() + ".tmp");
+        long players = 0;
+        long entries = 0;
+
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            if (format == Format.CSV) {
+                writer.write("uuid,ip");
+                writer.newLine();
+            }
+            for (UUID uuid : dataManager.getAllPlayers()) {
+                List<String> ips = dataManager.getRegisteredIPs(uuid);
+                if (ips.isEmpty()) {
+                    continue;
+                }
+                if (format == Format.CSV) {
+                    for (String ip : ips) {
+                        writer.write(uuid.toString());
+                        writer.write(',');
+                        writer.write(ip);
+                        writer.newLine();
+                    }
+                } else {
+                    JsonObject json = new JsonObject();
+                    json.addProperty("uuid", uuid.toString());
+                    JsonArray array = new JsonArray();
+                    ips.forEach(array::add);
+                    json.add("ips", array);
+                    writer.write(json.toString());
+                    writer.newLine();
+                }
+
+                players++;
+                entries += ips.size();
+                if (players % PROGRESS_EVERY == 0) {
+                    progress.update(players, entries);
+                }
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return players;
+    }
+
+    /**
+     * Before the first load, an import would only live in memory and an export would be partial.
+     */
+    private void requireLoaded() throws IOException {
+        if (!dataManager.isLoaded()) {
+            throw new IOException("player IPs are not loaded yet");
+        }
+    }
+
+    /**
+     * Adds the entries on one line to {@code batch} and returns how many there were, 0 if the line is invalid.
+     */
+    private static int parseLine(String line, Format format, Map<UUID, List<IPRange>> batch) {
+        UUID uuid;
+        List<String> values = new ArrayList<>(1);
+        try {
+            if (format == Format.CSV) {
+                String[] fields = line.split(",", 3);
+                if (fields.length < 2) {
+                    return 0;
+                }
+                uuid = UUID.fromString(unquote(fields[0]));
+                values.add(unquote(fields[1]));
+            } else {
+                JsonObject json = JsonParser.parseString(line).getAsJsonObject();
+                uuid = UUID.fromString(json.get("uuid").getAsString());
+                JsonElement ips = json.has("ips") ? json.get("ips") : json.get("ip");
+                if (ips == null) {
+                    return 0;
+                }
+                if (ips.isJsonArray()) {
+                    for (JsonElement ip : ips.getAsJsonArray()) {
+                        values.add(ip.getAsString());
+                    }
+                } else if (ips instanceof JsonPrimitive) {
+                    values.add(ips.getAsString());
+                }
+            }
+        } catch (RuntimeException e) {
+            // Malformed JSON, a missing field or an invalid UUID
+            return 0;
+        }
+
+        List<IPRange> entries = new ArrayList<>(values.size());
+        for (String value : values) {
+            IPRange entry = IPRange.parse(value.trim());
+            if (entry == null) {
+                return 0;
+            }
+            entries.add(entry);
+        }
+        if (entries.isEmpty()) {
+            return 0;
+        }
+        batch.computeIfAbsent(uuid, key -> new ArrayList<>(2)).addAll(entries);
+        return entries.size();
+    }
+
+    private static String unquote(String field) {
+        String value = field.trim();
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+        return value;
+    }
+
+    private void invalid(ImportResult result, String line) {
+        result.invalid++;
+        if (result.invalid <= LOGGED_INVALID_LINES) {
+            logger.warning("Invalid import line " + result.lines + " ignored: " + line);
+        } else if (result.invalid == LOGGED_INVALID_LINES + 1) {
+            logger.warning("More invalid import lines, only counting them from now on");
+        }
+    }
+
+    private void apply(Map<UUID, List<IPRange>> batch, boolean dryRun, ImportResult result) {
+        for (List<IPRange> entries : batch.values()) {
+            result.entries += entries.size();
+        }
+        if (!dryRun) {
+            result.added += dataManager.importEntries(batch);
+            return;
+        }
+        // Only entries already registered are known to be skipped; duplicates within the file are not tracked
+        for (Map.Entry<UUID, List<IPRange>> player : batch.entrySet()) {
+            for (IPRange entry : player.getValue()) {
+                if (!dataManager.hasIPEntry(player.getKey(), entry)) {
+                    result.added++;
+                }
+            }
+        }
+    }
+
+    /**
+     * What an import read and changed. In a dry run, {@link #getAdded()} counts
+     * the entries that are not registered yet.
+     */
+    public static final class ImportResult {
+        private final boolean dryRun;
+        private long lines;
+        private long entries;
+        private long added;
+        private long invalid;
+
+        ImportResult(boolean dryRun) {
+            this.dryRun = dryRun;
+        }
+
+        public boolean isDryRun() {
+            return dryRun;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public long getEntries() {
+            return entries;
+        }
+
+        public long getAdded() {
+            return added;
+        }
+
+        public long getInvalid() {
+            return invalid;
+        }
+
+        public String describe() {
+            return lines + " lines, " + entries + " valid entries, " + added
+                    + (dryRun ? " would be added, " : " added, ") + invalid + " invalid lines";
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.chagui68.singleip.storage;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Entry to players index kept in address order, so both exact lookups and
+ * CIDR ranges are answered from a sorted sub-map instead of a full scan.
+ * Entries are single addresses or registered CIDR ranges.
+ * <p>
+ * The player sets are never changed in place: each update builds a new set and
+ * swaps it in. The skip list may run a compute function more than once when
+ * threads race on the same entry, and only swapping values keeps that safe.
+ */
+public class ReverseIPIndex {
+
+    private final ConcurrentSkipListMap<IPRange, Set<UUID>> index = new ConcurrentSkipListMap<>();
+
+    public void add(IPRange key, UUID uuid) {
+        index.compute(key, (k, players) -> {
+            if (players == null) {
+                return Collections.singleton(uuid);
+            }
+            if (players.contains(uuid)) {
+                return players;
+            }
+            Set<UUID> result = new HashSet<>(players);
+            result.add(uuid);
+            return Collections.unmodifiableSet(result);
+        });
+    }
+
+    public void remove(IPRange key, UUID uuid) {
+        index.computeIfPresent(key, (k, players) -> {
+            if (!players.contains(uuid)) {
+                return players;
+            }
+            if (players.size() == 1) {
+                return null;
+            }
+            Set<UUID> result = new HashSet<>(players);
+            result.remove(uuid);
+            return Collections.unmodifiableSet(result);
+        });
+    }
+
+    public Set<UUID> get(IPRange key) {
+        Set<UUID> players = index.get(key);
+        return players == null ? Collections.emptySet() : players;
+    }
+
+    /**
+     * Returns up to {@code limit} entries overlapping {@code range} with the players
+     * registered on them: entries inside the range, then entries covering it.
+     */
+    public Map<IPRange, Set<UUID>> range(IPRange range, int limit) {
+        Map<IPRange, Set<UUID>> result = new LinkedHashMap<>();
+
+        for (Map.Entry<IPRange, Set<UUID>> entry : index.subMap(range, true, IPRange.of(range.getLast(), 128), true).entrySet()) {
+            if (result.size() >= limit) {
+                return result;
+            }
+            result.put(entry.getKey(), entry.getValue());
+        }
+
+        // Shorter registered prefixes that contain the whole range start before it
+        for (int prefix = range.getPrefixLength() - 1; prefix >= 0 && result.size() < limit; prefix--) {
+            IPRange covering = IPRange.of(range.getFirst(), prefix);
+            Set<UUID> players = index.get(covering);
+            if (players != null) {
+                result.putIfAbsent(covering, players);
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        index.clear();
+    }
+}
@@ -0,0 +1,65 @@
+package com.chagui68.singleip.storage;
+
+import com.chagui68.singleip.utils.FailedAccessLogger;
+import com.chagui68.singleip.utils.FailedLoginIndex;
+import com.chagui68.singleip.utils.FailedLoginRecord;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Failed logins appended to rolling segment files, with the recent ones
+ * indexed in memory for queries. Older records stay on disk but are not queried.
+ */
+public class SegmentFailedLoginStore implements FailedLoginStore {
+
+    private final FailedAccessLogger appender;
+    private final FailedLoginIndex index;
+
+    public SegmentFailedLoginStore(File dataFolder, Logger logger, ConfigurationSection config) {
+        this.appender = new FailedAccessLogger(
+                new File(dataFolder, "failed-logins"),
+                logger,
+                config.getInt("failed-logins.queue-size", 10000),
+                config.getLong("failed-logins.segment-size", 1024) * 1024L,
+                config.getInt("failed-logins.max-segments", 20)
+        );
+        this.index = new FailedLoginIndex(
+                config.getInt("failed-logins.index-size", 5000),
+                config.getInt("failed-logins.history-per-key", 50),
+                config.getInt("failed-logins.index-max-keys", 50000)
+        );
+        appender.forEachRecord(index::add);
+        appender.start();
+        appender.importLegacy(new File(dataFolder, "failed-logins.yml"), index::add);
+    }
+
+    @Override
+    public boolean log(FailedLoginRecord record) {
+        index.add(record);
+        return appender.log(record);
+    }
+
+    @Override
+    public List<FailedLoginRecord> query(long since, long until, int offset, int limit) {
+        return index.query(since, until, offset, limit);
+    }
+
+    @Override
+    public List<FailedLoginRecord> queryByPlayer(UUID uuid, long since, long until, int offset, int limit) {
+        return index.queryByPlayer(uuid, since, until, offset, limit);
+    }
+
+    @Override
+    public List<FailedLoginRecord> queryByIP(String ip, long since, long until, int offset, int limit) {
+        return index.queryByIP(ip, since, until, offset, limit);
+    }
+
+    @Override
+    public void close(long timeoutMillis) {
+        appender.close(timeoutMillis);
+    }
+}
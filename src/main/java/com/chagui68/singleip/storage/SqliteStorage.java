@@ -0,0 +1,581 @@
+package com.chagui68.singleip.storage;
+
+import com.chagui68.singleip.utils.FailedLoginRecord;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * Player IPs, failed logins, access logs and player names in one SQLite database.
+ * <p>
+ * Writes never touch the database on the calling thread. Player, access log
+ * and name changes are coalesced per player and failed logins are queued; one writer
+ * thread applies everything pending in a single transaction, with prepared
+ * statements on a connection no one else writes to. Player IPs are still served
+ * from memory, while failed login queries run against indexed tables on a
+ * separate read connection, so their history is not limited by the in-memory index.
+ */
+public class SqliteStorage implements Storage {
+
+    private static final String MIGRATED_KEY = "yaml-migrated";
+    private static final long PRUNE_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS meta (key TEXT PRIMARY KEY, value TEXT NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS player_ips (uuid TEXT NOT NULL, position INTEGER NOT NULL, entry TEXT NOT NULL, " +
+                    "PRIMARY KEY (uuid, position)) WITHOUT ROWID",
+            "CREATE TABLE IF NOT EXISTS failed_logins (id INTEGER PRIMARY KEY, timestamp INTEGER NOT NULL, " +
+                    "uuid TEXT NOT NULL, player TEXT, ip TEXT NOT NULL, reason TEXT)",
+            "CREATE INDEX IF NOT EXISTS failed_logins_time ON failed_logins (timestamp)",
+            "CREATE INDEX IF NOT EXISTS failed_logins_player ON failed_logins (uuid, timestamp)",
+            "CREATE INDEX IF NOT EXISTS failed_logins_ip ON failed_logins (ip, timestamp)",
+            "CREATE TABLE IF NOT EXISTS access_logs (uuid TEXT NOT NULL, position INTEGER NOT NULL, entry TEXT NOT NULL, " +
+                    "PRIMARY KEY (uuid, position)) WITHOUT ROWID",
+            "CREATE TABLE IF NOT EXISTS player_names (uuid TEXT PRIMARY KEY, name TEXT NOT NULL) WITHOUT ROWID"
+    };
+
+    private static final String SELECT_FAILED = "SELECT timestamp, uuid, player, ip, reason FROM failed_logins WHERE ";
+    private static final String FAILED_PAGE = "timestamp BETWEEN ? AND ? ORDER BY timestamp DESC, id DESC LIMIT ? OFFSET ?";
+
+    private final Logger logger;
+    private final Connection writeConnection;
+    private final Connection readConnection;
+    private final PreparedStatement deletePlayer;
+    private final PreparedStatement insertPlayer;
+    private final PreparedStatement deleteAccessLogs;
+    private final PreparedStatement insertAccessLog;
+    private final PreparedStatement upsertName;
+    private final PreparedStatement insertFailedLogin;
+    private final PreparedStatement pruneFailedLogins;
+    private final PreparedStatement selectFailed;
+    private final PreparedStatement selectFailedByPlayer;
+    private final PreparedStatement selectFailedByIP;
+
+    private final Map<UUID, List<String>> pendingPlayers = new ConcurrentHashMap<>();
+    private final Map<UUID, List<String>> pendingAccessLogs = new ConcurrentHashMap<>();
+    private final Map<UUID, String> pendingNames = new ConcurrentHashMap<>();
+    private final BlockingQueue<FailedLoginRecord> pendingFailedLogins;
+    private final int failedQueueCapacity;
+    private final List<FailedLoginRecord> unwrittenFailedLogins = new ArrayList<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final long keepFailedLoginsMillis;
+    private final long batchIntervalMillis;
+    private final ScheduledExecutorService writer;
+    private long lastPrune;
+
+    private final PlayerIPStore players = new Players();
+    private final FailedLoginStore failedLogins = new FailedLogins();
+    private final AccessLogStore accessLogs = new AccessLogs();
+    private final PlayerNameStore playerNames = new PlayerNames();
+
+    private SqliteStorage(Connection writeConnection, Connection readConnection, Logger logger,
+                          ConfigurationSection config) throws SQLException {
+        this.logger = logger;
+        this.writeConnection = writeConnection;
+        this.readConnection = readConnection;
+
+        try (Statement statement = writeConnection.createStatement()) {
+            statement.execute("PRAGMA journal_mode = WAL");
+            statement.execute("PRAGMA synchronous = NORMAL");
+            for (String sql : SCHEMA) {
+                statement.execute(sql);
+            }
+        }
+        writeConnection.setAutoCommit(false);
+
+        this.deletePlayer = writeConnection.prepareStatement("DELETE FROM player_ips WHERE uuid = ?");
+        this.insertPlayer = writeConnection.prepareStatement("INSERT INTO player_ips (uuid, position, entry) VALUES (?, ?, ?)");
+        this.deleteAccessLogs = writeConnection.prepareStatement("DELETE FROM access_logs WHERE uuid = ?");
+        this.insertAccessLog = writeConnection.prepareStatement("INSERT INTO access_logs (uuid, position, entry) VALUES (?, ?, ?)");
+        this.upsertName = writeConnection.prepareStatement("INSERT OR REPLACE INTO player_names (uuid, name) VALUES (?, ?)");
+        this.insertFailedLogin = writeConnection.prepareStatement(
+                "INSERT INTO failed_logins (timestamp, uuid, player, ip, reason) VALUES (?, ?, ?, ?, ?)");
+        this.pruneFailedLogins = writeConnection.prepareStatement("DELETE FROM failed_logins WHERE timestamp < ?");
+
+        this.selectFailed = readConnection.prepareStatement(SELECT_FAILED + FAILED_PAGE);
+        this.selectFailedByPlayer = readConnection.prepareStatement(SELECT_FAILED + "uuid = ? AND " + FAILED_PAGE);
+        this.selectFailedByIP = readConnection.prepareStatement(SELECT_FAILED + "ip = ? AND " + FAILED_PAGE);
+
+        this.failedQueueCapacity = Math.max(16, config.getInt("failed-logins.queue-size", 10000));
+        this.pendingFailedLogins = new ArrayBlockingQueue<>(failedQueueCapacity);
+        this.keepFailedLoginsMillis = TimeUnit.DAYS.toMillis(Math.max(0, config.getLong("storage.sqlite.keep-failed-logins", 90)));
+        this.batchIntervalMillis = Math.max(50, config.getLong("storage.sqlite.batch-interval", 1000));
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SingleIP-SQLite");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens (or creates) the database in {@code storage.sqlite.file}, importing
+     * the flat files the first time, and starts the writer.
+     */
+    public static SqliteStorage open(File dataFolder, Logger logger, ConfigurationSection config) throws IOException {
+        File databaseFile = new File(dataFolder, config.getString("storage.sqlite.file", "singleip.db"));
+        String url = "jdbc:sqlite:" + databaseFile.getAbsolutePath();
+        Connection writeConnection = null;
+        Connection readConnection = null;
+
+        try {
+            Class.forName("org.sqlite.JDBC");
+            dataFolder.mkdirs();
+            writeConnection = DriverManager.getConnection(url);
+            readConnection = DriverManager.getConnection(url);
+            SqliteStorage storage = new SqliteStorage(writeConnection, readConnection, logger, config);
+
+            if (!storage.isMigrated()) {
+                new YamlMigrator(dataFolder, logger).migrate(storage);
+                storage.markMigrated();
+            }
+
+            storage.writer.scheduleWithFixedDelay(storage::flushPending,
+                    storage.batchIntervalMillis, storage.batchIntervalMillis, TimeUnit.MILLISECONDS);
+            return storage;
+        } catch (ClassNotFoundException | SQLException | IOException e) {
+            closeQuietly(readConnection);
+            closeQuietly(writeConnection);
+            throw new IOException("Could not open " + databaseFile.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public PlayerIPStore players() {
+        return players;
+    }
+
+    @Override
+    public FailedLoginStore failedLogins() {
+        return failedLogins;
+    }
+
+    @Override
+    public AccessLogStore accessLogs() {
+        return accessLogs;
+    }
+
+    @Override
+    public PlayerNameStore playerNames() {
+        return playerNames;
+    }
+
+    @Override
+    public void close(long timeoutMillis) {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warning("Timed out waiting for the SQLite writer");
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        flushPending();
+        synchronized (writeConnection) {
+            closeQuietly(writeConnection);
+        }
+        synchronized (readConnection) {
+            closeQuietly(readConnection);
+        }
+    }
+
+    /**
+     * Writes everything pending in one transaction. Runs on the writer thread,
+     * and on the caller before the database is read back or closed.
+     */
+    void flushPending() {
+        synchronized (writeConnection) {
+            Map<UUID, List<String>> playerRows = new HashMap<>(pendingPlayers);
+            Map<UUID, List<String>> accessLogRows = new HashMap<>(pendingAccessLogs);
+            Map<UUID, String> nameRows = new HashMap<>(pendingNames);
+            pendingFailedLogins.drainTo(unwrittenFailedLogins, failedQueueCapacity - unwrittenFailedLogins.size());
+            long now = System.currentTimeMillis();
+            boolean prune = keepFailedLoginsMillis > 0 && now - lastPrune >= PRUNE_INTERVAL_MILLIS;
+
+            if (playerRows.isEmpty() && accessLogRows.isEmpty() && nameRows.isEmpty()
+                    && unwrittenFailedLogins.isEmpty() && !prune) {
+                return;
+            }
+
+            try {
+                replaceRows(deletePlayer, insertPlayer, playerRows);
+                replaceRows(deleteAccessLogs, insertAccessLog, accessLogRows);
+                upsertNames(nameRows);
+                insertFailedLogins(unwrittenFailedLogins);
+                if (prune) {
+                    pruneFailedLogins.setLong(1, now - keepFailedLoginsMillis);
+                    pruneFailedLogins.executeUpdate();
+                }
+                writeConnection.commit();
+            } catch (SQLException e) {
+                // Everything stays pending and is retried with the next batch
+                rollback();
+                logger.severe("Error writing to SQLite: " + e.getMessage());
+                return;
+            }
+
+            if (prune) {
+                lastPrune = now;
+            }
+            unwrittenFailedLogins.clear();
+            // A player changed again while the batch was written keeps the newer value pending
+            playerRows.forEach(pendingPlayers::remove);
+            accessLogRows.forEach(pendingAccessLogs::remove);
+            nameRows.forEach(pendingNames::remove);
+        }
+    }
+
+    boolean isMigrated() throws SQLException {
+        synchronized (readConnection) {
+            try (PreparedStatement statement = readConnection.prepareStatement("SELECT value FROM meta WHERE key = ?")) {
+                statement.setString(1, MIGRATED_KEY);
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next();
+                }
+            }
+        }
+    }
+
+    void markMigrated() throws SQLException {
+        synchronized (writeConnection) {
+            try (PreparedStatement statement = writeConnection.prepareStatement(
+                    "INSERT OR REPLACE INTO meta (key, value) VALUES (?, ?)")) {
+                statement.setString(1, MIGRATED_KEY);
+                statement.setString(2, Long.toString(System.currentTimeMillis()));
+                statement.executeUpdate();
+                writeConnection.commit();
+            } catch (SQLException e) {
+                rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Replaces every stored failed login with {@code records}, in batches of
+     * {@code batchSize}. Only used by the migrator, before the writer starts.
+     */
+    void replaceFailedLogins(Iterable<FailedLoginRecord> records, int batchSize) throws SQLException {
+        synchronized (writeConnection) {
+            try (Statement statement = writeConnection.createStatement()) {
+                statement.executeUpdate("DELETE FROM failed_logins");
+                List<FailedLoginRecord> batch = new ArrayList<>(batchSize);
+                for (FailedLoginRecord record : records) {
+                    batch.add(record);
+                    if (batch.size() == batchSize) {
+                        insertFailedLogins(batch);
+                        batch.clear();
+                    }
+                }
+                insertFailedLogins(batch);
+                writeConnection.commit();
+            } catch (SQLException e) {
+                rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void insertFailedLogins(List<FailedLoginRecord> records) throws SQLException {
+        if (records.isEmpty()) {
+            return;
+        }
+        for (FailedLoginRecord record : records) {
+            insertFailedLogin.setLong(1, record.getTimestamp());
+            insertFailedLogin.setString(2, record.getUuid().toString());
+            insertFailedLogin.setString(3, record.getPlayerName());
+            insertFailedLogin.setString(4, record.getAttemptedIP());
+            insertFailedLogin.setString(5, record.getReason());
+            insertFailedLogin.addBatch();
+        }
+        insertFailedLogin.executeBatch();
+    }
+
+    private static void replaceRows(PreparedStatement delete, PreparedStatement insert,
+                                    Map<UUID, List<String>> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<UUID, List<String>> entry : rows.entrySet()) {
+            String uuid = entry.getKey().toString();
+            delete.setString(1, uuid);
+            delete.addBatch();
+
+            List<String> values = entry.getValue();
+            for (int i = 0; i < values.size(); i++) {
+                insert.setString(1, uuid);
+                insert.setInt(2, i);
+                insert.setString(3, values.get(i));
+                insert.addBatch();
+            }
+        }
+        delete.executeBatch();
+        insert.executeBatch();
+    }
+
+    private void upsertNames(Map<UUID, String> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<UUID, String> entry : rows.entrySet()) {
+            upsertName.setString(1, entry.getKey().toString());
+            upsertName.setString(2, entry.getValue());
+            upsertName.addBatch();
+        }
+        upsertName.executeBatch();
+    }
+
+    private void rollback() {
+        try {
+            writeConnection.rollback();
+            for (PreparedStatement statement : new PreparedStatement[]{deletePlayer, insertPlayer,
+                    deleteAccessLogs, insertAccessLog, upsertName, insertFailedLogin}) {
+                statement.clearBatch();
+            }
+        } catch (SQLException e) {
+            logger.severe("Error rolling back SQLite transaction: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Streams {@code uuid, entry} rows ordered by player and position, one list per player.
+     */
+    private void readGrouped(String sql, BiConsumer<UUID, List<String>> consumer) throws IOException {
+        synchronized (readConnection) {
+            try (Statement statement = readConnection.createStatement();
+                 ResultSet result = statement.executeQuery(sql)) {
+                String current = null;
+                List<String> entries = new ArrayList<>();
+                while (result.next()) {
+                    String uuid = result.getString(1);
+                    if (!uuid.equals(current)) {
+                        emit(current, entries, consumer);
+                        current = uuid;
+                        entries = new ArrayList<>();
+                    }
+                    entries.add(result.getString(2));
+                }
+                emit(current, entries, consumer);
+            } catch (SQLException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        }
+    }
+
+    private void emit(String uuidString, List<String> entries, BiConsumer<UUID, List<String>> consumer) {
+        if (uuidString == null) {
+            return;
+        }
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(uuidString);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid UUID ignored: " + uuidString);
+            return;
+        }
+        consumer.accept(uuid, entries);
+    }
+
+    private List<FailedLoginRecord> selectFailedLogins(PreparedStatement statement, String key,
+                                                       long since, long until, int offset, int limit) {
+        List<FailedLoginRecord> result = new ArrayList<>(Math.min(limit, 64));
+        synchronized (readConnection) {
+            try {
+                int index = 1;
+                if (key != null) {
+                    statement.setString(index++, key);
+                }
+                statement.setLong(index++, since);
+                statement.setLong(index++, until);
+                statement.setInt(index++, limit);
+                statement.setInt(index, offset);
+
+                try (ResultSet rows = statement.executeQuery()) {
+                    while (rows.next()) {
+                        FailedLoginRecord record = toRecord(rows);
+                        if (record != null) {
+                            result.add(record);
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                logger.severe("Error querying failed logins: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    private static FailedLoginRecord toRecord(ResultSet rows) throws SQLException {
+        try {
+            return new FailedLoginRecord(rows.getLong(1), UUID.fromString(rows.getString(2)),
+                    rows.getString(3), rows.getString(4), rows.getString(5));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Nothing left to do with a connection that cannot be closed
+        }
+    }
+
+    private final class Players implements PlayerIPStore {
+
+        @Override
+        public void load(Loader loader) throws IOException {
+            flushPending();
+            readGrouped("SELECT uuid, entry FROM player_ips ORDER BY uuid, position", loader::player);
+        }
+
+        @Override
+        public boolean isIncremental() {
+            return true;
+        }
+
+        @Override
+        public void record(char op, UUID uuid, String ip, PlayerIPSet ips) {
+            pendingPlayers.put(uuid, ips == null ? Collections.emptyList() : ips.toStrings());
+        }
+
+        @Override
+        public boolean wantsSnapshot() {
+            return false;
+        }
+
+        @Override
+        public void beginSnapshot() {
+        }
+
+        @Override
+        public void writeSnapshot(Map<UUID, PlayerIPSet> view) throws IOException {
+            synchronized (writeConnection) {
+                try (Statement statement = writeConnection.createStatement()) {
+                    statement.executeUpdate("DELETE FROM player_ips");
+                    Map<UUID, List<String>> rows = new HashMap<>();
+                    for (Map.Entry<UUID, PlayerIPSet> entry : view.entrySet()) {
+                        rows.put(entry.getKey(), entry.getValue().toStrings());
+                        if (rows.size() == 1000) {
+                            replaceRows(deletePlayer, insertPlayer, rows);
+                            rows.clear();
+                        }
+                    }
+                    replaceRows(deletePlayer, insertPlayer, rows);
+                    writeConnection.commit();
+                } catch (SQLException e) {
+                    rollback();
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            flushPending();
+        }
+    }
+
+    private final class FailedLogins implements FailedLoginStore {
+
+        @Override
+        public boolean log(FailedLoginRecord record) {
+            if (pendingFailedLogins.offer(record)) {
+                return true;
+            }
+            if (dropped.incrementAndGet() % 1000 == 1) {
+                logger.warning("Failed login queue is full, dropped " + dropped.get() + " records so far");
+            }
+            return false;
+        }
+
+        @Override
+        public List<FailedLoginRecord> query(long since, long until, int offset, int limit) {
+            return selectFailedLogins(selectFailed, null, since, until, offset, limit);
+        }
+
+        @Override
+        public List<FailedLoginRecord> queryByPlayer(UUID uuid, long since, long until, int offset, int limit) {
+            return selectFailedLogins(selectFailedByPlayer, uuid.toString(), since, until, offset, limit);
+        }
+
+        @Override
+        public List<FailedLoginRecord> queryByIP(String ip, long since, long until, int offset, int limit) {
+            return selectFailedLogins(selectFailedByIP, ip, since, until, offset, limit);
+        }
+
+        @Override
+        public void close(long timeoutMillis) {
+            flushPending();
+        }
+    }
+
+    private final class AccessLogs implements AccessLogStore {
+
+        @Override
+        public void loadLogs(BiConsumer<UUID, List<String>> consumer) throws IOException {
+            flushPending();
+            readGrouped("SELECT uuid, entry FROM access_logs ORDER BY uuid, position", consumer);
+        }
+
+        @Override
+        public void saveLogs(Map<UUID, List<String>> changed) {
+            pendingAccessLogs.putAll(changed);
+        }
+    }
+
+    private final class PlayerNames implements PlayerNameStore {
+
+        @Override
+        public void loadNames(BiConsumer<UUID, String> consumer) throws IOException {
+            flushPending();
+            synchronized (readConnection) {
+                try (Statement statement = readConnection.createStatement();
+                     ResultSet result = statement.executeQuery("SELECT uuid, name FROM player_names")) {
+                    while (result.next()) {
+                        try {
+                            consumer.accept(UUID.fromString(result.getString(1)), result.getString(2));
+                        } catch (IllegalArgumentException e) {
+                            logger.warning("Invalid UUID in player names ignored: " + result.getString(1));
+                        }
+                    }
+                } catch (SQLException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            }
+        }
+
+        @Override
+        public void saveNames(Map<UUID, String> changed) {
+            pendingNames.putAll(changed);
+        }
+    }
+}
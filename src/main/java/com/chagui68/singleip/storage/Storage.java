@@ -0,0 +1,34 @@
+package com.chagui68.singleip.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * The backend selected by {@code storage.format}: flat files ({@code yaml} or
+ * {@code journal}) or a single SQLite database ({@code sqlite}).
+ */
+public interface Storage {
+
+    PlayerIPStore players();
+
+    FailedLoginStore failedLogins();
+
+    AccessLogStore accessLogs();
+
+    PlayerNameStore playerNames();
+
+    /**
+     * Releases the backend once every store has been flushed and closed.
+     */
+    void close(long timeoutMillis);
+
+    static Storage open(File dataFolder, Logger logger, ConfigurationSection config) throws IOException {
+        if (config.getString("storage.format", "yaml").equalsIgnoreCase("sqlite")) {
+            return SqliteStorage.open(dataFolder, logger, config);
+        }
+        return new FileStorage(dataFolder, logger, config);
+    }
+}
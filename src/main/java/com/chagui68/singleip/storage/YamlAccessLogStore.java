@@ -0,0 +1,60 @@
+package com.chagui68.singleip.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * access-logs.yml, with one list per player under {@code attempts}. Only
+ * called from the access log writer thread. Saves rewrite the whole file into
+ * a temporary one first, so a failed save leaves the previous file intact.
+ */
+public class YamlAccessLogStore implements AccessLogStore {
+
+    private final File logFile;
+    private final Logger logger;
+    private FileConfiguration logConfig = new YamlConfiguration();
+
+    public YamlAccessLogStore(File logFile, Logger logger) {
+        this.logFile = logFile;
+        this.logger = logger;
+    }
+
+    @Override
+    public void loadLogs(BiConsumer<UUID, List<String>> consumer) throws IOException {
+        if (!logFile.exists()) {
+            logFile.getParentFile().mkdirs();
+            logFile.createNewFile();
+        }
+
+        logConfig = YamlConfiguration.loadConfiguration(logFile);
+        ConfigurationSection attempts = logConfig.getConfigurationSection("attempts");
+        if (attempts == null) {
+            return;
+        }
+
+        for (String key : attempts.getKeys(false)) {
+            try {
+                consumer.accept(UUID.fromString(key), attempts.getStringList(key));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Invalid UUID in access logs ignored: " + key);
+            }
+        }
+    }
+
+    @Override
+    public void saveLogs(Map<UUID, List<String>> changed) throws IOException {
+        for (Map.Entry<UUID, List<String>> entry : changed.entrySet()) {
+            logConfig.set("attempts." + entry.getKey(), entry.getValue().isEmpty() ? null : entry.getValue());
+        }
+        AtomicFiles.write(logFile, logConfig.saveToString());
+    }
+}
@@ -0,0 +1,126 @@
+package com.chagui68.singleip.storage;
+
+import com.chagui68.singleip.utils.FailedAccessLogger;
+import com.chagui68.singleip.utils.FailedLoginRecord;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * One-shot import of the flat files into a new SQLite database. Each imported
+ * file is renamed with a {@code .migrated} suffix afterwards, so it is kept
+ * around but never read again.
+ */
+final class YamlMigrator {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final File dataFolder;
+    private final Logger logger;
+
+    YamlMigrator(File dataFolder, Logger logger) {
+        this.dataFolder = dataFolder;
+        this.logger = logger;
+    }
+
+    void migrate(SqliteStorage target) throws IOException, SQLException {
+        File playersFile = new File(dataFolder, "player-ips.yml");
+        File journalFile = new File(dataFolder, "player-ips.journal");
+        File compactingFile = new File(dataFolder, "player-ips.journal.compacting");
+        File segmentFolder = new File(dataFolder, "failed-logins");
+        File legacyFailedLogins = new File(dataFolder, "failed-logins.yml");
+        File accessLogsFile = new File(dataFolder, "access-logs.yml");
+        File namesFile = new File(dataFolder, "player-names.yml");
+
+        boolean hasJournal = journalFile.exists() || compactingFile.exists();
+        if (!playersFile.exists() && !hasJournal && !segmentFolder.exists()
+                && !legacyFailedLogins.exists() && !accessLogsFile.exists() && !namesFile.exists()) {
+            return;
+        }
+
+        Map<UUID, PlayerIPSet> players = readPlayers(playersFile, hasJournal ? journalFile : null);
+        target.players().writeSnapshot(players);
+
+        List<FailedLoginRecord> failedLogins = new ArrayList<>();
+        if (legacyFailedLogins.exists()) {
+            failedLogins.addAll(FailedAccessLogger.readLegacy(legacyFailedLogins, logger));
+        }
+        new FailedAccessLogger(segmentFolder, logger, 16, 1024, 1).forEachRecord(failedLogins::add);
+        target.replaceFailedLogins(failedLogins, BATCH_SIZE);
+
+        Map<UUID, List<String>> accessLogs = new HashMap<>();
+        if (accessLogsFile.exists()) {
+            new YamlAccessLogStore(accessLogsFile, logger).loadLogs(accessLogs::put);
+        }
+        target.accessLogs().saveLogs(accessLogs);
+
+        Map<UUID, String> names = new HashMap<>();
+        new YamlPlayerNameStore(namesFile, logger).loadNames(names::put);
+        target.playerNames().saveNames(names);
+        target.flushPending();
+
+        for (File file : new File[]{playersFile, journalFile, compactingFile, segmentFolder,
+                legacyFailedLogins, accessLogsFile, namesFile}) {
+            retire(file);
+        }
+        logger.info("Migrated " + players.size() + " players, " + failedLogins.size() + " failed logins and " +
+                accessLogs.size() + " access logs to SQLite");
+    }
+
+    private Map<UUID, PlayerIPSet> readPlayers(File playersFile, File journalFile) throws IOException {
+        Map<UUID, PlayerIPSet> players = new HashMap<>();
+        PlayerIPJournal journal = journalFile == null ? null : new PlayerIPJournal(journalFile, logger);
+        YamlPlayerIPStore source = new YamlPlayerIPStore(playersFile, logger, journal, Integer.MAX_VALUE, 1);
+
+        source.load(new PlayerIPStore.Loader() {
+            @Override
+            public void player(UUID uuid, List<String> entries) {
+                PlayerIPSet ips = null;
+                for (String ip : entries) {
+                    IPRange entry = IPRange.parse(ip);
+                    if (entry == null) {
+                        logger.warning("Invalid IP ignored for " + uuid + ": " + ip);
+                        continue;
+                    }
+                    ips = ips == null ? PlayerIPSet.of(entry) : ips.with(entry);
+                }
+                if (ips != null) {
+                    players.put(uuid, ips);
+                }
+            }
+
+            @Override
+            public void change(char op, UUID uuid, String ip) {
+                IPRange entry = ip == null ? null : IPRange.parse(ip);
+                if (op == PlayerIPJournal.CLEAR) {
+                    players.remove(uuid);
+                } else if (entry == null) {
+                    logger.warning("Invalid IP in journal ignored: " + ip);
+                } else if (op == PlayerIPJournal.ADD) {
+                    players.compute(uuid, (key, current) -> current == null ? PlayerIPSet.of(entry) : current.with(entry));
+                } else if (op == PlayerIPJournal.REMOVE) {
+                    players.computeIfPresent(uuid, (key, current) -> current.without(entry));
+                }
+            }
+        });
+        source.close();
+        return players;
+    }
+
+    private void retire(File file) {
+        if (!file.exists()) {
+            return;
+        }
+        File migrated = new File(file.getParentFile(), file.getName() + ".migrated");
+        if (!file.renameTo(migrated)) {
+            logger.warning("Could not rename " + file.getName() + " after migration");
+        }
+    }
+}
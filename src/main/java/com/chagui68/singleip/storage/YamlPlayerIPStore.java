@@ -0,0 +1,372 @@
+package com.chagui68.singleip.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * player-ips.yml, optionally fronted by a {@link PlayerIPJournal}. Without a
+ * journal every change needs a snapshot; with one, changes are appended as
+ * they happen and snapshots only fold the journal back into the file.
+ * <p>
+ * Files in the layout snapshots are written in are loaded without building a
+ * YAML tree, in shards parsed on up to {@code loadThreads} threads; anything
+ * else (e.g. a hand-edited file) is read through SnakeYAML as before.
+ */
+public class YamlPlayerIPStore implements PlayerIPStore {
+
+    /** Below this many characters per shard, another thread costs more than it saves. */
+    private static final int MIN_SHARD_CHARS = 256 * 1024;
+
+    private final File dataFile;
+    private final Logger logger;
+    private final PlayerIPJournal journal;
+    private final int compactThreshold;
+    private final int loadThreads;
+    // Modification time and size of the file as this store last read or wrote it
+    private volatile String knownStamp;
+
+    public YamlPlayerIPStore(File dataFile, Logger logger, PlayerIPJournal journal, int compactThreshold, int loadThreads) {
+        this.dataFile = dataFile;
+        this.logger = logger;
+        this.journal = journal;
+        this.compactThreshold = compactThreshold;
+        this.loadThreads = Math.max(1, loadThreads);
+    }
+
+    @Override
+    public void load(Loader loader) throws IOException {
+        if (!dataFile.exists()) {
+            dataFile.getParentFile().mkdirs();
+            dataFile.createNewFile();
+            logger.info("Data file created: " + dataFile.getName());
+        }
+
+        knownStamp = stamp(dataFile);
+        String content = new String(Files.readAllBytes(dataFile.toPath()), StandardCharsets.UTF_8);
+        if (!loadSharded(content, loader)) {
+            // loadConfiguration would hide a syntax error behind an empty file, and a reload would drop everyone
+            FileConfiguration data = new YamlConfiguration();
+            try {
+                data.loadFromString(content);
+            } catch (InvalidConfigurationException e) {
+                throw new IOException(dataFile.getName() + " is not valid YAML: " + e.getMessage(), e);
+            }
+            ConfigurationSection players = data.getConfigurationSection("players");
+            if (players != null) {
+                for (String uuidString : players.getKeys(false)) {
+                    loadPlayer(loader, uuidString, players.getStringList(uuidString));
+                }
+            }
+        }
+
+        if (journal != null) {
+            int replayed = journal.replay(loader::change);
+            try {
+                journal.open();
+            } catch (IOException e) {
+                logger.severe("Error opening IP journal: " + e.getMessage());
+            }
+            if (replayed > 0) {
+                logger.info("Replayed " + replayed + " journal records");
+            }
+        }
+    }
+
+    private void loadPlayer(Loader loader, String uuidString, List<String> entries) {
+        try {
+            loader.player(UUID.fromString(uuidString), entries);
+        } catch (IllegalArgumentException e) {
+            logger.warning("Invalid UUID ignored: " + uuidString);
+        }
+    }
+
+    /**
+     * Loads a file made of {@code players:} and one block per player, the way
+     * snapshots write it. The body is cut into shards at player keys; every
+     * shard is parsed first, so nothing reaches the loader unless the whole file
+     * has that layout. Returns false if it does not.
+     */
+    private boolean loadSharded(String content, Loader loader) throws IOException {
+        int position = skipBlankLines(content, 0);
+        if (position == content.length()) {
+            return true;
+        }
+
+        int lineEnd = lineEnd(content, position);
+        String header = content.substring(position, lineEnd).trim();
+        if (header.equals("players: {}")) {
+            return skipBlankLines(content, nextLine(content, lineEnd)) == content.length();
+        }
+        if (!header.equals("players:")) {
+            return false;
+        }
+
+        int bodyStart = skipBlankLines(content, nextLine(content, lineEnd));
+        if (bodyStart == content.length()) {
+            return true;
+        }
+        int keyIndent = indent(content, bodyStart);
+        if (keyIndent == 0 || content.charAt(bodyStart + keyIndent) == '-') {
+            return false;
+        }
+
+        int shards = (int) Math.min(loadThreads, Math.max(1, (content.length() - bodyStart) / MIN_SHARD_CHARS));
+        int[] bounds = new int[shards + 1];
+        bounds[0] = bodyStart;
+        bounds[shards] = content.length();
+        for (int i = 1; i < shards; i++) {
+            int from = Math.max(bounds[i - 1], bodyStart + (int) ((long) (content.length() - bodyStart) * i / shards));
+            bounds[i] = nextKeyLine(content, from, keyIndent);
+        }
+
+        List<List<StoredPlayer>> parsed = new ArrayList<>(shards);
+        if (shards == 1) {
+            parsed.add(parseShard(content, bodyStart, content.length(), keyIndent));
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(shards, r -> {
+                Thread thread = new Thread(r, "SingleIP-Load");
+                thread.setDaemon(true);
+                return thread;
+            });
+            try {
+                List<Future<List<StoredPlayer>>> results = new ArrayList<>(shards);
+                for (int i = 0; i < shards; i++) {
+                    int start = bounds[i];
+                    int end = bounds[i + 1];
+                    results.add(executor.submit(() -> parseShard(content, start, end, keyIndent)));
+                }
+                for (Future<List<StoredPlayer>> result : results) {
+                    parsed.add(result.get());
+                }
+                if (parsed.contains(null)) {
+                    return false;
+                }
+
+                List<Callable<Void>> loads = new ArrayList<>(shards);
+                for (List<StoredPlayer> shard : parsed) {
+                    loads.add(() -> {
+                        loadShard(loader, shard);
+                        return null;
+                    });
+                }
+                for (Future<Void> result : executor.invokeAll(loads)) {
+                    result.get();
+                }
+                return true;
+            } catch (ExecutionException e) {
+                throw new IOException("Error loading " + dataFile.getName() + ": " + e.getCause(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while loading " + dataFile.getName(), e);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        if (parsed.get(0) == null) {
+            return false;
+        }
+        loadShard(loader, parsed.get(0));
+        return true;
+    }
+
+    private void loadShard(Loader loader, List<StoredPlayer> shard) {
+        for (StoredPlayer player : shard) {
+            loadPlayer(loader, player.uuid, player.entries);
+        }
+    }
+
+    /**
+     * Parses the player blocks in {@code content[start, end)}, or returns null
+     * at the first line that is not a player key or one of its list items.
+     */
+    private static List<StoredPlayer> parseShard(String content, int start, int end, int keyIndent) {
+        List<StoredPlayer> players = new ArrayList<>();
+        List<String> entries = null;
+        int position = start;
+
+        while (position < end) {
+            int lineEnd = lineEnd(content, position);
+            int lineIndent = indent(content, position);
+            int textStart = position + lineIndent;
+            String text = content.substring(textStart, lineEnd).trim();
+            position = nextLine(content, lineEnd);
+
+            if (text.isEmpty() || text.charAt(0) == '#') {
+                continue;
+            }
+            if (lineIndent < keyIndent) {
+                return null;
+            }
+
+            if (text.charAt(0) == '-') {
+                String value = text.length() > 1 && text.charAt(1) == ' ' ? scalar(text.substring(2).trim()) : null;
+                if (entries == null || value == null) {
+                    return null;
+                }
+                entries.add(value);
+            } else if (lineIndent == keyIndent && text.endsWith(":")) {
+                entries = new ArrayList<>(2);
+                players.add(new StoredPlayer(unquote(text.substring(0, text.length() - 1)), entries));
+            } else if (lineIndent == keyIndent && text.endsWith(": []")) {
+                entries = null;
+            } else {
+                return null;
+            }
+        }
+        return players;
+    }
+
+    /**
+     * A plain or single-quoted scalar, or null for anything that needs a real YAML parser.
+     */
+    private static String scalar(String value) {
+        if (value.isEmpty() || value.charAt(0) == '"' || value.contains(" #")) {
+            return null;
+        }
+        if (value.charAt(0) == '\'') {
+            return value.length() > 1 && value.charAt(value.length() - 1) == '\''
+                    ? value.substring(1, value.length() - 1).replace("''", "'")
+                    : null;
+        }
+        return value;
+    }
+
+    private static String unquote(String key) {
+        if (key.length() > 1 && key.charAt(0) == '\'' && key.charAt(key.length() - 1) == '\'') {
+            return key.substring(1, key.length() - 1);
+        }
+        return key;
+    }
+
+    private static int nextKeyLine(String content, int from, int keyIndent) {
+        // Start from the line after the one containing 'from'
+        int position = from == 0 || content.charAt(from - 1) == '\n' ? from : nextLine(content, lineEnd(content, from));
+        while (position < content.length()) {
+            int lineIndent = indent(content, position);
+            int textStart = position + lineIndent;
+            if (lineIndent == keyIndent && textStart < content.length()) {
+                char first = content.charAt(textStart);
+                if (first != '-' && first != '#' && first != '\n' && first != '\r') {
+                    return position;
+                }
+            }
+            position = nextLine(content, lineEnd(content, position));
+        }
+        return content.length();
+    }
+
+    private static int skipBlankLines(String content, int position) {
+        while (position < content.length()) {
+            int lineEnd = lineEnd(content, position);
+            String line = content.substring(position, lineEnd).trim();
+            if (!line.isEmpty() && line.charAt(0) != '#') {
+                return position;
+            }
+            position = nextLine(content, lineEnd);
+        }
+        return content.length();
+    }
+
+    private static int indent(String content, int position) {
+        int i = position;
+        while (i < content.length() && content.charAt(i) == ' ') {
+            i++;
+        }
+        return i - position;
+    }
+
+    private static int lineEnd(String content, int position) {
+        int end = content.indexOf('\n', position);
+        return end < 0 ? content.length() : end;
+    }
+
+    private static int nextLine(String content, int lineEnd) {
+        return Math.min(content.length(), lineEnd + 1);
+    }
+
+    @Override
+    public boolean changedOnDisk() {
+        return !stamp(dataFile).equals(knownStamp);
+    }
+
+    private static String stamp(File file) {
+        return file.lastModified() + ":" + file.length();
+    }
+
+    @Override
+    public boolean isIncremental() {
+        return journal != null;
+    }
+
+    @Override
+    public void record(char op, UUID uuid, String ip, PlayerIPSet ips) throws IOException {
+        if (journal != null) {
+            journal.append(op, uuid, ip);
+        }
+    }
+
+    @Override
+    public boolean wantsSnapshot() {
+        return journal != null && journal.size() >= compactThreshold;
+    }
+
+    /**
+     * Rotates the journal in the same instant the map is copied, so the
+     * snapshot covers exactly the rotated records.
+     */
+    @Override
+    public void beginSnapshot() throws IOException {
+        if (journal != null) {
+            journal.beginCompaction();
+        }
+    }
+
+    @Override
+    public void writeSnapshot(Map<UUID, PlayerIPSet> view) throws IOException {
+        FileConfiguration data = new YamlConfiguration();
+        for (Map.Entry<UUID, PlayerIPSet> entry : view.entrySet()) {
+            data.set("players." + entry.getKey().toString(), entry.getValue().toStrings());
+        }
+
+        AtomicFiles.write(dataFile, data.saveToString());
+        knownStamp = stamp(dataFile);
+        if (journal != null) {
+            journal.finishCompaction();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private static final class StoredPlayer {
+        final String uuid;
+        final List<String> entries;
+
+        StoredPlayer(String uuid, List<String> entries) {
+            this.uuid = uuid;
+            this.entries = entries;
+        }
+    }
+}
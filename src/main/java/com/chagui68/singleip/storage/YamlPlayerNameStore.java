@@ -0,0 +1,66 @@
+package com.chagui68.singleip.storage;
+
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * player-names.yml, with one name per player under {@code names}. Only
+ * called from the name table writer thread. Saves go through a temporary
+ * file, so a failed save leaves the previous file intact.
+ */
+public class YamlPlayerNameStore implements PlayerNameStore {
+
+    private final File namesFile;
+    private final Logger logger;
+    private FileConfiguration namesConfig = new YamlConfiguration();
+
+    public YamlPlayerNameStore(File namesFile, Logger logger) {
+        this.namesFile = namesFile;
+        this.logger = logger;
+    }
+
+    @Override
+    public void loadNames(BiConsumer<UUID, String> consumer) throws IOException {
+        if (!namesFile.exists()) {
+            return;
+        }
+
+        namesConfig = YamlConfiguration.loadConfiguration(namesFile);
+        ConfigurationSection names = namesConfig.getConfigurationSection("names");
+        if (names == null) {
+            return;
+        }
+
+        for (String key : names.getKeys(false)) {
+            UUID uuid;
+            try {
+                uuid = UUID.fromString(key);
+            } catch (IllegalArgumentException e) {
+                logger.warning("Invalid UUID in player names ignored: " + key);
+                continue;
+            }
+            Object name = names.get(key);
+            if (!(name instanceof String) || ((String) name).isEmpty()) {
+                logger.warning("Invalid name in player names ignored for " + key + ": " + name);
+                continue;
+            }
+            consumer.accept(uuid, (String) name);
+        }
+    }
+
+    @Override
+    public void saveNames(Map<UUID, String> changed) throws IOException {
+        for (Map.Entry<UUID, String> entry : changed.entrySet()) {
+            namesConfig.set("names." + entry.getKey(), entry.getValue());
+        }
+        AtomicFiles.write(namesFile, namesConfig.saveToString());
+    }
+}
@@ -1,98 +1,169 @@
 package com.chagui68.singleip.utils;
 
 import com.chagui68.singleip.SingleIPPlugin;
-import com.chagui68.singleip.utils.GeoIPChecker;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
+import com.chagui68.singleip.storage.AccessLogStore;
 
-import java.io.File;
 import java.io.IOException;
-import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the last {@code access-logs.max-logs-per-player} accesses of every
+ * player in memory. Logging only queues the entry; the country is resolved
+ * asynchronously and a single writer saves the players that changed in batches.
+ */
 public class AccessLogger {
 
     private final SingleIPPlugin plugin;
-    private final File logFile;
-    private final FileConfiguration logConfig;
+    private final AccessLogStore store;
     private final GeoIPChecker geoIPChecker;
+    private final Map<UUID, AccessRing> logs = new ConcurrentHashMap<>();
+    private final Set<UUID> dirty = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService writer;
+    private final int maxLogs;
 
-    public AccessLogger(SingleIPPlugin plugin) {
+    public AccessLogger(SingleIPPlugin plugin, GeoIPChecker geoIPChecker, AccessLogStore store) {
         this.plugin = plugin;
-        this.logFile = new File(plugin.getDataFolder(), "access-logs.yml");
-        this.geoIPChecker = new GeoIPChecker(plugin.getLogger(), 60);
-
-        if (!logFile.exists()) {
-            try {
-                logFile.getParentFile().mkdirs();
-                logFile.createNewFile();
-            } catch (IOException e) {
-                plugin.getLogger().severe("Error creating log file: " + e.getMessage());
-            }
+        this.store = store;
+        this.geoIPChecker = geoIPChecker;
+        this.maxLogs = Math.max(1, plugin.getConfig().getInt("access-logs.max-logs-per-player", 10));
+
+        try {
+            store.loadLogs((uuid, entries) -> {
+                AccessRing ring = new AccessRing(maxLogs);
+                for (String entry : entries) {
+                    ring.add(entry);
+                }
+                logs.put(uuid, ring);
+            });
+        } catch (IOException e) {
+            plugin.getLogger().severe("Error loading access logs: " + e.getMessage());
         }
 
-        this.logConfig = YamlConfiguration.loadConfiguration(logFile);
+        long interval = Math.max(1, plugin.getConfig().getLong("access-logs.flush-interval", 5));
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SingleIP-AccessLog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.SECONDS);
     }
 
+    /**
+     * Records an access and returns immediately; the entry is stored once its
+     * country is known, or after 10 seconds as Unknown.
+     */
     public void logAccessAttempt(UUID uuid, String playerName, String ip, String deviceName) {
-        if (!plugin.getConfig().getBoolean("access-logs.enabled", true)) {
+        AccessPolicy policy = plugin.getPolicy();
+        if (!policy.isAccessLogsEnabled()) {
             return;
         }
 
-        String key = "attempts." + uuid.toString();
-        List<String> attempts = logConfig.getStringList(key);
-
-        int maxLogs = plugin.getConfig().getInt("access-logs.max-logs-per-player", 10);
-        if (attempts.size() >= maxLogs) {
-            attempts.remove(0);
-        }
-
-        String country = "Unknown";
-        if (plugin.getConfig().getBoolean("access-logs.save-country", true)) {
-            try {
-                CompletableFuture<String> countryFuture = geoIPChecker.getCountryCode(ip);
-                country = countryFuture.get();
-                if (country == null) country = "Unknown";
-            } catch (Exception e) {
-                plugin.getLogger().warning("Could not get country for IP " + ip + ": " + e.getMessage());
-            }
-        }
-
         String timestamp = java.time.LocalDateTime.now().toString();
-        String logEntry = String.format("[%s] IP: %s | Device: %s | Country: %s",
-                timestamp, ip, deviceName, country);
-        attempts.add(logEntry);
+        // The lookup future is shared with every other caller for this IP, so only a copy may time out
+        CompletableFuture<String> countryFuture = policy.isSaveCountry()
+                ? geoIPChecker.prefetchCountryCode(ip).copy().completeOnTimeout(null, 10, TimeUnit.SECONDS)
+                : CompletableFuture.completedFuture(null);
 
-        logConfig.set(key, attempts);
+        countryFuture.whenComplete((code, error) -> {
+            String country = code == null ? "Unknown" : code;
+            String logEntry = String.format("[%s] IP: %s | Device: %s | Country: %s",
+                    timestamp, ip, deviceName, country);
 
-        try {
-            logConfig.save(logFile);
+            logs.computeIfAbsent(uuid, key -> new AccessRing(maxLogs)).add(logEntry);
+            dirty.add(uuid);
 
-            if (plugin.getConfig().getBoolean("access-logs.show-in-console", true)) {
+            if (policy.isShowAccessInConsole()) {
                 plugin.getLogger().info("Access attempt logged - Player: " + playerName +
                         " | IP: " + ip + " | Device: " + deviceName + " | Country: " + country);
             }
-        } catch (IOException e) {
-            plugin.getLogger().severe("Error saving access log: " + e.getMessage());
-        }
+        });
     }
 
     public List<String> getAccessLogs(UUID uuid) {
-        String key = "attempts." + uuid.toString();
-        return logConfig.getStringList(key);
+        AccessRing ring = logs.get(uuid);
+        return ring == null ? new ArrayList<>() : ring.toList();
     }
 
     public void clearAccessLogs(UUID uuid) {
-        String key = "attempts." + uuid.toString();
-        logConfig.set(key, null);
+        logs.remove(uuid);
+        dirty.add(uuid);
+    }
 
+    /**
+     * Writes pending changes and stops the writer, waiting at most {@code timeoutMillis}.
+     */
+    public void shutdown(long timeoutMillis) {
+        writer.execute(this::flush);
+        writer.shutdown();
         try {
-            logConfig.save(logFile);
+            if (!writer.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                plugin.getLogger().warning("Timed out while saving access logs");
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void flush() {
+        if (dirty.isEmpty()) {
+            return;
+        }
+
+        Map<UUID, List<String>> changed = new HashMap<>();
+        for (UUID uuid : new ArrayList<>(dirty)) {
+            dirty.remove(uuid);
+            AccessRing ring = logs.get(uuid);
+            changed.put(uuid, ring == null ? new ArrayList<>() : ring.toList());
+        }
+
+        try {
+            store.saveLogs(changed);
         } catch (IOException e) {
-            plugin.getLogger().severe("Error clearing access logs: " + e.getMessage());
+            // Retried with the next flush
+            dirty.addAll(changed.keySet());
+            plugin.getLogger().severe("Error saving access log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Fixed size ring of log lines, oldest overwritten first.
+     */
+    private static class AccessRing {
+        private final String[] entries;
+        private int next;
+        private int size;
+
+        AccessRing(int capacity) {
+            this.entries = new String[capacity];
+        }
+
+        synchronized void add(String entry) {
+            entries[next] = entry;
+            next = (next + 1) % entries.length;
+            if (size < entries.length) {
+                size++;
+            }
+        }
+
+        synchronized List<String> toList() {
+            List<String> result = new ArrayList<>(size);
+            int first = (next - size + entries.length) % entries.length;
+            for (int i = 0; i < size; i++) {
+                result.add(entries[(first + i) % entries.length]);
+            }
+            return result;
         }
     }
 }
@@ -0,0 +1,153 @@
+package com.chagui68.singleip.utils;
+
+import com.chagui68.singleip.storage.IPKey;
+import com.chagui68.singleip.storage.IPRange;
+import com.chagui68.singleip.storage.PrefixTrie;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Immutable snapshot of the access rules in config.yml. A new one is compiled
+ * on enable and on {@code ipmanager reload}; everything else only reads fields,
+ * so a login is always decided against a single version of the config.
+ */
+public final class AccessPolicy {
+
+    private static final String DEFAULT_KICK = ChatColor.RED + "✖ Unauthorized IP address\n" +
+            ChatColor.GRAY + "This IP is not registered for your account\n" +
+            ChatColor.YELLOW + "Contact an administrator if you need help";
+    private static final String DEFAULT_KICK_COUNTRY = "&cAccess denied. Your country is not allowed on this server.";
+    private static final String DEFAULT_KICK_RATE_LIMIT = "&cToo many connection attempts. Please wait a moment.";
+    private static final String DEFAULT_KICK_NOT_READY = "&eThe server is still starting. Please try again in a moment.";
+
+    private final int maxIPsPerPlayer;
+    private final String kickMessage;
+    private final String kickCountryMessage;
+    private final String kickRateLimitMessage;
+    private final String kickNotReadyMessage;
+    private final long notReadyWaitMillis;
+    private final boolean allowWhenNotReady;
+    private final CountryFilter countryFilter;
+    private final boolean debug;
+    private final boolean logFailedAttempts;
+    private final boolean accessLogsEnabled;
+    private final boolean saveDeviceName;
+    private final boolean saveCountry;
+    private final boolean showAccessInConsole;
+    private final PrefixTrie allowedRanges;
+
+    private AccessPolicy(FileConfiguration config, Logger logger) {
+        this.maxIPsPerPlayer = config.getInt("max-ips-per-player", 2);
+        this.kickMessage = color(config.getString("kick-message", DEFAULT_KICK));
+        this.kickCountryMessage = color(config.getString("messages.kick-country", DEFAULT_KICK_COUNTRY));
+        this.kickRateLimitMessage = color(config.getString("messages.kick-rate-limit", DEFAULT_KICK_RATE_LIMIT));
+        this.kickNotReadyMessage = color(config.getString("messages.kick-not-ready", DEFAULT_KICK_NOT_READY));
+        this.notReadyWaitMillis = Math.max(0, config.getLong("storage.not-ready-wait", 5000));
+        this.allowWhenNotReady = config.getString("storage.not-ready-policy", "deny").equalsIgnoreCase("allow");
+        this.countryFilter = new CountryFilter(config.getConfigurationSection("country-filter"));
+        this.debug = config.getBoolean("debug", false);
+        this.logFailedAttempts = config.getBoolean("log-failed-attempts", true);
+        this.accessLogsEnabled = config.getBoolean("access-logs.enabled", true);
+        this.saveDeviceName = config.getBoolean("access-logs.save-device-name", true);
+        this.saveCountry = config.getBoolean("access-logs.save-country", true);
+        this.showAccessInConsole = config.getBoolean("access-logs.show-in-console", true);
+
+        List<IPRange> ranges = new ArrayList<>();
+        for (String value : config.getStringList("allowed-ranges")) {
+            IPRange range = IPRange.parse(value.trim());
+            if (range == null) {
+                logger.warning("Invalid entry in allowed-ranges ignored: " + value);
+            } else {
+                ranges.add(range);
+            }
+        }
+        this.allowedRanges = ranges.isEmpty() ? null : PrefixTrie.build(ranges.toArray(new IPRange[0]));
+    }
+
+    public static AccessPolicy compile(FileConfiguration config, Logger logger) {
+        return new AccessPolicy(config, logger);
+    }
+
+    public int getMaxIPsPerPlayer() {
+        return maxIPsPerPlayer;
+    }
+
+    public String getKickMessage() {
+        return kickMessage;
+    }
+
+    public String getKickCountryMessage() {
+        return kickCountryMessage;
+    }
+
+    public String getKickRateLimitMessage() {
+        return kickRateLimitMessage;
+    }
+
+    public String getKickNotReadyMessage() {
+        return kickNotReadyMessage;
+    }
+
+    /**
+     * How long a connection may wait for the stored IPs to finish loading.
+     */
+    public long getNotReadyWaitMillis() {
+        return notReadyWaitMillis;
+    }
+
+    /**
+     * Whether connections still waiting after {@link #getNotReadyWaitMillis()}
+     * are let in without the IP checks instead of being kicked.
+     */
+    public boolean isAllowWhenNotReady() {
+        return allowWhenNotReady;
+    }
+
+    public CountryFilter getCountryFilter() {
+        return countryFilter;
+    }
+
+    public boolean isDebug() {
+        return debug;
+    }
+
+    public boolean isLogFailedAttempts() {
+        return logFailedAttempts;
+    }
+
+    public boolean isAccessLogsEnabled() {
+        return accessLogsEnabled;
+    }
+
+    public boolean isSaveDeviceName() {
+        return saveDeviceName;
+    }
+
+    public boolean isSaveCountry() {
+        return saveCountry;
+    }
+
+    public boolean isShowAccessInConsole() {
+        return showAccessInConsole;
+    }
+
+    /**
+     * Whether the raw address falls in one of the {@code allowed-ranges}, which
+     * any account may connect from.
+     */
+    public boolean isAlwaysAllowed(byte[] address) {
+        if (allowedRanges == null) {
+            return false;
+        }
+        IPKey key = IPKey.of(address);
+        return allowedRanges.longestMatch(key.getHigh(), key.getLow()) >= 0;
+    }
+
+    private static String color(String message) {
+        return ChatColor.translateAlternateColorCodes('&', message);
+    }
+}
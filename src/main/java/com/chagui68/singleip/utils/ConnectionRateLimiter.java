@@ -0,0 +1,166 @@
+package com.chagui68.singleip.utils;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token buckets per source address, or per /24 and /64 prefix when the
+ * {@code rate-limit} section asks for it. Buckets live in a fixed table split
+ * into locked stripes and are found by bounded linear probing, so a check costs
+ * the same for the millionth address as for the first and allocates nothing.
+ * A bucket idle long enough to refill completely is as good as a new one and
+ * its slot is reused; when a probe window is full the stalest bucket is evicted.
+ */
+public class ConnectionRateLimiter {
+
+    private static final int STRIPES = 64;
+    private static final int PROBES = 8;
+    private static final long EMPTY = 0L;
+
+    private final boolean enabled;
+    private final double tokensPerNano;
+    private final double burst;
+    private final long idleNanos;
+    private final int v4Mask;
+    private final long v6HighMask;
+    private final long v6LowMask;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final LongAdder rejected = new LongAdder();
+
+    public ConnectionRateLimiter(ConfigurationSection section) {
+        this.enabled = section != null && section.getBoolean("enabled", false);
+        double perSecond = section == null ? 1.0 : Math.max(0.001, section.getDouble("per-second", 1.0));
+        this.burst = section == null ? 5 : Math.max(1, section.getInt("burst", 5));
+        this.tokensPerNano = perSecond / 1_000_000_000d;
+        this.idleNanos = (long) Math.ceil(burst / tokensPerNano);
+
+        int v4Prefix = section == null ? 32 : clamp(section.getInt("ipv4-prefix", 32), 0, 32);
+        int v6Prefix = section == null ? 64 : clamp(section.getInt("ipv6-prefix", 64), 0, 128);
+        this.v4Mask = v4Prefix == 0 ? 0 : -1 << (32 - v4Prefix);
+        this.v6HighMask = mask(v6Prefix);
+        this.v6LowMask = mask(v6Prefix - 64);
+
+        int tableSize = section == null ? 65536 : Math.max(STRIPES * PROBES, section.getInt("table-size", 65536));
+        int perStripe = Integer.highestOneBit(tableSize / STRIPES - 1) << 1;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Takes a token for the address, returning false when its bucket is empty.
+     */
+    public boolean tryAcquire(InetAddress address) {
+        if (!enabled) {
+            return true;
+        }
+
+        long key;
+        if (address instanceof Inet4Address) {
+            // Inet4Address hashes to its own address, which avoids copying the bytes
+            key = 0x1_0000_0000L | ((address.hashCode() & v4Mask) & 0xFFFFFFFFL);
+        } else {
+            byte[] raw = address.getAddress();
+            long high = readLong(raw, 0) & v6HighMask;
+            long low = readLong(raw, 8) & v6LowMask;
+            key = mix(high ^ Long.rotateLeft(mix(low), 17)) | 0x2_0000_0000L;
+        }
+
+        int hash = (int) mix(key);
+        boolean allowed = stripes[hash & (STRIPES - 1)].tryAcquire(key, hash >>> 6, System.nanoTime());
+        if (!allowed) {
+            rejected.increment();
+        }
+        return allowed;
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private final class Stripe {
+        private final long[] keys;
+        private final double[] tokens;
+        private final long[] updated;
+        private final int mask;
+
+        Stripe(int capacity) {
+            this.keys = new long[capacity];
+            this.tokens = new double[capacity];
+            this.updated = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        synchronized boolean tryAcquire(long key, int hash, long now) {
+            int slot = -1;
+            int stalest = -1;
+
+            for (int i = 0; i < PROBES; i++) {
+                int index = (hash + i) & mask;
+                if (keys[index] == key) {
+                    slot = index;
+                    break;
+                }
+                if (keys[index] == EMPTY || now - updated[index] >= idleNanos) {
+                    if (slot < 0) {
+                        slot = index;
+                    }
+                } else if (stalest < 0 || updated[index] - updated[stalest] < 0) {
+                    stalest = index;
+                }
+            }
+
+            if (slot < 0) {
+                slot = stalest;
+            }
+            if (keys[slot] != key) {
+                keys[slot] = key;
+                tokens[slot] = burst;
+                updated[slot] = now;
+            }
+
+            double available = Math.min(burst, tokens[slot] + (now - updated[slot]) * tokensPerNano);
+            updated[slot] = now;
+            if (available < 1) {
+                tokens[slot] = available;
+                return false;
+            }
+            tokens[slot] = available - 1;
+            return true;
+        }
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+
+    private static long mask(int bits) {
+        if (bits <= 0) {
+            return 0L;
+        }
+        return bits >= 64 ? -1L : -1L << (64 - bits);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static long readLong(byte[] address, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (address[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
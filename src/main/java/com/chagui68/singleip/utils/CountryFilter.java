@@ -0,0 +1,81 @@
+package com.chagui68.singleip.utils;
+
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.List;
+
+/**
+ * The {@code country-filter} section compiled for the login path: the
+ * country list becomes a flat table indexed by the two letters of the code.
+ */
+public class CountryFilter {
+
+    public enum Result {
+        ALLOWED,
+        BLOCKED,
+        /** The lookup failed or missed the deadline and the fail policy decided. */
+        UNRESOLVED_ALLOWED,
+        UNRESOLVED_BLOCKED
+    }
+
+    private final boolean enabled;
+    private final boolean whitelist;
+    private final boolean[] countries = new boolean[26 * 26];
+    private final boolean allowLocal;
+    private final long deadlineMillis;
+    private final boolean failOpen;
+
+    public CountryFilter(ConfigurationSection section) {
+        this.enabled = section != null && section.getBoolean("enabled", false);
+        this.whitelist = section == null || !"blacklist".equalsIgnoreCase(section.getString("mode", "whitelist"));
+        this.allowLocal = section == null || section.getBoolean("allow-local-ips", true);
+        this.deadlineMillis = section == null ? 150 : Math.max(1, section.getLong("lookup-timeout-ms", 150));
+        this.failOpen = section == null || !"closed".equalsIgnoreCase(section.getString("fail-policy", "open"));
+
+        if (section != null) {
+            List<String> codes = section.getStringList("countries");
+            for (String code : codes) {
+                int index = index(code);
+                if (index >= 0) {
+                    countries[index] = true;
+                }
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * Decides on a lookup result; {@code null} means the country could not be resolved in time.
+     */
+    public Result check(String countryCode) {
+        if (countryCode == null) {
+            return failOpen ? Result.UNRESOLVED_ALLOWED : Result.UNRESOLVED_BLOCKED;
+        }
+        if (countryCode.equals("LOCAL")) {
+            return allowLocal ? Result.ALLOWED : Result.BLOCKED;
+        }
+
+        int index = index(countryCode);
+        boolean listed = index >= 0 && countries[index];
+        return listed == whitelist ? Result.ALLOWED : Result.BLOCKED;
+    }
+
+    private static int index(String code) {
+        if (code == null || code.length() != 2) {
+            return -1;
+        }
+        int first = Character.toUpperCase(code.charAt(0)) - 'A';
+        int second = Character.toUpperCase(code.charAt(1)) - 'A';
+        if (first < 0 || first >= 26 || second < 0 || second >= 26) {
+            return -1;
+        }
+        return first * 26 + second;
+    }
+}
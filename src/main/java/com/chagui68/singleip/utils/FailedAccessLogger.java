@@ -1,4 +1,269 @@
 package com.chagui68.singleip.utils;
 
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Batched appender for failed login attempts. Callers only enqueue; a single
+ * writer thread appends the records as lines to rolling segment files.
+ */
 public class FailedAccessLogger {
+
+    private static final String SEGMENT_PREFIX = "failed-logins-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int BATCH_SIZE = 512;
+
+    private final File directory;
+    private final Logger logger;
+    private final long maxSegmentBytes;
+    private final int maxSegments;
+    private final BlockingQueue<FailedLoginRecord> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean running = true;
+
+    private BufferedWriter writer;
+    private int segmentIndex;
+    private long segmentSize;
+
+    public FailedAccessLogger(File directory, Logger logger, int queueCapacity, long maxSegmentBytes, int maxSegments) {
+        this.directory = directory;
+        this.logger = logger;
+        this.maxSegmentBytes = Math.max(1024, maxSegmentBytes);
+        this.maxSegments = Math.max(1, maxSegments);
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, queueCapacity));
+        this.writerThread = new Thread(this::runWriter, "SingleIP-FailedLogins");
+        this.writerThread.setDaemon(true);
+    }
+
+    public void start() {
+        directory.mkdirs();
+        File[] segments = listSegments();
+        segmentIndex = segments.length == 0 ? 1 : segmentIndexOf(segments[segments.length - 1]);
+        writerThread.start();
+    }
+
+    /**
+     * Queues a record without touching the disk. Returns false if the queue is
+     * full, which only happens when the writer falls far behind during a flood.
+     */
+    public boolean log(FailedLoginRecord record) {
+        if (queue.offer(record)) {
+            return true;
+        }
+        if (dropped.incrementAndGet() % 1000 == 1) {
+            logger.warning("Failed login queue is full, dropped " + dropped.get() + " records so far");
+        }
+        return false;
+    }
+
+    /**
+     * Streams every stored record from oldest to newest.
+     */
+    public void forEachRecord(Consumer<FailedLoginRecord> consumer) {
+        for (File segment : listSegments()) {
+            try (BufferedReader reader = Files.newBufferedReader(segment.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    FailedLoginRecord record = FailedLoginRecord.fromLine(line);
+                    if (record != null) {
+                        consumer.accept(record);
+                    }
+                }
+            } catch (IOException e) {
+                logger.severe("Error reading " + segment.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Converts the old failed-logins.yml into segment records once and renames it.
+     * Each imported record is also handed to {@code consumer}.
+     */
+    public void importLegacy(File legacyFile, Consumer<FailedLoginRecord> consumer) {
+        if (!legacyFile.exists()) {
+            return;
+        }
+
+        List<FailedLoginRecord> records = readLegacy(legacyFile, logger);
+        try {
+            for (FailedLoginRecord record : records) {
+                while (!queue.offer(record, 1, TimeUnit.SECONDS)) {
+                    if (!running) {
+                        return;
+                    }
+                }
+                consumer.accept(record);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        File migrated = new File(legacyFile.getParentFile(), legacyFile.getName() + ".migrated");
+        if (!legacyFile.renameTo(migrated)) {
+            logger.warning("Could not rename " + legacyFile.getName() + " after migration");
+        }
+        logger.info("Migrated " + records.size() + " failed logins from " + legacyFile.getName());
+    }
+
+    /**
+     * Reads the records of the old failed-logins.yml, oldest first.
+     */
+    public static List<FailedLoginRecord> readLegacy(File legacyFile, Logger logger) {
+        FileConfiguration legacy = YamlConfiguration.loadConfiguration(legacyFile);
+        ConfigurationSection section = legacy.getConfigurationSection("failed-logins");
+        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+        List<FailedLoginRecord> records = new ArrayList<>();
+
+        if (section != null) {
+            List<String> keys = new ArrayList<>(section.getKeys(false));
+            keys.sort(null);
+
+            for (String key : keys) {
+                try {
+                    long timestamp = LocalDateTime.parse(section.getString(key + ".timestamp"), formatter)
+                            .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                    UUID uuid = UUID.fromString(section.getString(key + ".uuid"));
+                    records.add(new FailedLoginRecord(timestamp, uuid,
+                            section.getString(key + ".player"),
+                            section.getString(key + ".attempted-ip"),
+                            section.getString(key + ".reason")));
+                } catch (RuntimeException e) {
+                    logger.warning("Invalid failed login entry ignored: " + key);
+                }
+            }
+        }
+
+        return records;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops accepting new work and waits up to {@code timeoutMillis} for the queue to drain.
+     */
+    public void close(long timeoutMillis) {
+        running = false;
+        try {
+            writerThread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writerThread.isAlive()) {
+            logger.warning("Timed out flushing failed logins, " + queue.size() + " records not written");
+        }
+    }
+
+    private void runWriter() {
+        List<FailedLoginRecord> batch = new ArrayList<>(BATCH_SIZE);
+
+        while (running || !queue.isEmpty()) {
+            try {
+                FailedLoginRecord first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (IOException e) {
+                logger.severe("Error writing failed logins: " + e.getMessage());
+                closeWriter();
+            }
+            batch.clear();
+        }
+
+        closeWriter();
+    }
+
+    private void writeBatch(List<FailedLoginRecord> batch) throws IOException {
+        for (FailedLoginRecord record : batch) {
+            if (writer == null || segmentSize >= maxSegmentBytes) {
+                rollSegment();
+            }
+            String line = record.toLine();
+            writer.write(line);
+            writer.write('\n');
+            segmentSize += line.length() + 1;
+        }
+        writer.flush();
+    }
+
+    private void rollSegment() throws IOException {
+        File segment = segmentFile(segmentIndex);
+        if (writer != null || segment.length() >= maxSegmentBytes) {
+            closeWriter();
+            segment = segmentFile(++segmentIndex);
+        }
+
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(segment, true), StandardCharsets.UTF_8));
+        segmentSize = segment.length();
+
+        File[] segments = listSegments();
+        for (int i = 0; i < segments.length - maxSegments; i++) {
+            Files.deleteIfExists(segments[i].toPath());
+        }
+    }
+
+    private void closeWriter() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            logger.severe("Error closing failed login segment: " + e.getMessage());
+        }
+        writer = null;
+    }
+
+    private File segmentFile(int index) {
+        return new File(directory, SEGMENT_PREFIX + String.format("%06d", index) + SEGMENT_SUFFIX);
+    }
+
+    private File[] listSegments() {
+        File[] segments = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (segments == null) {
+            return new File[0];
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private static int segmentIndexOf(File segment) {
+        String name = segment.getName();
+        try {
+            return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
 }
@@ -0,0 +1,97 @@
+package com.chagui68.singleip.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * In-memory view of recent failed logins, kept globally, per UUID and per IP.
+ * Every history is bounded and ordered oldest to newest, so a query walks
+ * backwards and stops as soon as it has enough results or leaves the time range.
+ */
+public class FailedLoginIndex {
+
+    private final int maxPerKey;
+    private final Deque<FailedLoginRecord> recent;
+    private final int maxRecent;
+    private final Map<UUID, Deque<FailedLoginRecord>> byPlayer;
+    private final Map<String, Deque<FailedLoginRecord>> byIP;
+
+    public FailedLoginIndex(int maxRecent, int maxPerKey, int maxKeys) {
+        this.maxRecent = Math.max(1, maxRecent);
+        this.maxPerKey = Math.max(1, maxPerKey);
+        this.recent = new ArrayDeque<>();
+        this.byPlayer = boundedMap(Math.max(1, maxKeys));
+        this.byIP = boundedMap(Math.max(1, maxKeys));
+    }
+
+    public synchronized void add(FailedLoginRecord record) {
+        append(recent, record, maxRecent);
+        append(byPlayer.computeIfAbsent(record.getUuid(), key -> new ArrayDeque<>()), record, maxPerKey);
+        append(byIP.computeIfAbsent(record.getAttemptedIP(), key -> new ArrayDeque<>()), record, maxPerKey);
+    }
+
+    public synchronized List<FailedLoginRecord> query(long since, long until, int offset, int limit) {
+        return select(recent, since, until, offset, limit);
+    }
+
+    public synchronized List<FailedLoginRecord> queryByPlayer(UUID uuid, long since, long until, int offset, int limit) {
+        return select(byPlayer.get(uuid), since, until, offset, limit);
+    }
+
+    public synchronized List<FailedLoginRecord> queryByIP(String ip, long since, long until, int offset, int limit) {
+        return select(byIP.get(ip), since, until, offset, limit);
+    }
+
+    private static void append(Deque<FailedLoginRecord> history, FailedLoginRecord record, int max) {
+        // Records normally arrive in order; a late one is dropped rather than breaking the ordering
+        FailedLoginRecord last = history.peekLast();
+        if (last != null && last.getTimestamp() > record.getTimestamp()) {
+            return;
+        }
+        history.addLast(record);
+        if (history.size() > max) {
+            history.removeFirst();
+        }
+    }
+
+    private static List<FailedLoginRecord> select(Deque<FailedLoginRecord> history, long since, long until, int offset, int limit) {
+        List<FailedLoginRecord> result = new ArrayList<>(Math.min(limit, 64));
+        if (history == null) {
+            return result;
+        }
+
+        int skipped = 0;
+        Iterator<FailedLoginRecord> iterator = history.descendingIterator();
+        while (iterator.hasNext() && result.size() < limit) {
+            FailedLoginRecord record = iterator.next();
+            if (record.getTimestamp() > until) {
+                continue;
+            }
+            if (record.getTimestamp() < since) {
+                break;
+            }
+            if (skipped < offset) {
+                skipped++;
+                continue;
+            }
+            result.add(record);
+        }
+
+        return result;
+    }
+
+    private static <K> Map<K, Deque<FailedLoginRecord>> boundedMap(int maxKeys) {
+        return new LinkedHashMap<K, Deque<FailedLoginRecord>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Deque<FailedLoginRecord>> eldest) {
+                return size() > maxKeys;
+            }
+        };
+    }
+}
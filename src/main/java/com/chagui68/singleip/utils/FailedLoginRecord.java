@@ -0,0 +1,77 @@
+package com.chagui68.singleip.utils;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.UUID;
+
+public class FailedLoginRecord {
+
+    private static final DateTimeFormatter DATE_FORMATTER =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final long timestamp;
+    private final UUID uuid;
+    private final String playerName;
+    private final String attemptedIP;
+    private final String reason;
+
+    public FailedLoginRecord(long timestamp, UUID uuid, String playerName, String attemptedIP, String reason) {
+        this.timestamp = timestamp;
+        this.uuid = uuid;
+        this.playerName = playerName;
+        this.attemptedIP = attemptedIP;
+        this.reason = reason;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public UUID getUuid() {
+        return uuid;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public String getAttemptedIP() {
+        return attemptedIP;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public String getFormattedTimestamp() {
+        return DATE_FORMATTER.format(Instant.ofEpochMilli(timestamp));
+    }
+
+    /**
+     * One tab separated line: {@code timestamp uuid ip player reason}.
+     */
+    public String toLine() {
+        return timestamp + "\t" + uuid + "\t" + clean(attemptedIP) + "\t" + clean(playerName) + "\t" + clean(reason);
+    }
+
+    public static FailedLoginRecord fromLine(String line) {
+        String[] parts = line.split("\t", 5);
+        if (parts.length != 5) {
+            return null;
+        }
+
+        try {
+            return new FailedLoginRecord(Long.parseLong(parts[0]), UUID.fromString(parts[1]), parts[3], parts[2], parts[4]);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static String clean(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,235 @@
+package com.chagui68.singleip.utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * Collects country lookups for a short window and resolves them with one
+ * ip-api.com batch request (up to 100 IPs), while a token bucket keeps the
+ * request rate inside the provider's quota. Lookups from logins are sent
+ * before speculative ones.
+ */
+public class GeoIPBatchResolver {
+
+    private static final int MAX_BATCH = 100;
+
+    private final Logger logger;
+    private final String endpoint;
+    private final long windowMillis;
+    private final TokenBucket rateLimiter;
+    private final Deque<Pending> urgent = new ArrayDeque<>();
+    private final Deque<Pending> speculative = new ArrayDeque<>();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+    private long resumeAt = System.nanoTime();
+
+    public GeoIPBatchResolver(Logger logger, String endpoint, long windowMillis, int requestsPerMinute) {
+        this.logger = logger;
+        this.endpoint = endpoint;
+        this.windowMillis = Math.max(0, windowMillis);
+        this.rateLimiter = new TokenBucket(Math.max(1, requestsPerMinute), Math.max(1, requestsPerMinute) / 60d);
+        this.dispatcher = new Thread(this::runDispatcher, "SingleIP-GeoIP");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * Queues an IP for the next batch. Speculative lookups only fill the space
+     * left over by urgent ones.
+     */
+    public CompletableFuture<String> resolve(String ip, boolean isSpeculative) {
+        Pending pending = new Pending(ip);
+        synchronized (this) {
+            (isSpeculative ? speculative : urgent).addLast(pending);
+            notifyAll();
+        }
+        return pending.future;
+    }
+
+    /**
+     * Moves queued speculative lookups of {@code ip} to the urgent queue, once a
+     * login is waiting on their result.
+     */
+    public synchronized void promote(String ip) {
+        Iterator<Pending> iterator = speculative.iterator();
+        while (iterator.hasNext()) {
+            Pending pending = iterator.next();
+            if (pending.ip.equals(ip)) {
+                iterator.remove();
+                urgent.addLast(pending);
+            }
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+
+        synchronized (this) {
+            for (Pending pending : urgent) {
+                pending.future.complete(null);
+            }
+            for (Pending pending : speculative) {
+                pending.future.complete(null);
+            }
+            urgent.clear();
+            speculative.clear();
+        }
+    }
+
+    private void runDispatcher() {
+        while (running) {
+            try {
+                synchronized (this) {
+                    while (urgent.isEmpty() && speculative.isEmpty()) {
+                        wait();
+                    }
+                }
+
+                // Let the rest of a reconnect wave arrive before spending a request
+                if (windowMillis > 0) {
+                    Thread.sleep(windowMillis);
+                }
+
+                long wait;
+                while ((wait = Math.max(resumeAt - System.nanoTime(), rateLimiter.nanosUntilAvailable())) > 0) {
+                    LockSupport.parkNanos(wait);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+                if (!rateLimiter.tryAcquire()) {
+                    continue;
+                }
+
+                List<Pending> batch = takeBatch();
+                if (!batch.isEmpty()) {
+                    send(batch);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                logger.severe("GeoIP batch dispatcher error: " + e.getMessage());
+            }
+        }
+    }
+
+    private synchronized List<Pending> takeBatch() {
+        List<Pending> batch = new ArrayList<>(MAX_BATCH);
+        Map<String, Boolean> distinct = new HashMap<>();
+
+        for (Deque<Pending> queue : List.of(urgent, speculative)) {
+            while (!queue.isEmpty()) {
+                Pending next = queue.peekFirst();
+                if (distinct.size() >= MAX_BATCH && !distinct.containsKey(next.ip)) {
+                    return batch;
+                }
+                distinct.put(next.ip, Boolean.TRUE);
+                batch.add(queue.pollFirst());
+            }
+        }
+        return batch;
+    }
+
+    private void send(List<Pending> batch) {
+        Map<String, List<Pending>> byIP = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            byIP.computeIfAbsent(pending.ip, key -> new ArrayList<>()).add(pending);
+        }
+
+        JsonArray body = new JsonArray();
+        for (String ip : byIP.keySet()) {
+            body.add(ip);
+        }
+
+        Map<String, String> results = new HashMap<>();
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(endpoint + "?fields=status,message,countryCode,query").openConnection();
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setConnectTimeout(5000);
+            conn.setReadTimeout(5000);
+            conn.setRequestProperty("Content-Type", "application/json");
+            conn.setRequestProperty("User-Agent", "MinecraftServer/SingleIPPlugin-Chagui68");
+
+            try (OutputStream out = conn.getOutputStream()) {
+                out.write(body.toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            int responseCode = conn.getResponseCode();
+            applyRateLimitHeaders(conn);
+
+            if (responseCode == 200) {
+                try (Reader in = new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8)) {
+                    for (JsonElement element : JsonParser.parseReader(in).getAsJsonArray()) {
+                        JsonObject json = element.getAsJsonObject();
+                        if (json.has("query") && "success".equals(json.get("status").getAsString())) {
+                            results.put(json.get("query").getAsString(), json.get("countryCode").getAsString());
+                        }
+                    }
+                }
+            } else {
+                logger.warning("HTTP error " + responseCode + " for GeoIP batch of " + byIP.size() + " IPs");
+            }
+        } catch (Exception e) {
+            logger.severe("Error resolving GeoIP batch of " + byIP.size() + " IPs: " + e.getMessage());
+        }
+
+        for (Map.Entry<String, List<Pending>> entry : byIP.entrySet()) {
+            String countryCode = results.get(entry.getKey());
+            for (Pending pending : entry.getValue()) {
+                pending.future.complete(countryCode);
+            }
+        }
+    }
+
+    private void applyRateLimitHeaders(HttpURLConnection conn) {
+        // ip-api reports the requests left in this window (X-Rl) and seconds until it resets (X-Ttl)
+        String remaining = conn.getHeaderField("X-Rl");
+        String resetSeconds = conn.getHeaderField("X-Ttl");
+        if (remaining == null || !remaining.trim().equals("0")) {
+            return;
+        }
+
+        long seconds = 60;
+        try {
+            if (resetSeconds != null) {
+                seconds = Long.parseLong(resetSeconds.trim());
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        rateLimiter.drain();
+        resumeAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        logger.warning("GeoIP quota exhausted, pausing lookups for " + seconds + "s");
+    }
+
+    private static class Pending {
+        final String ip;
+        final CompletableFuture<String> future = new CompletableFuture<>();
+
+        Pending(String ip) {
+            this.ip = ip;
+        }
+    }
+}
@@ -1,15 +1,27 @@
 package com.chagui68.singleip.utils;
 
+import com.chagui68.singleip.SingleIPPlugin;
+import com.chagui68.singleip.storage.PlayerIPSet;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
+import java.net.Inet6Address;
+import java.net.InetAddress;
 import java.net.URL;
-import java.util.HashMap;
+import java.net.UnknownHostException;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Logger;
 
 public class GeoIPChecker {
@@ -17,107 +29,308 @@ public class GeoIPChecker {
     private static final String API_URL = "http://ip-api.com/json/";
     private final Logger logger;
     private final Map<String, CachedCountry> cache;
+    private final Queue<CachedCountry> insertionOrder;
+    private final AtomicInteger queuedEntries;
+    private final Map<String, InFlight> inFlight;
     private final int cacheDuration;
+    private final int negativeCacheDuration;
+    private final int maxCacheSize;
+    private final GeoIPDatabase database;
+    private final boolean httpEnabled;
+    private final GeoIPBatchResolver batchResolver;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LatencyHistogram lookupLatency = new LatencyHistogram();
 
     public GeoIPChecker(Logger logger, int cacheDurationMinutes) {
+        this(logger, cacheDurationMinutes, 60, 10000, null, true, null);
+    }
+
+    public GeoIPChecker(Logger logger, int cacheDurationMinutes, int negativeCacheSeconds, int maxCacheSize,
+                        GeoIPDatabase database, boolean httpEnabled, GeoIPBatchResolver batchResolver) {
         this.logger = logger;
-        this.cache = new HashMap<>();
+        this.cache = new ConcurrentHashMap<>();
+        this.insertionOrder = new ConcurrentLinkedQueue<>();
+        this.queuedEntries = new AtomicInteger();
+        this.inFlight = new ConcurrentHashMap<>();
         this.cacheDuration = cacheDurationMinutes * 60 * 1000;
+        this.negativeCacheDuration = negativeCacheSeconds * 1000;
+        this.maxCacheSize = Math.max(1, maxCacheSize);
+        this.database = database;
+        this.httpEnabled = httpEnabled;
+        this.batchResolver = batchResolver;
+    }
+
+    /**
+     * Builds the checker selected by {@code country-filter.provider}: {@code local}
+     * reads the offline range database, {@code http} queries ip-api.com. With the
+     * local provider, {@code http-fallback} decides whether misses go to ip-api.com.
+     */
+    public static GeoIPChecker fromConfig(SingleIPPlugin plugin) {
+        Logger logger = plugin.getLogger();
+        String provider = plugin.getConfig().getString("country-filter.provider", "local");
+        GeoIPDatabase database = null;
+
+        if (provider.equalsIgnoreCase("local")) {
+            File csvFile = new File(plugin.getDataFolder(), plugin.getConfig().getString("country-filter.database", "geoip-ranges.csv"));
+            try {
+                database = GeoIPDatabase.open(csvFile, logger);
+                logger.info("Local GeoIP database loaded: " + database.getRangeCount() + " ranges");
+            } catch (IOException e) {
+                logger.warning("Local GeoIP database unavailable (" + e.getMessage() + ")");
+            }
+        }
+
+        boolean http = !provider.equalsIgnoreCase("local") || plugin.getConfig().getBoolean("country-filter.http-fallback", true);
+        GeoIPBatchResolver batchResolver = null;
+        if (http && plugin.getConfig().getBoolean("country-filter.batch.enabled", true)) {
+            batchResolver = new GeoIPBatchResolver(logger,
+                    plugin.getConfig().getString("country-filter.batch.endpoint", "http://ip-api.com/batch"),
+                    plugin.getConfig().getLong("country-filter.batch.window-ms", 50),
+                    plugin.getConfig().getInt("country-filter.batch.requests-per-minute", 15));
+        }
+
+        return new GeoIPChecker(logger,
+                plugin.getConfig().getInt("country-filter.cache-duration", 30),
+                plugin.getConfig().getInt("country-filter.negative-cache-duration", 60),
+                plugin.getConfig().getInt("country-filter.cache-size", 10000),
+                database, http, batchResolver);
     }
 
+    /**
+     * Resolves the country of an IP. Concurrent callers asking for the same IP
+     * share one request, and failed lookups are remembered for
+     * {@code negative-cache-duration} seconds so they are not retried on every login.
+     */
     public CompletableFuture<String> getCountryCode(String ip) {
-        return CompletableFuture.supplyAsync(() -> {
-            if (isLocalIP(ip)) {
-                return "LOCAL";
+        return getCountryCode(ip, false);
+    }
+
+    /**
+     * Same as {@link #getCountryCode(String)}, for lookups nobody is waiting on
+     * yet. With batching enabled they only use spare room in a batch.
+     */
+    public CompletableFuture<String> prefetchCountryCode(String ip) {
+        return getCountryCode(ip, true);
+    }
+
+    private CompletableFuture<String> getCountryCode(String ip, boolean speculative) {
+        byte[] address = PlayerIPSet.parseAddress(ip);
+        if (ip.equals("localhost") || (address != null && isLocalAddress(address))) {
+            return CompletableFuture.completedFuture("LOCAL");
+        }
+
+        if (database != null) {
+            String countryCode = address == null ? null : database.lookup(address);
+            if (countryCode != null || !httpEnabled) {
+                return CompletableFuture.completedFuture(countryCode);
             }
+        } else if (!httpEnabled) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-            CachedCountry cached = cache.get(ip);
-            if (cached != null && !cached.isExpired()) {
-                logger.fine("Country for " + ip + " retrieved from cache: " + cached.countryCode);
-                return cached.countryCode;
+        CachedCountry cached = cache.get(ip);
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                (cached.countryCode == null ? negativeHits : hits).increment();
+                return CompletableFuture.completedFuture(cached.countryCode);
             }
+            cache.remove(ip, cached);
+        }
 
-            try {
-                URL url = new URL(API_URL + ip + "?fields=status,message,countryCode");
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("GET");
-                conn.setConnectTimeout(5000);
-                conn.setReadTimeout(5000);
-                conn.setRequestProperty("User-Agent", "MinecraftServer/SingleIPPlugin-Chagui68");
-
-                int responseCode = conn.getResponseCode();
-                if (responseCode == 200) {
-                    BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                    StringBuilder response = new StringBuilder();
-                    String line;
-
-                    while ((line = in.readLine()) != null) {
-                        response.append(line);
-                    }
-                    in.close();
-
-                    JsonObject json = JsonParser.parseString(response.toString()).getAsJsonObject();
-
-                    if (json.get("status").getAsString().equals("success")) {
-                        String countryCode = json.get("countryCode").getAsString();
-
-                        cache.put(ip, new CachedCountry(countryCode, System.currentTimeMillis()));
-
-                        logger.info("Country detected for " + ip + ": " + countryCode);
-                        return countryCode;
-                    } else {
-                        logger.warning("API error for " + ip + ": " + json.get("message").getAsString());
-                        return null;
-                    }
+        CompletableFuture<String> request = new CompletableFuture<>();
+        InFlight lookup = new InFlight(request, speculative);
+        InFlight pending = inFlight.putIfAbsent(ip, lookup);
+        if (pending != null) {
+            coalesced.increment();
+            // A login now waits on what was queued as a prefetch
+            if (!speculative && pending.promote() && batchResolver != null) {
+                batchResolver.promote(ip);
+            }
+            return pending.future;
+        }
+        misses.increment();
+
+        long started = System.nanoTime();
+        CompletableFuture<String> resolved;
+        if (batchResolver != null) {
+            resolved = batchResolver.resolve(ip, speculative);
+            // Promoted before it was queued, so the login's promote found nothing to move
+            if (speculative && !lookup.isSpeculative()) {
+                batchResolver.promote(ip);
+            }
+        } else {
+            resolved = CompletableFuture.supplyAsync(() -> fetchCountryCode(ip));
+        }
+        resolved.whenComplete((countryCode, error) -> {
+            lookupLatency.record(System.nanoTime() - started);
+            store(ip, error == null ? countryCode : null);
+            inFlight.remove(ip, lookup);
+            request.complete(error == null ? countryCode : null);
+        });
+        return request;
+    }
+
+    private String fetchCountryCode(String ip) {
+        try {
+            URL url = new URL(API_URL + ip + "?fields=status,message,countryCode");
+            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("GET");
+            conn.setConnectTimeout(5000);
+            conn.setReadTimeout(5000);
+            conn.setRequestProperty("User-Agent", "MinecraftServer/SingleIPPlugin-Chagui68");
+
+            int responseCode = conn.getResponseCode();
+            if (responseCode == 200) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
+                StringBuilder response = new StringBuilder();
+                String line;
+
+                while ((line = in.readLine()) != null) {
+                    response.append(line);
+                }
+                in.close();
+
+                JsonObject json = JsonParser.parseString(response.toString()).getAsJsonObject();
+
+                if (json.get("status").getAsString().equals("success")) {
+                    String countryCode = json.get("countryCode").getAsString();
+                    logger.info("Country detected for " + ip + ": " + countryCode);
+                    return countryCode;
                 } else {
-                    logger.warning("HTTP error " + responseCode + " for IP: " + ip);
+                    logger.warning("API error for " + ip + ": " + json.get("message").getAsString());
                     return null;
                 }
-            } catch (Exception e) {
-                logger.severe("Error checking geolocation for " + ip + ": " + e.getMessage());
+            } else {
+                logger.warning("HTTP error " + responseCode + " for IP: " + ip);
                 return null;
             }
-        });
+        } catch (Exception e) {
+            logger.severe("Error checking geolocation for " + ip + ": " + e.getMessage());
+            return null;
+        }
     }
 
-    private boolean isLocalIP(String ip) {
-        return ip.equals("127.0.0.1") ||
-                ip.equals("localhost") ||
-                ip.startsWith("192.168.") ||
-                ip.startsWith("10.") ||
-                ip.startsWith("172.16.") ||
-                ip.startsWith("172.17.") ||
-                ip.startsWith("172.18.") ||
-                ip.startsWith("172.19.") ||
-                ip.startsWith("172.20.") ||
-                ip.startsWith("172.21.") ||
-                ip.startsWith("172.22.") ||
-                ip.startsWith("172.23.") ||
-                ip.startsWith("172.24.") ||
-                ip.startsWith("172.25.") ||
-                ip.startsWith("172.26.") ||
-                ip.startsWith("172.27.") ||
-                ip.startsWith("172.28.") ||
-                ip.startsWith("172.29.") ||
-                ip.startsWith("172.30.") ||
-                ip.startsWith("172.31.");
+    private void store(String ip, String countryCode) {
+        long ttl = countryCode == null ? negativeCacheDuration : cacheDuration;
+        if (ttl <= 0) {
+            return;
+        }
+
+        CachedCountry entry = new CachedCountry(ip, countryCode, System.currentTimeMillis() + ttl);
+        cache.put(ip, entry);
+        insertionOrder.add(entry);
+        queuedEntries.incrementAndGet();
+
+        // Evict oldest first; queue nodes whose key was replaced since are skipped
+        while (cache.size() > maxCacheSize || queuedEntries.get() > maxCacheSize * 2) {
+            CachedCountry oldest = insertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            queuedEntries.decrementAndGet();
+            if (cache.remove(oldest.ip, oldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    /** Lookups that missed the cache but joined one already in flight for the same IP. */
+    public long getCoalescedLookups() {
+        return coalesced.sum();
+    }
+
+    public long getNegativeCacheHits() {
+        return negativeHits.sum();
+    }
+
+    public long getCacheEvictions() {
+        return evictions.sum();
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    /** Time taken to resolve lookups that missed the cache, through the API or a batch. */
+    public LatencyHistogram getLookupLatency() {
+        return lookupLatency;
+    }
+
+    /**
+     * Loopback, private (10/8, 172.16/12, 192.168/16, fc00::/7), link-local and
+     * unspecified addresses, which no geolocation service can place. An
+     * IPv4-mapped IPv6 address counts as the IPv4 address it holds.
+     */
+    private static boolean isLocalAddress(byte[] address) {
+        InetAddress inet;
+        try {
+            inet = InetAddress.getByAddress(address);
+        } catch (UnknownHostException e) {
+            return false;
+        }
+        return inet.isLoopbackAddress() || inet.isSiteLocalAddress() || inet.isLinkLocalAddress()
+                || inet.isAnyLocalAddress() || (inet instanceof Inet6Address && (address[0] & 0xFE) == 0xFC);
+    }
+
+    public void shutdown() {
+        if (batchResolver != null) {
+            batchResolver.shutdown();
+        }
     }
 
     public void cleanCache() {
         cache.entrySet().removeIf(entry -> entry.getValue().isExpired());
     }
 
-    private class CachedCountry {
-        String countryCode;
-        long timestamp;
+    /**
+     * A lookup waiting for its result, and whether only prefetches are waiting on it so far.
+     */
+    private static class InFlight {
+        final CompletableFuture<String> future;
+        private final AtomicBoolean speculative;
+
+        InFlight(CompletableFuture<String> future, boolean speculative) {
+            this.future = future;
+            this.speculative = new AtomicBoolean(speculative);
+        }
+
+        boolean isSpeculative() {
+            return speculative.get();
+        }
+
+        /**
+         * Marks the lookup as needed by a login. Returns true only for the first caller to do so.
+         */
+        boolean promote() {
+            return speculative.compareAndSet(true, false);
+        }
+    }
+
+    private static class CachedCountry {
+        final String ip;
+        final String countryCode;
+        final long expiresAt;
 
-        CachedCountry(String countryCode, long timestamp) {
+        CachedCountry(String ip, String countryCode, long expiresAt) {
+            this.ip = ip;
             this.countryCode = countryCode;
-            this.timestamp = timestamp;
+            this.expiresAt = expiresAt;
         }
 
         boolean isExpired() {
-            return System.currentTimeMillis() - timestamp > cacheDuration;
+            return System.currentTimeMillis() > expiresAt;
         }
     }
 }
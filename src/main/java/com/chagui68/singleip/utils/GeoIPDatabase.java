@@ -0,0 +1,245 @@
+package com.chagui68.singleip.utils;
+
+import com.chagui68.singleip.storage.PlayerIPSet;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Offline country lookup over a memory-mapped range file.
+ *
+ * <p>The source is a CSV of {@code start,end,country} rows, with addresses
+ * written as IPv4/IPv6 literals or as plain IPv4 integers. It is compiled once
+ * into a sorted binary file next to it and mapped read-only; lookups are binary
+ * searches on the mapping and allocate nothing.</p>
+ */
+public class GeoIPDatabase {
+
+    private static final int MAGIC = 0x53495047;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int V4_RECORD = 4 + 4 + 2;
+    private static final int V6_RECORD = 16 + 16 + 2;
+    private static final String[] COUNTRY_CODES = new String[26 * 26];
+
+    static {
+        for (int i = 0; i < COUNTRY_CODES.length; i++) {
+            COUNTRY_CODES[i] = new String(new char[]{(char) ('A' + i / 26), (char) ('A' + i % 26)});
+        }
+    }
+
+    private final MappedByteBuffer buffer;
+    private final int v4Count;
+    private final int v6Count;
+    private final int v6Offset;
+
+    private GeoIPDatabase(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a compiled GeoIP range file");
+        }
+        this.v4Count = buffer.getInt(8);
+        this.v6Count = buffer.getInt(12);
+        this.v6Offset = HEADER_SIZE + v4Count * V4_RECORD;
+        if (buffer.capacity() < v6Offset + (long) v6Count * V6_RECORD) {
+            throw new IOException("Compiled GeoIP range file is truncated");
+        }
+    }
+
+    /**
+     * Opens the database for {@code csvFile}, compiling it first if the binary
+     * file is missing or older than the CSV.
+     */
+    public static GeoIPDatabase open(File csvFile, Logger logger) throws IOException {
+        File compiled = new File(csvFile.getParentFile(), csvFile.getName() + ".bin");
+
+        if (csvFile.exists() && (!compiled.exists() || compiled.lastModified() < csvFile.lastModified())) {
+            long start = System.currentTimeMillis();
+            int ranges = compile(csvFile, compiled, logger);
+            logger.info("Compiled " + ranges + " GeoIP ranges in " + (System.currentTimeMillis() - start) + " ms");
+        }
+
+        if (!compiled.exists()) {
+            throw new IOException("GeoIP database not found: " + csvFile.getName());
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(compiled, "r");
+             FileChannel channel = file.getChannel()) {
+            return new GeoIPDatabase(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getRangeCount() {
+        return v4Count + v6Count;
+    }
+
+    /**
+     * Returns the two letter country code for a raw address, or null if no range contains it.
+     */
+    public String lookup(byte[] address) {
+        int code = address.length == 4 ? lookupV4(address) : lookupV6(address);
+        return code < 0 ? null : COUNTRY_CODES[code];
+    }
+
+    private int lookupV4(byte[] address) {
+        long target = ((address[0] & 0xFFL) << 24) | ((address[1] & 0xFFL) << 16) | ((address[2] & 0xFFL) << 8) | (address[3] & 0xFFL);
+        int low = 0;
+        int high = v4Count - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = HEADER_SIZE + mid * V4_RECORD;
+            if ((buffer.getInt(record) & 0xFFFFFFFFL) > target) {
+                high = mid - 1;
+            } else if ((buffer.getInt(record + 4) & 0xFFFFFFFFL) < target) {
+                low = mid + 1;
+            } else {
+                return buffer.getShort(record + 8);
+            }
+        }
+        return -1;
+    }
+
+    private int lookupV6(byte[] address) {
+        long targetHigh = readLong(address, 0);
+        long targetLow = readLong(address, 8);
+        int low = 0;
+        int high = v6Count - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int record = v6Offset + mid * V6_RECORD;
+            if (compare(buffer.getLong(record), buffer.getLong(record + 8), targetHigh, targetLow) > 0) {
+                high = mid - 1;
+            } else if (compare(buffer.getLong(record + 16), buffer.getLong(record + 24), targetHigh, targetLow) < 0) {
+                low = mid + 1;
+            } else {
+                return buffer.getShort(record + 32);
+            }
+        }
+        return -1;
+    }
+
+    private static int compare(long h1, long l1, long h2, long l2) {
+        int result = Long.compareUnsigned(h1, h2);
+        return result != 0 ? result : Long.compareUnsigned(l1, l2);
+    }
+
+    private static long readLong(byte[] address, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (address[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static int compile(File csvFile, File compiled, Logger logger) throws IOException {
+        List<long[]> v4 = new ArrayList<>();
+        List<long[]> v6 = new ArrayList<>();
+        int skipped = 0;
+
+        try (BufferedReader reader = Files.newBufferedReader(csvFile.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] parts = line.replace("\"", "").split(",");
+                if (parts.length < 3) {
+                    skipped++;
+                    continue;
+                }
+
+                byte[] start = parseBoundary(parts[0].trim());
+                byte[] end = parseBoundary(parts[1].trim());
+                int country = countryIndex(parts[2].trim());
+                if (start == null || end == null || start.length != end.length || country < 0) {
+                    skipped++;
+                    continue;
+                }
+
+                if (start.length == 4) {
+                    v4.add(new long[]{readInt(start), readInt(end), country});
+                } else {
+                    v6.add(new long[]{readLong(start, 0), readLong(start, 8), readLong(end, 0), readLong(end, 8), country});
+                }
+            }
+        }
+
+        if (skipped > 0) {
+            logger.warning("Skipped " + skipped + " invalid rows in " + csvFile.getName());
+        }
+
+        v4.sort(Comparator.comparingLong(range -> range[0]));
+        v6.sort((a, b) -> compare(a[0], a[1], b[0], b[1]));
+
+        File temp = new File(compiled.getParentFile(), compiled.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(v4.size());
+            out.writeInt(v6.size());
+            for (long[] range : v4) {
+                out.writeInt((int) range[0]);
+                out.writeInt((int) range[1]);
+                out.writeShort((int) range[2]);
+            }
+            for (long[] range : v6) {
+                out.writeLong(range[0]);
+                out.writeLong(range[1]);
+                out.writeLong(range[2]);
+                out.writeLong(range[3]);
+                out.writeShort((int) range[4]);
+            }
+        }
+        Files.move(temp.toPath(), compiled.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        return v4.size() + v6.size();
+    }
+
+    private static byte[] parseBoundary(String value) {
+        if (!value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+            if (value.length() > 10) {
+                return null;
+            }
+            long number = Long.parseLong(value);
+            if (number > 0xFFFFFFFFL) {
+                return null;
+            }
+            return new byte[]{(byte) (number >>> 24), (byte) (number >>> 16), (byte) (number >>> 8), (byte) number};
+        }
+        return PlayerIPSet.parseAddress(value);
+    }
+
+    private static long readInt(byte[] address) {
+        return ((address[0] & 0xFFL) << 24) | ((address[1] & 0xFFL) << 16) | ((address[2] & 0xFFL) << 8) | (address[3] & 0xFFL);
+    }
+
+    private static int countryIndex(String code) {
+        if (code.length() != 2) {
+            return -1;
+        }
+        char first = Character.toUpperCase(code.charAt(0));
+        char second = Character.toUpperCase(code.charAt(1));
+        if (first < 'A' || first > 'Z' || second < 'A' || second > 'Z') {
+            return -1;
+        }
+        return (first - 'A') * 26 + (second - 'A');
+    }
+}
@@ -0,0 +1,93 @@
+package com.chagui68.singleip.utils;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with fixed power-of-two buckets: bucket {@code i}
+ * counts durations under 2^i microseconds and the last one everything slower
+ * (about a minute and up). Recording is a shift and three striped adds, so it
+ * is cheap enough for the pre-login path; percentiles are bucket upper bounds.
+ */
+public final class LatencyHistogram {
+
+    public static final int BUCKETS = 27;
+
+    private final LongAdder[] counts = new LongAdder[BUCKETS];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        long duration = Math.max(0, nanos);
+        int bucket = 64 - Long.numberOfLeadingZeros(duration / 1000);
+        counts[Math.min(BUCKETS - 1, bucket)].increment();
+        totalNanos.add(duration);
+        maxNanos.accumulate(duration);
+    }
+
+    /**
+     * Upper bound of a bucket in microseconds, or {@link Long#MAX_VALUE} for the last one.
+     */
+    public static long upperBoundMicros(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    /**
+     * Current count of every bucket. Buckets are read one by one, so a snapshot
+     * taken while recording may be off by the samples that arrived meanwhile.
+     */
+    public long[] snapshot() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = counts[i].sum();
+        }
+        return result;
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : counts) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * Upper bound, in nanoseconds, of the bucket holding the {@code quantile}
+     * sample (0.5 for the median), never above the largest value recorded.
+     */
+    public long getPercentileNanos(double quantile) {
+        long[] buckets = snapshot();
+        long count = 0;
+        for (long bucket : buckets) {
+            count += bucket;
+        }
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            seen += buckets[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundMicros(i) * 1000L, getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+}
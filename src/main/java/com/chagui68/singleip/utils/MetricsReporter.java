@@ -0,0 +1,201 @@
+package com.chagui68.singleip.utils;
+
+import com.chagui68.singleip.SingleIPPlugin;
+import com.chagui68.singleip.listeners.PlayerConnectionListener;
+import com.chagui68.singleip.replication.ReplicationStats;
+import com.chagui68.singleip.replication.Replicator;
+import com.chagui68.singleip.storage.IPDataManager;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the counters and latency histograms kept by the listener, the data
+ * manager, the GeoIP checker, the rate limiter and the replicator. Nothing is
+ * copied on the hot paths; values are read when {@code ipmanager stats} runs or
+ * when the Prometheus text file is written.
+ */
+public class MetricsReporter {
+
+    private final SingleIPPlugin plugin;
+    private final PlayerConnectionListener listener;
+    private final long startedAt = System.currentTimeMillis();
+    private final File prometheusFile;
+    private final ScheduledExecutorService exporter;
+
+    public MetricsReporter(SingleIPPlugin plugin, PlayerConnectionListener listener) {
+        this.plugin = plugin;
+        this.listener = listener;
+
+        ConfigurationSection prometheus = plugin.getConfig().getConfigurationSection("metrics.prometheus");
+        if (prometheus == null || !prometheus.getBoolean("enabled", false)) {
+            this.prometheusFile = null;
+            this.exporter = null;
+            return;
+        }
+
+        this.prometheusFile = new File(plugin.getDataFolder(), prometheus.getString("file", "singleip.prom"));
+        long interval = Math.max(1, prometheus.getLong("interval", 15));
+        this.exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "SingleIP-Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleWithFixedDelay(this::exportPrometheus, interval, interval, TimeUnit.SECONDS);
+    }
+
+    public PlayerConnectionListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Seconds since the plugin was enabled, never zero so it can divide a count.
+     */
+    public double getUptimeSeconds() {
+        return Math.max(1, System.currentTimeMillis() - startedAt) / 1000d;
+    }
+
+    /**
+     * Average per second since the plugin was enabled.
+     */
+    public double rate(long count) {
+        return count / getUptimeSeconds();
+    }
+
+    /**
+     * The export file, or null when the Prometheus export is disabled.
+     */
+    public File getPrometheusFile() {
+        return prometheusFile;
+    }
+
+    public void shutdown() {
+        if (exporter != null) {
+            exporter.shutdownNow();
+        }
+    }
+
+    private void exportPrometheus() {
+        try {
+            Path target = prometheusFile.toPath();
+            Path temp = target.resolveSibling(prometheusFile.getName() + ".tmp");
+            Files.write(temp, renderPrometheus().getBytes(StandardCharsets.UTF_8));
+            // The textfile collector may read at any moment, so it must never see a half-written file
+            try {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException | RuntimeException e) {
+            plugin.getLogger().warning("Error writing metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Everything in the Prometheus text exposition format.
+     */
+    public String renderPrometheus() {
+        StringBuilder out = new StringBuilder(8192);
+        IPDataManager dataManager = plugin.getDataManager();
+        GeoIPChecker geoIPChecker = plugin.getGeoIPChecker();
+
+        header(out, "singleip_prelogin_total", "counter", "Pre-login decisions by result");
+        sample(out, "singleip_prelogin_total{result=\"allowed\"}", listener.getAllowedCount());
+        sample(out, "singleip_prelogin_total{result=\"rate_limited\"}", listener.getDeniedRateLimitCount());
+        sample(out, "singleip_prelogin_total{result=\"ip_denied\"}", listener.getDeniedIPCount());
+        sample(out, "singleip_prelogin_total{result=\"country_denied\"}", listener.getDeniedCountryCount());
+        sample(out, "singleip_prelogin_total{result=\"not_ready\"}", listener.getNotReadyCount());
+        histogram(out, "singleip_prelogin_seconds", "Time to decide a pre-login", listener.getPreLoginLatency());
+
+        if (dataManager != null) {
+            header(out, "singleip_players", "gauge", "Players with at least one registered IP");
+            sample(out, "singleip_players", dataManager.getStoredPlayerCount());
+            histogram(out, "singleip_storage_load_seconds", "Time to load the stored IPs", dataManager.getLoadLatency());
+            histogram(out, "singleip_storage_save_seconds", "Time to write a full snapshot of the stored IPs",
+                    dataManager.getSaveLatency());
+            histogram(out, "singleip_storage_record_seconds", "Time to record a single change incrementally",
+                    dataManager.getRecordLatency());
+            histogram(out, "singleip_failed_login_log_seconds", "Time to log a failed login",
+                    dataManager.getFailedLoginLatency());
+        }
+
+        if (geoIPChecker != null) {
+            header(out, "singleip_geoip_cache_total", "counter", "GeoIP cache lookups by result");
+            sample(out, "singleip_geoip_cache_total{result=\"hit\"}", geoIPChecker.getCacheHits());
+            sample(out, "singleip_geoip_cache_total{result=\"negative_hit\"}", geoIPChecker.getNegativeCacheHits());
+            sample(out, "singleip_geoip_cache_total{result=\"miss\"}", geoIPChecker.getCacheMisses());
+            sample(out, "singleip_geoip_cache_total{result=\"coalesced\"}", geoIPChecker.getCoalescedLookups());
+            header(out, "singleip_geoip_cache_evictions_total", "counter", "GeoIP cache entries evicted for room");
+            sample(out, "singleip_geoip_cache_evictions_total", geoIPChecker.getCacheEvictions());
+            header(out, "singleip_geoip_cache_entries", "gauge", "GeoIP cache entries");
+            sample(out, "singleip_geoip_cache_entries", geoIPChecker.getCacheSize());
+            histogram(out, "singleip_geoip_lookup_seconds", "Time to resolve a GeoIP lookup that missed the cache",
+                    geoIPChecker.getLookupLatency());
+        }
+
+        header(out, "singleip_rate_limiter_rejected_total", "counter", "Connections rejected by the current rate limiter");
+        sample(out, "singleip_rate_limiter_rejected_total", plugin.getRateLimiter().getRejectedCount());
+
+        Replicator replicator = plugin.getReplicator();
+        if (replicator != null) {
+            ReplicationStats stats = replicator.getStats();
+            header(out, "singleip_replication_deltas_total", "counter", "Replication deltas by direction");
+            sample(out, "singleip_replication_deltas_total{direction=\"published\"}", stats.getDeltasPublished());
+            sample(out, "singleip_replication_deltas_total{direction=\"received\"}", stats.getDeltasReceived());
+            sample(out, "singleip_replication_deltas_total{direction=\"applied\"}", stats.getDeltasApplied());
+            header(out, "singleip_replication_conflicts_lost_total", "counter", "Remote deltas older than the local entry");
+            sample(out, "singleip_replication_conflicts_lost_total", stats.getConflictsLost());
+            header(out, "singleip_replication_pending", "gauge", "Local changes waiting to be published");
+            sample(out, "singleip_replication_pending", replicator.getPendingCount());
+            header(out, "singleip_replication_lag_seconds", "gauge", "Lag of the last batch received");
+            sample(out, "singleip_replication_lag_seconds", stats.getLastLagMillis() / 1000d);
+        }
+
+        header(out, "singleip_uptime_seconds", "gauge", "Seconds since the plugin was enabled");
+        sample(out, "singleip_uptime_seconds", getUptimeSeconds());
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String series, long value) {
+        out.append(series).append(' ').append(value).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String series, double value) {
+        out.append(series).append(' ').append(formatDouble(value)).append('\n');
+    }
+
+    private static void histogram(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        header(out, name, "histogram", help);
+        long[] buckets = histogram.snapshot();
+        long cumulative = 0;
+        for (int i = 0; i < LatencyHistogram.BUCKETS - 1; i++) {
+            cumulative += buckets[i];
+            out.append(name).append("_bucket{le=\"")
+                    .append(formatDouble(LatencyHistogram.upperBoundMicros(i) / 1_000_000d))
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        cumulative += buckets[LatencyHistogram.BUCKETS - 1];
+        out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        sample(out, name + "_sum", histogram.getTotalNanos() / 1_000_000_000d);
+        sample(out, name + "_count", cumulative);
+    }
+
+    private static String formatDouble(double value) {
+        return String.format(Locale.ROOT, "%.9g", value).replaceFirst("\\.?0+(e|$)", "$1");
+    }
+}
@@ -0,0 +1,128 @@
+package com.chagui68.singleip.utils;
+
+import com.chagui68.singleip.SingleIPPlugin;
+import com.chagui68.singleip.storage.IPDataManager;
+import org.bukkit.Bukkit;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads config.yml and player-ips.yml when they are edited, the same way
+ * {@code ipmanager reload} does. Editors often write a file in several steps, so
+ * changes are only acted on once the folder has been quiet for a moment.
+ */
+public class ReloadWatcher {
+
+    private static final String CONFIG_FILE = "config.yml";
+    private static final String DATA_FILE = "player-ips.yml";
+    private static final long QUIET_MILLIS = 1000;
+
+    private final SingleIPPlugin plugin;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    private ReloadWatcher(SingleIPPlugin plugin, WatchService watchService) {
+        this.plugin = plugin;
+        this.watchService = watchService;
+        this.thread = new Thread(this::run, "SingleIP-Watch");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching the data folder if {@code storage.watch} is enabled, or returns null.
+     */
+    public static ReloadWatcher fromConfig(SingleIPPlugin plugin) {
+        if (!plugin.getConfig().getBoolean("storage.watch", false)) {
+            return null;
+        }
+
+        try {
+            WatchService watchService = FileSystems.getDefault().newWatchService();
+            plugin.getDataFolder().toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            ReloadWatcher watcher = new ReloadWatcher(plugin, watchService);
+            watcher.thread.start();
+            plugin.getLogger().info("Watching " + CONFIG_FILE + " and " + DATA_FILE + " for changes");
+            return watcher;
+        } catch (IOException e) {
+            plugin.getLogger().warning("Error watching the data folder: " + e.getMessage());
+            return null;
+        }
+    }
+
+    public void shutdown() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            plugin.getLogger().warning("Error closing file watcher: " + e.getMessage());
+        }
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                Set<String> changed = new HashSet<>();
+                collect(watchService.take(), changed);
+                // Keep gathering until the files stop changing
+                WatchKey next;
+                while ((next = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(next, changed);
+                }
+
+                if (changed.contains(CONFIG_FILE)) {
+                    Bukkit.getScheduler().runTask(plugin, this::reloadConfig);
+                }
+                if (changed.contains(DATA_FILE)) {
+                    reloadData();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    private static void collect(WatchKey key, Set<String> changed) {
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.context() instanceof Path) {
+                changed.add(((Path) event.context()).getFileName().toString());
+            }
+        }
+        key.reset();
+    }
+
+    private void reloadConfig() {
+        if (!plugin.isEnabled()) {
+            return;
+        }
+        try {
+            plugin.reloadPolicy();
+            plugin.getLogger().info(CONFIG_FILE + " changed, configuration reloaded");
+        } catch (Exception e) {
+            plugin.getLogger().severe("Error reloading configuration: " + e.getMessage());
+        }
+    }
+
+    private void reloadData() {
+        IPDataManager dataManager = plugin.getDataManager();
+        // Snapshots written by the plugin itself look the same as hand edits to the watcher
+        if (dataManager == null || !dataManager.isStoreChangedOnDisk()) {
+            return;
+        }
+        // A file that failed to load may have just been fixed
+        IPDataManager.ReloadResult result = dataManager.isLoaded() ? dataManager.reloadData() : plugin.loadPlayerIPs();
+        if (result != null) {
+            plugin.getLogger().info(DATA_FILE + " changed, player IPs reloaded: " + result.describe());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.chagui68.singleip.utils;
+
+/**
+ * Classic token bucket: holds up to {@code capacity} tokens and refills
+ * continuously at {@code tokensPerSecond}.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double capacity, double tokensPerSecond) {
+        this.capacity = Math.max(1, capacity);
+        this.tokensPerNano = tokensPerSecond / 1_000_000_000d;
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Nanoseconds until the next token is available, 0 if one is available now.
+     */
+    public synchronized long nanosUntilAvailable() {
+        refill();
+        if (tokens >= 1 || tokensPerNano <= 0) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Empties the bucket, e.g. when the remote side reports its quota is used up.
+     */
+    public synchronized void drain() {
+        refill();
+        tokens = 0;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,59 @@
+package com.chagui68.singleip;
+
+import com.chagui68.singleip.storage.IPDataManager;
+import com.chagui68.singleip.utils.AccessPolicy;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stand-ins for what the plugin normally gets from the server: an in-memory
+ * config and a quiet logger. Tests bring their own temporary data folder.
+ */
+public final class TestEnvironment {
+
+    private TestEnvironment() {
+    }
+
+    /**
+     * Write-behind storage that never flushes on its own, so only the tested
+     * calls touch the disk.
+     */
+    public static YamlConfiguration config() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("debug", false);
+        config.set("log-failed-attempts", false);
+        config.set("storage.format", "yaml");
+        config.set("storage.save-mode", "write-behind");
+        config.set("storage.flush-interval", 3600);
+        config.set("storage.shutdown-timeout", 30);
+        return config;
+    }
+
+    public static Logger logger() {
+        Logger logger = Logger.getLogger("SingleIP-Test");
+        logger.setLevel(Level.WARNING);
+        return logger;
+    }
+
+    public static IPDataManager dataManager(File dataFolder, YamlConfiguration config) throws IOException {
+        Logger logger = logger();
+        AccessPolicy policy = AccessPolicy.compile(config, logger);
+        return new IPDataManager(dataFolder, logger, config, () -> policy);
+    }
+
+    public static UUID player(int index) {
+        return new UUID(0x7E57_0000_0000_0000L, index);
+    }
+
+    /**
+     * A distinct IPv4 address for each of up to 2^24 indexes.
+     */
+    public static String address(int index) {
+        return "10." + ((index >>> 16) & 0xFF) + "." + ((index >>> 8) & 0xFF) + "." + (index & 0xFF);
+    }
+}
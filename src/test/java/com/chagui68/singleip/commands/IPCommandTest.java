@@ -0,0 +1,47 @@
+package com.chagui68.singleip.commands;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IPCommandTest {
+
+    @Test
+    void relativeTimesCountBackFromNow() {
+        long before = System.currentTimeMillis();
+        long parsed = IPCommand.parseTime("7d");
+        long after = System.currentTimeMillis();
+
+        long week = TimeUnit.DAYS.toMillis(7);
+        assertTrue(parsed >= before - week && parsed <= after - week);
+    }
+
+    @Test
+    void datesUseTheServerZone() {
+        ZoneId zone = ZoneId.systemDefault();
+        assertEquals(LocalDate.of(2024, 1, 31).atStartOfDay(zone).toInstant().toEpochMilli(),
+                IPCommand.parseTime("2024-01-31"));
+        assertEquals(LocalDateTime.of(2024, 1, 31, 18, 0).atZone(zone).toInstant().toEpochMilli(),
+                IPCommand.parseTime("2024-01-31T18:00"));
+    }
+
+    /**
+     * handleFailedLogins reports these as an invalid value, so nothing else may escape.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"", "d", "7", "7x", "x7d", "1.5h", "99999999999999999999d", "2024-13-01", "yesterday"})
+    void invalidTimesAreRejected(String value) {
+        RuntimeException e = assertThrows(RuntimeException.class, () -> IPCommand.parseTime(value));
+        assertTrue(e instanceof IllegalArgumentException || e instanceof DateTimeException, e.toString());
+    }
+}
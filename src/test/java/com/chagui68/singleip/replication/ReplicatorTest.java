@@ -0,0 +1,170 @@
+package com.chagui68.singleip.replication;
+
+import com.chagui68.singleip.TestEnvironment;
+import com.chagui68.singleip.storage.IPDataManager;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Several replicators in one JVM, linked by a {@link LoopbackTransport} channel of their own.
+ */
+class ReplicatorTest {
+
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private final String channel = "test-" + UUID.randomUUID();
+    private final List<Replicator> replicators = new ArrayList<>();
+    private final List<IPDataManager> dataManagers = new ArrayList<>();
+
+    @TempDir
+    File dataFolder;
+
+    @AfterEach
+    void tearDown() {
+        replicators.forEach(replicator -> replicator.shutdown(1000));
+        dataManagers.forEach(IPDataManager::shutdown);
+    }
+
+    @Test
+    void changesConvergeOnEveryServer() throws Exception {
+        IPDataManager a = dataManager("a");
+        IPDataManager b = dataManager("b");
+        IPDataManager c = dataManager("c");
+        start("a", a);
+        start("b", b);
+        start("c", c);
+        UUID first = TestEnvironment.player(1);
+        UUID second = TestEnvironment.player(2);
+
+        assertTrue(a.registerFirstIP(first, "203.0.113.1"));
+        await(() -> b.hasRegisteredIP(first), "registration reaching b");
+        assertTrue(b.addSecondIP(first, "198.51.100.0/24"));
+        await(() -> c.getIPCount(first) == 2, "addition reaching c");
+        assertTrue(c.removeIP(first, "203.0.113.1"));
+        assertTrue(a.registerFirstIP(second, "203.0.113.2"));
+        await(() -> b.hasRegisteredIP(second), "second registration reaching b");
+        b.removeAllIPs(second);
+        assertTrue(b.registerFirstIP(second, "203.0.113.3"));
+
+        Map<UUID, Set<String>> expected = new HashMap<>();
+        expected.put(first, Collections.singleton("198.51.100.0/24"));
+        expected.put(second, Collections.singleton("203.0.113.3"));
+        for (IPDataManager dataManager : List.of(a, b, c)) {
+            await(() -> registry(dataManager).equals(expected), "every server converging on " + expected);
+        }
+
+        // A server joining late catches up from the sync
+        IPDataManager d = dataManager("d");
+        start("d", d);
+        await(() -> registry(d).equals(expected), "the late server catching up");
+    }
+
+    @Test
+    void removalIsNotUndoneAfterARestart() throws Exception {
+        UUID player = TestEnvironment.player(1);
+        String ip = "203.0.113.1";
+
+        // Both servers have the entry from before replication was enabled, so it has no version
+        IPDataManager a = dataManager("a");
+        IPDataManager b = dataManager("b");
+        assertTrue(a.registerFirstIP(player, ip));
+        assertTrue(a.addSecondIP(player, "203.0.113.2"));
+        assertTrue(b.registerFirstIP(player, ip));
+        assertTrue(b.addSecondIP(player, "203.0.113.2"));
+
+        // a removes it while b is offline, then restarts
+        Replicator replicator = start("a", a);
+        assertTrue(a.removeIP(player, ip));
+        replicator.shutdown(1000);
+        replicators.remove(replicator);
+        assertTrue(a.saveData());
+        a.shutdown();
+        dataManagers.remove(a);
+
+        IPDataManager restarted = dataManager("a");
+        assertFalse(restarted.hasIPEntry(player, ip));
+        start("a", restarted);
+
+        // b comes back with its copy, which must lose to the remembered removal
+        start("b", b);
+        await(() -> !b.hasIPEntry(player, ip), "the removal reaching b");
+        assertEquals(Set.of("203.0.113.2"), new HashSet<>(restarted.getRegisteredIPs(player)));
+        assertEquals(Set.of("203.0.113.2"), new HashSet<>(b.getRegisteredIPs(player)));
+    }
+
+    @Test
+    void resetKeepsEntriesAddedAfterIt() throws Exception {
+        IPDataManager a = dataManager("a");
+        IPDataManager b = dataManager("b");
+        start("a", a);
+        start("b", b);
+        UUID player = TestEnvironment.player(1);
+
+        assertTrue(a.registerFirstIP(player, "203.0.113.1"));
+        assertTrue(a.addSecondIP(player, "203.0.113.2"));
+        await(() -> b.getIPCount(player) == 2, "entries reaching b");
+        b.removeAllIPs(player);
+        assertTrue(b.registerFirstIP(player, "203.0.113.3"));
+
+        for (IPDataManager dataManager : List.of(a, b)) {
+            await(() -> dataManager.getRegisteredIPs(player).equals(List.of("203.0.113.3")),
+                    "only the entry added after the reset remaining");
+        }
+    }
+
+    private IPDataManager dataManager(String server) throws Exception {
+        File folder = new File(dataFolder, server);
+        assertTrue(folder.isDirectory() || folder.mkdirs());
+        IPDataManager dataManager = TestEnvironment.dataManager(folder, TestEnvironment.config());
+        assertTrue(dataManager.loadData() != null);
+        dataManagers.add(dataManager);
+        return dataManager;
+    }
+
+    private Replicator start(String server, IPDataManager dataManager) throws Exception {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("server-id", server);
+        config.set("batch-interval", 10);
+        Replicator replicator = new Replicator(dataManager, new LoopbackTransport(channel), TestEnvironment.logger(),
+                config, new File(new File(dataFolder, server), "replication-state.dat"));
+        replicator.start();
+        replicators.add(replicator);
+        return replicator;
+    }
+
+    private static Map<UUID, Set<String>> registry(IPDataManager dataManager) {
+        Map<UUID, Set<String>> result = new HashMap<>();
+        for (UUID uuid : dataManager.getAllPlayers()) {
+            result.put(uuid, new HashSet<>(dataManager.getRegisteredIPs(uuid)));
+        }
+        return result;
+    }
+
+    private static void await(BooleanSupplier condition, String what) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("Timed out waiting for " + what);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
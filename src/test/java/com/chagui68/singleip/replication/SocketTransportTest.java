@@ -0,0 +1,150 @@
+package com.chagui68.singleip.replication;
+
+import com.chagui68.singleip.TestEnvironment;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SocketTransportTest {
+
+    private static final String SECRET = "0123456789abcdef-test";
+
+    private final BlockingQueue<byte[]> received = new LinkedBlockingQueue<>();
+    private final List<SocketTransport> transports = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        transports.forEach(SocketTransport::close);
+    }
+
+    @Test
+    void deliversPublishedMessagesToPeers() throws Exception {
+        InetSocketAddress listening = start(Collections.emptyList(), new CountDownLatch(0));
+        CountDownLatch connected = new CountDownLatch(1);
+        start(Collections.singletonList(listening), connected);
+        SocketTransport dialing = transports.get(1);
+        assertTrue(connected.await(10, TimeUnit.SECONDS));
+
+        for (int i = 0; i < 3; i++) {
+            dialing.publish(("message " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(("message " + i).getBytes(StandardCharsets.UTF_8), received.poll(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void replayedFramesAreRejected() throws Exception {
+        InetSocketAddress listening = start(Collections.emptyList(), new CountDownLatch(0));
+        byte[] payload = "add".getBytes(StandardCharsets.UTF_8);
+        byte[] frame;
+
+        try (Socket socket = connect(listening)) {
+            byte[] nonce = handshake(socket);
+            frame = frame(nonce, 0, payload);
+            socket.getOutputStream().write(frame);
+            assertArrayEquals(payload, received.poll(10, TimeUnit.SECONDS));
+
+            // The same frame again on the same link: its sequence number is stale
+            socket.getOutputStream().write(frame);
+            assertClosed(socket);
+        }
+
+        // The recorded frame on a new link: the nonce no longer matches
+        try (Socket socket = connect(listening)) {
+            handshake(socket);
+            socket.getOutputStream().write(frame);
+            assertClosed(socket);
+        }
+        assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Starts a transport on a free local port and returns its address.
+     */
+    private InetSocketAddress start(List<InetSocketAddress> peers, CountDownLatch connected) throws IOException {
+        InetSocketAddress address;
+        try (ServerSocket free = new ServerSocket(0)) {
+            address = new InetSocketAddress("127.0.0.1", free.getLocalPort());
+        }
+        SocketTransport transport = new SocketTransport(address, peers, SECRET, TestEnvironment.logger());
+        transport.start(new ReplicationTransport.Receiver() {
+            @Override
+            public void received(byte[] message, ReplicationTransport.Channel replyTo) {
+                received.add(message);
+            }
+
+            @Override
+            public void connected(ReplicationTransport.Channel channel) {
+                connected.countDown();
+            }
+        });
+        transports.add(transport);
+        return address;
+    }
+
+    private static Socket connect(InetSocketAddress address) throws IOException {
+        Socket socket = new Socket();
+        socket.connect(address, 3000);
+        socket.setSoTimeout(10_000);
+        return socket;
+    }
+
+    /**
+     * Reads the transport's nonce and sends one of our own.
+     */
+    private static byte[] handshake(Socket socket) throws IOException {
+        byte[] nonce = new byte[16];
+        new DataInputStream(socket.getInputStream()).readFully(nonce);
+        socket.getOutputStream().write(new byte[16]);
+        return nonce;
+    }
+
+    private static byte[] frame(byte[] nonce, long sequence, byte[] payload) throws Exception {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+        mac.update(nonce);
+        mac.update(ByteBuffer.allocate(8).putLong(sequence).array());
+        byte[] signature = mac.doFinal(payload);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.write(signature);
+        return bytes.toByteArray();
+    }
+
+    private static void assertClosed(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        try {
+            assertEquals(-1, in.read());
+        } catch (IOException e) {
+            // Reset by the transport, which is just as closed
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.chagui68.singleip.storage;
+
+import com.chagui68.singleip.TestEnvironment;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Registrations, additions and removals racing with lookups and snapshots on
+ * one data manager, the way pre-login, commands and the flusher share it. Each
+ * mutating thread owns its players and mirrors every change in a plain map,
+ * while all threads share a handful of addresses so the same reverse index
+ * entries are updated from several threads at once. Afterwards the registry,
+ * {@code who} and a reload of the saved store must match the maps exactly.
+ */
+class ConcurrentRegistryTest {
+
+    private static final int MUTATORS = 6;
+    private static final int PLAYERS_PER_THREAD = 64;
+    private static final int ADDRESSES = 8;
+    private static final int OPERATIONS = 50_000;
+    private static final int TOGGLES = 20_000;
+
+    @TempDir
+    File dataFolder;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"yaml", "journal"})
+    void concurrentChangesAreNeverLost(String format) throws Exception {
+        YamlConfiguration config = TestEnvironment.config();
+        config.set("storage.format", format);
+        IPDataManager dataManager = TestEnvironment.dataManager(dataFolder, config);
+        dataManager.loadData();
+
+        List<Map<UUID, Set<String>>> models = new ArrayList<>();
+        List<Future<?>> tasks = new ArrayList<>();
+        AtomicBoolean mutating = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(MUTATORS + 2);
+        try {
+            for (int i = 0; i < MUTATORS; i++) {
+                Map<UUID, Set<String>> model = new HashMap<>();
+                models.add(model);
+                int worker = i;
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    mutate(dataManager, worker, model);
+                    return null;
+                }));
+            }
+            tasks.add(executor.submit(() -> {
+                start.await();
+                while (mutating.get()) {
+                    dataManager.findPlayersByIP(TestEnvironment.address(ThreadLocalRandom.current().nextInt(ADDRESSES)),
+                            Integer.MAX_VALUE);
+                }
+                return null;
+            }));
+            tasks.add(executor.submit(() -> {
+                start.await();
+                while (mutating.get()) {
+                    dataManager.saveData();
+                }
+                return null;
+            }));
+
+            start.countDown();
+            for (Future<?> task : tasks.subList(0, MUTATORS)) {
+                task.get(2, TimeUnit.MINUTES);
+            }
+            mutating.set(false);
+            for (Future<?> task : tasks) {
+                task.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            mutating.set(false);
+            executor.shutdownNow();
+        }
+
+        Map<UUID, Set<String>> expected = new HashMap<>();
+        models.forEach(expected::putAll);
+        verify(dataManager, expected, "live registry");
+
+        assertTrue(dataManager.saveData());
+        dataManager.shutdown();
+
+        IPDataManager reloaded = TestEnvironment.dataManager(dataFolder, config);
+        try {
+            reloaded.loadData();
+            verify(reloaded, expected, "saved " + format + " store");
+        } finally {
+            reloaded.shutdown();
+        }
+    }
+
+    /**
+     * Players joining and leaving one address from several threads keep emptying
+     * and refilling its reverse index entry. Every player must be found by
+     * {@code who} for as long as it is registered there.
+     */
+    @Test
+    void sharedAddressNeverLosesAPlayer() throws Exception {
+        IPDataManager dataManager = TestEnvironment.dataManager(dataFolder, TestEnvironment.config());
+        dataManager.loadData();
+        String ip = TestEnvironment.address(0);
+
+        List<Future<?>> tasks = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(MUTATORS);
+        try {
+            for (int i = 0; i < MUTATORS; i++) {
+                UUID uuid = TestEnvironment.player(i);
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < TOGGLES; n++) {
+                        assertTrue(dataManager.registerFirstIP(uuid, ip));
+                        Set<UUID> found = dataManager.findPlayersByIP(ip, Integer.MAX_VALUE)
+                                .getOrDefault(ip, Collections.emptySet());
+                        assertTrue(found.contains(uuid), () -> "'who' lost " + uuid + " while it was registered on " + ip);
+                        dataManager.removeAllIPs(uuid);
+                    }
+                    assertTrue(dataManager.registerFirstIP(uuid, ip));
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+            dataManager.shutdown();
+        }
+
+        assertEquals(MUTATORS, dataManager.findPlayersByIP(ip, Integer.MAX_VALUE).get(ip).size());
+    }
+
+    /**
+     * Changes one of the worker's players at a time, checking each result and the
+     * player's IPs against the model as it goes.
+     */
+    private static void mutate(IPDataManager dataManager, int worker, Map<UUID, Set<String>> model) {
+        Random random = new Random(worker);
+        int firstPlayer = worker * PLAYERS_PER_THREAD;
+
+        for (int n = 0; n < OPERATIONS; n++) {
+            UUID uuid = TestEnvironment.player(firstPlayer + random.nextInt(PLAYERS_PER_THREAD));
+            String ip = TestEnvironment.address(random.nextInt(ADDRESSES));
+            Set<String> ips = model.get(uuid);
+            boolean expected;
+            boolean changed;
+
+            int operation = random.nextInt(8);
+            if (operation < 3) {
+                expected = ips == null;
+                changed = dataManager.registerFirstIP(uuid, ip);
+                if (expected) {
+                    model.put(uuid, new HashSet<>(Collections.singleton(ip)));
+                }
+            } else if (operation < 5) {
+                expected = ips != null && ips.add(ip);
+                changed = dataManager.addSecondIP(uuid, ip);
+            } else if (operation < 7) {
+                expected = ips != null && ips.remove(ip);
+                changed = dataManager.removeIP(uuid, ip);
+                if (ips != null && ips.isEmpty()) {
+                    model.remove(uuid);
+                }
+            } else {
+                expected = ips != null;
+                changed = dataManager.hasRegisteredIP(uuid);
+                dataManager.removeAllIPs(uuid);
+                model.remove(uuid);
+            }
+
+            assertEquals(expected, changed, () -> "operation " + operation + " on " + uuid + " " + ip);
+            assertEquals(model.getOrDefault(uuid, Collections.emptySet()), new HashSet<>(dataManager.getRegisteredIPs(uuid)),
+                    () -> "IPs of " + uuid + " after operation " + operation);
+        }
+    }
+
+    private static void verify(IPDataManager dataManager, Map<UUID, Set<String>> expected, String what) {
+        assertEquals(expected.size(), dataManager.getStoredPlayerCount(), what + " player count");
+
+        Map<String, Set<UUID>> byAddress = new HashMap<>();
+        for (Map.Entry<UUID, Set<String>> player : expected.entrySet()) {
+            assertEquals(player.getValue(), new HashSet<>(dataManager.getRegisteredIPs(player.getKey())),
+                    what + " IPs of " + player.getKey());
+            for (String ip : player.getValue()) {
+                byAddress.computeIfAbsent(ip, key -> new HashSet<>()).add(player.getKey());
+            }
+        }
+
+        for (int i = 0; i < ADDRESSES; i++) {
+            String ip = TestEnvironment.address(i);
+            Map<String, Set<UUID>> found = dataManager.findPlayersByIP(ip, Integer.MAX_VALUE);
+            Set<UUID> wanted = byAddress.getOrDefault(ip, Collections.emptySet());
+            assertEquals(wanted.isEmpty() ? Collections.emptyMap() : Collections.singletonMap(ip, wanted), found,
+                    what + " players found by 'who' for " + ip);
+        }
+    }
+}
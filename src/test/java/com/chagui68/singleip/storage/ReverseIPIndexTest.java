@@ -0,0 +1,104 @@
+package com.chagui68.singleip.storage;
+
+import com.chagui68.singleip.TestEnvironment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReverseIPIndexTest {
+
+    private static final IPRange ADDRESS = IPRange.parse("203.0.113.7");
+    private static final IPRange NETWORK = IPRange.parse("203.0.113.0/24");
+
+    private final ReverseIPIndex index = new ReverseIPIndex();
+
+    @Test
+    void setsAlreadyReadDoNotChange() {
+        UUID first = TestEnvironment.player(1);
+        UUID second = TestEnvironment.player(2);
+
+        index.add(ADDRESS, first);
+        Set<UUID> before = index.get(ADDRESS);
+        index.add(ADDRESS, second);
+        index.remove(ADDRESS, first);
+
+        assertEquals(Collections.singleton(first), before);
+        assertEquals(Collections.singleton(second), index.get(ADDRESS));
+    }
+
+    @Test
+    void lastPlayerRemovedDropsTheEntry() {
+        UUID player = TestEnvironment.player(1);
+        index.add(ADDRESS, player);
+        index.add(ADDRESS, player);
+        index.remove(ADDRESS, TestEnvironment.player(2));
+        assertEquals(Collections.singleton(player), index.get(ADDRESS));
+
+        index.remove(ADDRESS, player);
+        assertTrue(index.get(ADDRESS).isEmpty());
+        assertTrue(index.range(NETWORK, Integer.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void rangeFindsEntriesInsideAndCovering() {
+        UUID inside = TestEnvironment.player(1);
+        UUID covering = TestEnvironment.player(2);
+        index.add(ADDRESS, inside);
+        index.add(IPRange.parse("203.0.0.0/16"), covering);
+        index.add(IPRange.parse("198.51.100.1"), TestEnvironment.player(3));
+
+        Map<IPRange, Set<UUID>> found = index.range(NETWORK, Integer.MAX_VALUE);
+        assertEquals(2, found.size());
+        assertEquals(Collections.singleton(inside), found.get(ADDRESS));
+        assertEquals(Collections.singleton(covering), found.get(IPRange.parse("203.0.0.0/16")));
+    }
+
+    /**
+     * Players joining and leaving one entry from several threads keep emptying
+     * and refilling it. A player must be listed for as long as it is added.
+     */
+    @Test
+    void concurrentUpdatesToOneEntryAreNeverLost() throws Exception {
+        int threads = 8;
+        List<Future<?>> tasks = new ArrayList<>();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < threads; i++) {
+                UUID player = TestEnvironment.player(i);
+                tasks.add(executor.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < 200_000; n++) {
+                        index.add(ADDRESS, player);
+                        assertTrue(index.get(ADDRESS).contains(player), () -> "lost " + player);
+                        index.remove(ADDRESS, player);
+                    }
+                    index.add(ADDRESS, player);
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> task : tasks) {
+                task.get(2, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(threads, index.get(ADDRESS).size());
+    }
+}
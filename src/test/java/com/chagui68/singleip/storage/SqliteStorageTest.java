@@ -0,0 +1,184 @@
+package com.chagui68.singleip.storage;
+
+import com.chagui68.singleip.TestEnvironment;
+import com.chagui68.singleip.utils.FailedAccessLogger;
+import com.chagui68.singleip.utils.FailedLoginRecord;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SqliteStorageTest {
+
+    private static final int PLAYERS = 2500;
+
+    @TempDir
+    File dataFolder;
+
+    @Test
+    void flatFilesMigrateAndChangesPersist() throws Exception {
+        Map<UUID, Set<String>> expected = writeFlatFiles();
+        YamlConfiguration config = sqliteConfig();
+
+        SqliteStorage storage = SqliteStorage.open(dataFolder, TestEnvironment.logger(), config);
+        try {
+            assertTrue(storage.isMigrated());
+
+            Map<UUID, List<String>> accessLogs = new HashMap<>();
+            storage.accessLogs().loadLogs(accessLogs::put);
+            assertEquals(Map.of(TestEnvironment.player(1), List.of("first", "second")), accessLogs);
+
+            Map<UUID, String> names = new HashMap<>();
+            storage.playerNames().loadNames(names::put);
+            assertEquals(Map.of(TestEnvironment.player(1), "Steve", TestEnvironment.player(2), "Alex"), names);
+
+            List<FailedLoginRecord> failed = storage.failedLogins().query(0, Long.MAX_VALUE, 0, PLAYERS * 2);
+            assertEquals(PLAYERS, failed.size());
+            assertEquals(1, storage.failedLogins().queryByIP("10.0.0.7", 0, Long.MAX_VALUE, 0, 10).size());
+        } finally {
+            storage.close(5000);
+        }
+
+        for (String name : new String[]{"player-ips.yml", "access-logs.yml", "player-names.yml", "failed-logins"}) {
+            assertFalse(new File(dataFolder, name).exists(), name + " should be retired");
+            assertTrue(new File(dataFolder, name + ".migrated").exists(), name + " should be kept as .migrated");
+        }
+
+        // The registry reads back through the data manager, and changes made there survive a restart
+        IPDataManager dataManager = TestEnvironment.dataManager(dataFolder, config);
+        dataManager.loadData();
+        assertEquals(expected, registry(dataManager));
+        assertTrue(dataManager.addSecondIP(TestEnvironment.player(1), "2001:db8::/48"));
+        expected.get(TestEnvironment.player(1)).add("2001:db8::/48");
+        dataManager.removeAllIPs(TestEnvironment.player(2));
+        expected.remove(TestEnvironment.player(2));
+        assertTrue(dataManager.saveData());
+        dataManager.shutdown();
+
+        IPDataManager reopened = TestEnvironment.dataManager(dataFolder, config);
+        try {
+            reopened.loadData();
+            assertEquals(expected, registry(reopened));
+        } finally {
+            reopened.shutdown();
+        }
+    }
+
+    @Test
+    void failedBatchIsRolledBackAndRetried() throws Exception {
+        UUID player = TestEnvironment.player(1);
+        SqliteStorage storage = SqliteStorage.open(dataFolder, TestEnvironment.logger(), sqliteConfig());
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:sqlite:" + new File(dataFolder, "singleip.db").getAbsolutePath())) {
+            // Access logs are written before names in a batch, so the batch fails halfway through
+            execute(connection, "DROP TABLE player_names");
+            storage.accessLogs().saveLogs(Map.of(player, List.of("entry")));
+            storage.playerNames().saveNames(Map.of(player, "Steve"));
+            storage.flushPending();
+            assertEquals(0, count(connection, "access_logs"));
+
+            execute(connection, "CREATE TABLE player_names (uuid TEXT PRIMARY KEY, name TEXT NOT NULL) WITHOUT ROWID");
+            storage.flushPending();
+            assertEquals(1, count(connection, "access_logs"));
+            assertEquals(1, count(connection, "player_names"));
+
+            Map<UUID, String> names = new HashMap<>();
+            storage.playerNames().loadNames(names::put);
+            assertEquals(Map.of(player, "Steve"), names);
+        } finally {
+            storage.close(5000);
+        }
+    }
+
+    /**
+     * Writes player-ips.yml and its journal, failed login segments, access-logs.yml
+     * and player-names.yml, and returns the registry they hold.
+     */
+    private Map<UUID, Set<String>> writeFlatFiles() throws Exception {
+        YamlConfiguration config = TestEnvironment.config();
+        config.set("storage.format", "journal");
+        IPDataManager dataManager = TestEnvironment.dataManager(dataFolder, config);
+        dataManager.loadData();
+
+        Map<UUID, Set<String>> expected = new HashMap<>();
+        for (int i = 0; i < PLAYERS; i++) {
+            UUID uuid = TestEnvironment.player(i);
+            String ip = TestEnvironment.address(i);
+            assertTrue(dataManager.registerFirstIP(uuid, ip));
+            expected.put(uuid, new HashSet<>(Set.of(ip)));
+            if (i % 5 == 0) {
+                assertTrue(dataManager.addSecondIP(uuid, "198.51.100.0/24"));
+                expected.get(uuid).add("198.51.100.0/24");
+            }
+            if (i % 7 == 3) {
+                dataManager.removeAllIPs(uuid);
+                expected.remove(uuid);
+            }
+        }
+        dataManager.shutdown();
+
+        FailedAccessLogger failedLogins = new FailedAccessLogger(new File(dataFolder, "failed-logins"),
+                TestEnvironment.logger(), PLAYERS, 64 * 1024, 64);
+        failedLogins.start();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < PLAYERS; i++) {
+            assertTrue(failedLogins.log(new FailedLoginRecord(now - i, TestEnvironment.player(i), "player" + i,
+                    TestEnvironment.address(i), "IP not allowed")));
+        }
+        failedLogins.close(10_000);
+
+        YamlAccessLogStore accessLogs = new YamlAccessLogStore(new File(dataFolder, "access-logs.yml"),
+                TestEnvironment.logger());
+        accessLogs.loadLogs((uuid, entries) -> {
+        });
+        accessLogs.saveLogs(Map.of(TestEnvironment.player(1), List.of("first", "second")));
+
+        YamlPlayerNameStore names = new YamlPlayerNameStore(new File(dataFolder, "player-names.yml"),
+                TestEnvironment.logger());
+        names.saveNames(Map.of(TestEnvironment.player(1), "Steve", TestEnvironment.player(2), "Alex"));
+        return expected;
+    }
+
+    private static YamlConfiguration sqliteConfig() {
+        YamlConfiguration config = TestEnvironment.config();
+        config.set("storage.format", "sqlite");
+        config.set("storage.sqlite.batch-interval", 60_000);
+        return config;
+    }
+
+    private static Map<UUID, Set<String>> registry(IPDataManager dataManager) {
+        Map<UUID, Set<String>> result = new HashMap<>();
+        for (UUID uuid : dataManager.getAllPlayers()) {
+            result.put(uuid, new HashSet<>(dataManager.getRegisteredIPs(uuid)));
+        }
+        return result;
+    }
+
+    private static void execute(Connection connection, String sql) throws Exception {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static int count(Connection connection, String table) throws Exception {
+        try (Statement statement = connection.createStatement();
+             ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            return result.next() ? result.getInt(1) : -1;
+        }
+    }
+}
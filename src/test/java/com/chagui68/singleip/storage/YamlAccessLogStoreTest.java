@@ -0,0 +1,67 @@
+package com.chagui68.singleip.storage;
+
+import com.chagui68.singleip.TestEnvironment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class YamlAccessLogStoreTest {
+
+    @TempDir
+    File dataFolder;
+
+    @Test
+    void changedPlayersAreSavedAndLoaded() throws IOException {
+        File file = new File(dataFolder, "access-logs.yml");
+        UUID kept = TestEnvironment.player(1);
+        UUID cleared = TestEnvironment.player(2);
+
+        YamlAccessLogStore store = new YamlAccessLogStore(file, TestEnvironment.logger());
+        store.loadLogs((uuid, entries) -> {
+        });
+        store.saveLogs(Map.of(kept, List.of("first", "second"), cleared, List.of("only")));
+        store.saveLogs(Map.of(cleared, Collections.emptyList()));
+        assertFalse(new File(dataFolder, "access-logs.yml.tmp").exists());
+
+        assertEquals(Map.of(kept, List.of("first", "second")), load(file));
+    }
+
+    @Test
+    void failedSaveKeepsThePreviousFile() throws IOException {
+        File file = new File(dataFolder, "access-logs.yml");
+        UUID player = TestEnvironment.player(1);
+        YamlAccessLogStore store = new YamlAccessLogStore(file, TestEnvironment.logger());
+        store.loadLogs((uuid, entries) -> {
+        });
+        store.saveLogs(Map.of(player, List.of("saved")));
+        byte[] saved = Files.readAllBytes(file.toPath());
+
+        // A directory where the temporary file goes makes the write fail
+        File blocker = new File(new File(dataFolder, "access-logs.yml.tmp"), "blocker");
+        assertTrue(blocker.mkdirs());
+        assertThrows(IOException.class, () -> store.saveLogs(Map.of(player, List.of("saved", "lost"))));
+
+        assertArrayEquals(saved, Files.readAllBytes(file.toPath()));
+        assertEquals(Map.of(player, List.of("saved")), load(file));
+    }
+
+    private static Map<UUID, List<String>> load(File file) throws IOException {
+        Map<UUID, List<String>> result = new HashMap<>();
+        new YamlAccessLogStore(file, TestEnvironment.logger()).loadLogs(result::put);
+        return result;
+    }
+}
@@ -0,0 +1,59 @@
+package com.chagui68.singleip.storage;
+
+import com.chagui68.singleip.TestEnvironment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class YamlPlayerNameStoreTest {
+
+    @TempDir
+    File dataFolder;
+
+    @Test
+    void invalidEntriesAreSkipped() throws IOException {
+        File file = new File(dataFolder, "player-names.yml");
+        UUID valid = TestEnvironment.player(1);
+        Files.write(file.toPath(), ("names:\n"
+                + "  " + valid + ": Steve\n"
+                + "  " + TestEnvironment.player(2) + ": ~\n"
+                + "  " + TestEnvironment.player(3) + ": 42\n"
+                + "  " + TestEnvironment.player(4) + ":\n  - Alex\n"
+                + "  " + TestEnvironment.player(5) + ": ''\n"
+                + "  not-a-uuid: Herobrine\n").getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(Map.of(valid, "Steve"), load(file));
+    }
+
+    @Test
+    void changedNamesAreSavedAndLoaded() throws IOException {
+        File file = new File(dataFolder, "player-names.yml");
+        UUID renamed = TestEnvironment.player(1);
+        UUID other = TestEnvironment.player(2);
+
+        YamlPlayerNameStore store = new YamlPlayerNameStore(file, TestEnvironment.logger());
+        store.loadNames((uuid, name) -> {
+        });
+        store.saveNames(Map.of(renamed, "Steve", other, "Alex"));
+        store.saveNames(Map.of(renamed, "Notch"));
+        assertFalse(new File(dataFolder, "player-names.yml.tmp").exists());
+
+        assertEquals(Map.of(renamed, "Notch", other, "Alex"), load(file));
+    }
+
+    private static Map<UUID, String> load(File file) throws IOException {
+        Map<UUID, String> result = new HashMap<>();
+        new YamlPlayerNameStore(file, TestEnvironment.logger()).loadNames(result::put);
+        return result;
+    }
+}
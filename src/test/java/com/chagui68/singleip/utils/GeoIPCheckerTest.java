@@ -0,0 +1,139 @@
+package com.chagui68.singleip.utils;
+
+import com.chagui68.singleip.TestEnvironment;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GeoIPCheckerTest {
+
+    /**
+     * Without HTTP lookups or a database, only local addresses resolve to anything.
+     */
+    private final GeoIPChecker offline = new GeoIPChecker(TestEnvironment.logger(), 60, 60, 100, null, false, null);
+
+    /** The IPs of every batch request the stub API received, in order. */
+    private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+    private HttpServer server;
+    private GeoIPBatchResolver resolver;
+
+    @AfterEach
+    void tearDown() {
+        if (resolver != null) {
+            resolver.shutdown();
+        }
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"localhost", "127.0.0.1", "127.1.2.3", "10.0.0.1", "172.16.0.1", "172.31.255.255",
+            "192.168.1.1", "169.254.10.20", "0.0.0.0", "::1", "0:0:0:0:0:0:0:1", "::", "fe80::1", "fc00::1",
+            "fd12:3456:789a::1", "::ffff:192.168.1.1", "::ffff:127.0.0.1"})
+    void localAddressesAreNotLookedUp(String ip) {
+        assertEquals("LOCAL", offline.getCountryCode(ip).join());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"8.8.8.8", "172.15.0.1", "172.32.0.1", "192.169.0.1", "11.0.0.1", "2001:4860:4860::8888",
+            "fe00::1", "::ffff:8.8.8.8", "1.0.0.10", "100.10.0.1"})
+    void publicAddressesAreLookedUp(String ip) {
+        assertNull(offline.getCountryCode(ip).join());
+    }
+
+    @Test
+    void callersOfOneIPShareALookup() throws Exception {
+        GeoIPChecker checker = batchingChecker(200);
+
+        List<CompletableFuture<String>> lookups = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            lookups.add(checker.getCountryCode("203.0.113.7"));
+        }
+        for (CompletableFuture<String> lookup : lookups) {
+            assertEquals("ZZ", lookup.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals("ZZ", checker.getCountryCode("203.0.113.7").get(10, TimeUnit.SECONDS));
+
+        assertEquals(List.of(List.of("203.0.113.7")), requests);
+        assertEquals(1, checker.getCacheMisses());
+        assertEquals(4, checker.getCoalescedLookups());
+        assertEquals(1, checker.getCacheHits());
+    }
+
+    @Test
+    void loginJoiningAPrefetchIsSentFirst() throws Exception {
+        GeoIPChecker checker = batchingChecker(500);
+
+        // More prefetches than fit in one batch, queued ahead of the one a login then waits on
+        for (int i = 0; i < 150; i++) {
+            checker.prefetchCountryCode("198.51." + (i / 250) + "." + (i % 250 + 1));
+        }
+        String ip = "203.0.113.7";
+        checker.prefetchCountryCode(ip);
+        assertEquals("ZZ", checker.getCountryCode(ip).get(10, TimeUnit.SECONDS));
+
+        assertTrue(requests.get(0).contains(ip), "the login's IP should be in the first batch");
+        assertEquals(100, requests.get(0).size());
+        assertEquals(1, checker.getCoalescedLookups());
+    }
+
+    /**
+     * A checker resolving through a stub of the ip-api batch endpoint, which
+     * answers ZZ for every IP.
+     */
+    private GeoIPChecker batchingChecker(long windowMillis) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/batch", this::answerBatch);
+        server.start();
+
+        String endpoint = "http://127.0.0.1:" + server.getAddress().getPort() + "/batch";
+        resolver = new GeoIPBatchResolver(TestEnvironment.logger(), endpoint, windowMillis, 60);
+        return new GeoIPChecker(TestEnvironment.logger(), 60, 60, 1000, null, true, resolver);
+    }
+
+    private void answerBatch(HttpExchange exchange) throws IOException {
+        List<String> ips = new ArrayList<>();
+        JsonArray response = new JsonArray();
+        try (InputStreamReader in = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            for (JsonElement element : JsonParser.parseReader(in).getAsJsonArray()) {
+                ips.add(element.getAsString());
+                JsonObject result = new JsonObject();
+                result.addProperty("status", "success");
+                result.addProperty("countryCode", "ZZ");
+                result.addProperty("query", element.getAsString());
+                response.add(result);
+            }
+        }
+        requests.add(ips);
+
+        byte[] body = response.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}